@@ -0,0 +1,28 @@
+package exception;
+
+/**
+ * @description 执行被中止异常
+ *              超出指令数限制或被取消时抛出, 记录已经执行的指令数
+ **/
+public class ExecutionAbortedException extends ExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    // 中止前已执行的指令数
+    private final long executedInstructions;
+    // 是否是被取消的, 否则为超出指令数限制
+    private final boolean cancelled;
+
+    public ExecutionAbortedException(String message, long executedInstructions, boolean cancelled) {
+        super(message);
+        this.executedInstructions = executedInstructions;
+        this.cancelled = cancelled;
+    }
+
+    public long getExecutedInstructions() {
+        return executedInstructions;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
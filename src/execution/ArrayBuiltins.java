@@ -0,0 +1,185 @@
+package execution;
+
+import execution.symbols.OffHeapArray;
+import execution.symbols.SparseArray;
+import execution.symbols.Symbol;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * @description 数组内建函数fill、copy、sort、sum的执行
+ *              直接作用在符号中的int[]/double[]上: Arrays.fill、System.arraycopy、Arrays.parallelSort
+ *              堆外数组逐元素读写, 稀疏数组由解释器先转为连续存放(填0时直接清空)
+ *              int数组求和按int回绕, 满足结合律, 数组较大时并行; 实数按下标顺序求和, 与逐条执行结果相同
+ **/
+final class ArrayBuiltins {
+    private ArrayBuiltins() {
+    }
+
+    /**
+     * 所有元素置为value, int数组截断
+     */
+    static void fill(Symbol array, double value) {
+        if (array.getSparseArray() != null) {
+            // 只有填0时保留稀疏存放
+            SparseArray sparse = array.getSparseArray();
+            array.setSparseArray(new SparseArray(sparse.isInt(), sparse.length()));
+        } else if (array.getIntArray() != null) {
+            Arrays.fill(array.getIntArray(), (int) value);
+        } else if (array.getRealArray() != null) {
+            Arrays.fill(array.getRealArray(), value);
+        } else {
+            OffHeapArray offHeap = array.getOffHeapArray();
+            for (long i = 0; i < offHeap.length(); i++) {
+                if (offHeap.isInt()) {
+                    offHeap.setInt(i, (int) value);
+                } else {
+                    offHeap.setReal(i, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把src的前n个元素拷入dst的前n个位置, 两者类型相同, n已检查过不越界
+     * 同一数组拷贝到自身时不改变内容
+     */
+    static void copy(Symbol dst, Symbol src, long n) {
+        if (dst == src || n == 0) {
+            return;
+        }
+        if (dst.getIntArray() != null && src.getIntArray() != null) {
+            System.arraycopy(src.getIntArray(), 0, dst.getIntArray(), 0, (int) n);
+        } else if (dst.getRealArray() != null && src.getRealArray() != null) {
+            System.arraycopy(src.getRealArray(), 0, dst.getRealArray(), 0, (int) n);
+        } else if (dst.getIntArray() != null) {
+            int[] a = dst.getIntArray();
+            for (int i = 0; i < n; i++) {
+                a[i] = src.getIntElement(i);
+            }
+        } else if (dst.getRealArray() != null) {
+            double[] a = dst.getRealArray();
+            for (int i = 0; i < n; i++) {
+                a[i] = src.getRealElement(i);
+            }
+        } else {
+            OffHeapArray offHeap = dst.getOffHeapArray();
+            for (long i = 0; i < n; i++) {
+                if (offHeap.isInt()) {
+                    offHeap.setInt(i, src.getIntElement(i));
+                } else {
+                    offHeap.setReal(i, src.getRealElement(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * 升序排序, 堆内数组并行排序; 堆外数组不超过int范围时拷到堆内排序再写回
+     * 返回false表示数组太大无法排序
+     */
+    static boolean sort(Symbol array) {
+        if (array.getIntArray() != null) {
+            Arrays.parallelSort(array.getIntArray());
+            return true;
+        }
+        if (array.getRealArray() != null) {
+            Arrays.parallelSort(array.getRealArray());
+            return true;
+        }
+        OffHeapArray offHeap = array.getOffHeapArray();
+        if (offHeap.length() > Integer.MAX_VALUE - 8) {
+            return false;
+        }
+        int length = (int) offHeap.length();
+        if (offHeap.isInt()) {
+            int[] a = new int[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = offHeap.getInt(i);
+            }
+            Arrays.parallelSort(a);
+            for (int i = 0; i < length; i++) {
+                offHeap.setInt(i, a[i]);
+            }
+        } else {
+            double[] a = new double[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = offHeap.getReal(i);
+            }
+            Arrays.parallelSort(a);
+            for (int i = 0; i < length; i++) {
+                offHeap.setReal(i, a[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * int数组的和, 按int回绕
+     */
+    static int sumInt(Symbol array) {
+        int[] a = array.getIntArray();
+        if (a != null) {
+            if (a.length >= ArrayReduction.PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                return IntStream.range(0, a.length).parallel().map(k -> a[k]).sum();
+            }
+            // 简单计数循环, 由JIT向量化
+            int acc = 0;
+            for (int k = 0; k < a.length; k++) {
+                acc += a[k];
+            }
+            return acc;
+        }
+        int acc = 0;
+        SparseArray sparse = array.getSparseArray();
+        if (sparse != null) {
+            // 没有写过的元素为0, 只累加已使用的槽位
+            for (int slot = 0; slot < sparse.capacity(); slot++) {
+                if (sparse.isUsed(slot)) {
+                    acc += sparse.intAt(slot);
+                }
+            }
+            return acc;
+        }
+        for (long i = 0; i < array.getArrayLength(); i++) {
+            acc += array.getIntElement(i);
+        }
+        return acc;
+    }
+
+    /**
+     * 实数数组的和, 按下标顺序累加
+     */
+    static double sumReal(Symbol array) {
+        double acc = 0;
+        double[] a = array.getRealArray();
+        if (a != null) {
+            for (double element : a) {
+                acc += element;
+            }
+            return acc;
+        }
+        SparseArray sparse = array.getSparseArray();
+        if (sparse != null) {
+            // 槽位不按下标排列, 先取出写过的下标排序
+            long[] indexes = new long[sparse.size()];
+            int count = 0;
+            for (int slot = 0; slot < sparse.capacity(); slot++) {
+                if (sparse.isUsed(slot)) {
+                    indexes[count++] = sparse.indexAt(slot);
+                }
+            }
+            Arrays.sort(indexes);
+            for (long index : indexes) {
+                acc += sparse.getReal(index);
+            }
+            return acc;
+        }
+        for (long i = 0; i < array.getArrayLength(); i++) {
+            acc += array.getRealElement(i);
+        }
+        return acc;
+    }
+}
@@ -0,0 +1,279 @@
+package execution;
+
+import semantics.CodeConstant;
+
+import java.util.Arrays;
+
+/**
+ * @description 数组循环的整体执行
+ *              对目标数组下标[from, from+count)的元素逐个计算 a op b, 类型规则与逐条执行相同:
+ *              两个操作数都是整数时按int运算(溢出回绕), 否则按double运算, 写入int数组时截断
+ *              常见形式用不含分支的基本类型循环, 由JIT自动向量化, 其余情况逐元素按double计算
+ **/
+class ArrayKernel {
+    /**
+     * 一个操作数: 数组、循环变量或标量
+     */
+    static final class Lane {
+        final int[] ints;
+        final double[] reals;
+        final boolean isInt;
+        // 是否为循环变量, 值等于下标
+        final boolean isIndex;
+        final double value;
+
+        private Lane(int[] ints, double[] reals, boolean isInt, boolean isIndex, double value) {
+            this.ints = ints;
+            this.reals = reals;
+            this.isInt = isInt;
+            this.isIndex = isIndex;
+            this.value = value;
+        }
+
+        static Lane of(int[] array) {
+            return new Lane(array, null, true, false, 0);
+        }
+
+        static Lane of(double[] array) {
+            return new Lane(null, array, false, false, 0);
+        }
+
+        static Lane ofInt(int value) {
+            return new Lane(null, null, true, false, value);
+        }
+
+        static Lane ofReal(double value) {
+            return new Lane(null, null, false, false, value);
+        }
+
+        static Lane index() {
+            return new Lane(null, null, true, true, 0);
+        }
+
+        boolean isArray() {
+            return ints != null || reals != null;
+        }
+
+        int length() {
+            return ints != null ? ints.length : reals.length;
+        }
+
+        boolean isScalar() {
+            return !isArray() && !isIndex;
+        }
+
+        double get(int k) {
+            if (ints != null) {
+                return ints[k];
+            }
+            if (reals != null) {
+                return reals[k];
+            }
+            return isIndex ? k : value;
+        }
+    }
+
+    private ArrayKernel() {
+    }
+
+    /**
+     * @param operation +、-、*, 为null时把first复制到目标数组
+     * @param target 目标数组
+     * @param second operation为null时不使用
+     */
+    static void run(String operation, Lane target, Lane first, Lane second, int from, int count) {
+        int to = from + count;
+        if (operation == null) {
+            if (copy(target, first, from, to)) {
+                return;
+            }
+        } else if (target.ints != null && first.isInt && second.isInt) {
+            if (intOperation(operation, target.ints, first, second, from, to)) {
+                return;
+            }
+        } else if (target.reals != null && !first.isInt && !second.isInt) {
+            if (realOperation(operation, target.reals, first, second, from, to)) {
+                return;
+            }
+        }
+        generic(operation, target, first, second, from, to);
+    }
+
+    private static boolean copy(Lane target, Lane source, int from, int to) {
+        if (target.ints != null && source.ints != null) {
+            System.arraycopy(source.ints, from, target.ints, from, to - from);
+        } else if (target.reals != null && source.reals != null) {
+            System.arraycopy(source.reals, from, target.reals, from, to - from);
+        } else if (target.ints != null && source.isScalar()) {
+            Arrays.fill(target.ints, from, to, (int) source.value);
+        } else if (target.reals != null && source.isScalar()) {
+            Arrays.fill(target.reals, from, to, source.value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 两个操作数都是int数组或int标量
+     */
+    private static boolean intOperation(String operation, int[] t, Lane first, Lane second, int from, int to) {
+        if (first.ints != null && second.ints != null) {
+            int[] a = first.ints;
+            int[] b = second.ints;
+            switch (operation) {
+                case CodeConstant.PLUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] + b[k];
+                    }
+                    return true;
+                case CodeConstant.MINUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] - b[k];
+                    }
+                    return true;
+                case CodeConstant.MUL:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] * b[k];
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        // 加法和乘法可以交换操作数
+        if (first.isScalar() && second.ints != null && !operation.equals(CodeConstant.MINUS)) {
+            Lane swap = first;
+            first = second;
+            second = swap;
+        }
+        if (first.ints != null && second.isScalar()) {
+            int[] a = first.ints;
+            int b = (int) second.value;
+            switch (operation) {
+                case CodeConstant.PLUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] + b;
+                    }
+                    return true;
+                case CodeConstant.MINUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] - b;
+                    }
+                    return true;
+                case CodeConstant.MUL:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] * b;
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 两个操作数都是real数组或real标量
+     */
+    private static boolean realOperation(String operation, double[] t, Lane first, Lane second, int from,
+                                         int to) {
+        if (first.reals != null && second.reals != null) {
+            double[] a = first.reals;
+            double[] b = second.reals;
+            switch (operation) {
+                case CodeConstant.PLUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] + b[k];
+                    }
+                    return true;
+                case CodeConstant.MINUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] - b[k];
+                    }
+                    return true;
+                case CodeConstant.MUL:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] * b[k];
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        if (first.isScalar() && second.reals != null && !operation.equals(CodeConstant.MINUS)) {
+            Lane swap = first;
+            first = second;
+            second = swap;
+        }
+        if (first.reals != null && second.isScalar()) {
+            double[] a = first.reals;
+            double b = second.value;
+            switch (operation) {
+                case CodeConstant.PLUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] + b;
+                    }
+                    return true;
+                case CodeConstant.MINUS:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] - b;
+                    }
+                    return true;
+                case CodeConstant.MUL:
+                    for (int k = from; k < to; k++) {
+                        t[k] = a[k] * b;
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 逐元素按解释器的规则计算
+     */
+    private static void generic(String operation, Lane target, Lane first, Lane second, int from, int to) {
+        boolean isInt = first.isInt && (operation == null || second.isInt);
+        for (int k = from; k < to; k++) {
+            double operand1 = first.get(k);
+            double result;
+            if (operation == null) {
+                result = operand1;
+            } else {
+                double operand2 = second.get(k);
+                result = isInt ? intApply(operation, (int) operand1, (int) operand2)
+                        : realApply(operation, operand1, operand2);
+            }
+            if (target.ints != null) {
+                target.ints[k] = (int) result;
+            } else {
+                target.reals[k] = result;
+            }
+        }
+    }
+
+    private static int intApply(String operation, int a, int b) {
+        switch (operation) {
+            case CodeConstant.PLUS:
+                return a + b;
+            case CodeConstant.MINUS:
+                return a - b;
+            default:
+                return a * b;
+        }
+    }
+
+    private static double realApply(String operation, double a, double b) {
+        switch (operation) {
+            case CodeConstant.PLUS:
+                return a + b;
+            case CodeConstant.MINUS:
+                return a - b;
+            default:
+                return a * b;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package execution;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @description 不逃逸的局部数组的池
+ *              按元素类型和长度分类, 同一长度的数组归还后由下一次同长度的声明取出复用
+ *              Symbol直接以Java数组的长度作为数组长度, 因此只复用长度完全相同的数组, 不向上取整
+ *              归还时不清零, 取出复用时才清零, 归还后不再被使用的数组不需要清零
+ *              每个解释器一个池, 只在解释器的执行线程中使用, 不需要同步
+ *              池中数组的总字节数有上限, 超过时归还的数组直接丢弃
+ **/
+final class ArrayPool {
+    // 池中数组的总字节数上限
+    private static final long MAX_POOL_BYTES = 16L << 20;
+    // 只复用不超过该字节数的数组, 更大的数组分配的开销相对清零可以忽略
+    static final long MAX_ARRAY_BYTES = 1L << 20;
+
+    private final Map<Integer, ArrayDeque<int[]>> ints = new HashMap<>();
+    private final Map<Integer, ArrayDeque<double[]>> reals = new HashMap<>();
+    private long pooledBytes;
+
+    /**
+     * 取出长度为length的int数组, 元素全为0
+     */
+    int[] takeInts(int length) {
+        ArrayDeque<int[]> free = ints.get(length);
+        if (free == null || free.isEmpty()) {
+            return new int[length];
+        }
+        int[] array = free.pop();
+        pooledBytes -= (long) length * Integer.BYTES;
+        Arrays.fill(array, 0);
+        return array;
+    }
+
+    /**
+     * 取出长度为length的real数组, 元素全为0
+     */
+    double[] takeReals(int length) {
+        ArrayDeque<double[]> free = reals.get(length);
+        if (free == null || free.isEmpty()) {
+            return new double[length];
+        }
+        double[] array = free.pop();
+        pooledBytes -= (long) length * Double.BYTES;
+        Arrays.fill(array, 0);
+        return array;
+    }
+
+    void release(int[] array) {
+        long bytes = (long) array.length * Integer.BYTES;
+        if (pooledBytes + bytes <= MAX_POOL_BYTES) {
+            ints.computeIfAbsent(array.length, length -> new ArrayDeque<>()).push(array);
+            pooledBytes += bytes;
+        }
+    }
+
+    void release(double[] array) {
+        long bytes = (long) array.length * Double.BYTES;
+        if (pooledBytes + bytes <= MAX_POOL_BYTES) {
+            reals.computeIfAbsent(array.length, length -> new ArrayDeque<>()).push(array);
+            pooledBytes += bytes;
+        }
+    }
+}
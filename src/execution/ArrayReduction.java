@@ -0,0 +1,119 @@
+package execution;
+
+import semantics.LoopReduction;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * @description 数组归约的整体执行
+ *              int数组向int变量求和求积时按int运算回绕, 满足结合律, 数组较大时在ForkJoinPool中并行计算
+ *              其余情况按原来的顺序逐元素计算, 实数结果与逐条执行完全相同
+ *              最小最大值同时记录更新次数, 用于计算逐条执行时的指令数
+ **/
+class ArrayReduction {
+    // 不小于该元素数时并行求和求积
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final LoopReduction.Kind kind;
+    private final boolean strict;
+    // 累积变量是否为int, 是则每一步截断
+    private final boolean intAccumulator;
+    // 累积变量的当前值
+    double value;
+    // 最小最大值的更新次数
+    long updates = 0;
+
+    ArrayReduction(LoopReduction reduction, boolean intAccumulator, double value) {
+        this.kind = reduction.kind;
+        this.strict = reduction.strict;
+        this.intAccumulator = intAccumulator;
+        this.value = value;
+    }
+
+    /**
+     * 归约下标[from, to)的元素
+     */
+    void run(ArrayKernel.Lane array, int from, int to) {
+        switch (kind) {
+            case SUM:
+            case PRODUCT:
+                if (intAccumulator && array.ints != null) {
+                    value = fold(array.ints, from, to);
+                } else {
+                    foldInOrder(array, from, to);
+                }
+                break;
+            default:
+                if (intAccumulator && array.ints != null) {
+                    minMax(array.ints, from, to);
+                } else {
+                    minMaxInOrder(array, from, to);
+                }
+        }
+    }
+
+    /**
+     * int数组向int变量归约
+     */
+    private int fold(int[] a, int from, int to) {
+        int acc = (int) value;
+        if (to - from >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            IntStream elements = IntStream.range(from, to).parallel().map(k -> a[k]);
+            return kind == LoopReduction.Kind.SUM ? acc + elements.sum()
+                    : acc * elements.reduce(1, (x, y) -> x * y);
+        }
+        if (kind == LoopReduction.Kind.SUM) {
+            for (int k = from; k < to; k++) {
+                acc += a[k];
+            }
+        } else {
+            for (int k = from; k < to; k++) {
+                acc *= a[k];
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * 涉及实数时按double运算, 按原来的顺序计算, 结果写回int变量时截断
+     */
+    private void foldInOrder(ArrayKernel.Lane array, int from, int to) {
+        boolean sum = kind == LoopReduction.Kind.SUM;
+        double acc = value;
+        for (int k = from; k < to; k++) {
+            double element = array.get(k);
+            double result = sum ? acc + element : acc * element;
+            acc = intAccumulator ? (int) result : result;
+        }
+        value = acc;
+    }
+
+    private void minMax(int[] a, int from, int to) {
+        int acc = (int) value;
+        long count = 0;
+        boolean min = kind == LoopReduction.Kind.MIN;
+        for (int k = from; k < to; k++) {
+            int element = a[k];
+            if (min ? (strict ? element < acc : element <= acc) : (strict ? element > acc : element >= acc)) {
+                acc = element;
+                count++;
+            }
+        }
+        value = acc;
+        updates += count;
+    }
+
+    private void minMaxInOrder(ArrayKernel.Lane array, int from, int to) {
+        double acc = value;
+        boolean min = kind == LoopReduction.Kind.MIN;
+        for (int k = from; k < to; k++) {
+            double element = array.get(k);
+            if (min ? (strict ? element < acc : element <= acc) : (strict ? element > acc : element >= acc)) {
+                acc = intAccumulator ? (int) element : element;
+                updates++;
+            }
+        }
+        value = acc;
+    }
+}
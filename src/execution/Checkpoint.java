@@ -0,0 +1,688 @@
+package execution;
+
+import exception.ExecutionException;
+import execution.symbols.Channel;
+import execution.symbols.OffHeapArray;
+import execution.symbols.SparseArray;
+import execution.symbols.SymValueType;
+import execution.symbols.Symbol;
+import execution.symbols.SymbolTable;
+import semantics.Quadruple;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * @description 解释器运行状态的检查点
+ *              文件格式: 魔数 | 版本 | 状态段长度 | 状态段 | 大数组段
+ *              状态段保存程序计数器、静态段的全局变量、栈帧及符号表、代码块层级、临时变量表、参数和返回值寄存器,
+ *              小数组内联在状态段中, 大数组的内容按原始字节顺序放在文件末尾,
+ *              恢复时对大数组段做内存映射后整块拷入数组, 不逐个元素解码
+ *              堆外数组总是放在大数组段, 恢复后仍在堆外; 稀疏数组只保存写过的元素, 内联在状态段中
+ *              同一个数组对象只保存一次, 恢复后引用关系不变, 通道同样只保存一次, 连同其中尚未接收的值
+ *              按引用传给函数的数组符号同时在调用者的符号表和被调者的参数栈中, 只保存一次, 恢复后仍是同一个符号
+ *              尚未join的fork调用先等待其结束, 只保存返回值
+ *              标准输入的读取位置不属于解释器状态, 不保存
+ *              spawn的任务在其他线程中运行, 有任务未结束时不能保存
+ **/
+class Checkpoint {
+    private static final int MAGIC = 0x434D4D43;
+    private static final int VERSION = 8;
+    // 文件头长度: 魔数 + 版本 + 状态段长度
+    private static final int HEADER_SIZE = 16;
+    // 不小于该字节数的数组放到大数组段
+    private static final int LARGE_ARRAY_BYTES = 64 * 1024;
+    // 每次映射的最大字节数
+    private static final int MAP_CHUNK_BYTES = 1 << 30;
+
+    private static final byte NULL = 0;
+    private static final byte PRESENT = 1;
+    private static final byte SHARED = 2;
+    private static final byte INT_VALUE = 1;
+    private static final byte REAL_VALUE = 2;
+    private static final byte INLINE = 0;
+    private static final byte MAPPED = 1;
+    private static final byte HEAP = 0;
+    private static final byte OFF_HEAP = 1;
+    private static final byte SPARSE = 2;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * 计算程序的指纹, 恢复时用来确认检查点属于同一个程序
+     */
+    static long fingerprint(List<Quadruple> codes, Map<String, Integer> funcInstrMap) {
+        CRC32 crc = new CRC32();
+        for (Quadruple code : codes) {
+            crc.update(code.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        crc.update(new TreeMap<>(funcInstrMap).toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * 保存解释器状态到文件
+     */
+    static void save(Interpreter interpreter, Path path) throws IOException {
+        if (interpreter.hasRunningTasks()) {
+            throw new IOException("Cannot checkpoint while spawned tasks are running");
+        }
+        Writer writer = new Writer();
+        writer.writeState(interpreter);
+        byte[] state = writer.stateBytes.toByteArray();
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(state.length);
+            out.write(state);
+            for (Object array : writer.largeArrays) {
+                writeArrayContent(out, array);
+            }
+        }
+    }
+
+    /**
+     * 从文件恢复解释器状态, 解释器必须由同一个程序构造
+     */
+    static void restore(Interpreter interpreter, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满文件头
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException("Unsupported checkpoint version: " + path);
+            }
+            long stateLength = header.getLong();
+            if (stateLength > Integer.MAX_VALUE || HEADER_SIZE + stateLength > channel.size()) {
+                throw new IOException("Corrupted checkpoint file: " + path);
+            }
+            MappedByteBuffer state = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, stateLength);
+            Reader reader = new Reader(state, channel, HEADER_SIZE + stateLength);
+            reader.readState(interpreter);
+        }
+    }
+
+    private static void writeArrayContent(DataOutputStream out, Object array) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 16).order(ByteOrder.BIG_ENDIAN);
+        if (array instanceof OffHeapArray) {
+            // 堆外数组已是大端字节序, 按块直接拷出
+            OffHeapArray offHeap = (OffHeapArray) array;
+            for (int i = 0; i < offHeap.chunkCount(); i++) {
+                ByteBuffer content = offHeap.chunk(i);
+                while (content.hasRemaining()) {
+                    int n = Math.min(chunk.capacity(), content.remaining());
+                    content.get(chunk.array(), 0, n);
+                    out.write(chunk.array(), 0, n);
+                }
+            }
+        } else if (array instanceof int[]) {
+            int[] ints = (int[]) array;
+            int step = chunk.capacity() / Integer.BYTES;
+            for (int i = 0; i < ints.length; i += step) {
+                int n = Math.min(step, ints.length - i);
+                chunk.clear();
+                chunk.asIntBuffer().put(ints, i, n);
+                out.write(chunk.array(), 0, n * Integer.BYTES);
+            }
+        } else {
+            double[] reals = (double[]) array;
+            int step = chunk.capacity() / Double.BYTES;
+            for (int i = 0; i < reals.length; i += step) {
+                int n = Math.min(step, reals.length - i);
+                chunk.clear();
+                chunk.asDoubleBuffer().put(reals, i, n);
+                out.write(chunk.array(), 0, n * Double.BYTES);
+            }
+        }
+    }
+
+    private static boolean isArray(Symbol symbol) {
+        return symbol.getType() == SymValueType.INT_ARRAY || symbol.getType() == SymValueType.REAL_ARRAY;
+    }
+
+    private static long byteSize(Object array) {
+        if (array instanceof OffHeapArray) {
+            return ((OffHeapArray) array).byteSize();
+        }
+        if (array instanceof int[]) {
+            return (long) ((int[]) array).length * Integer.BYTES;
+        }
+        return (long) ((double[]) array).length * Double.BYTES;
+    }
+
+    /**
+     * 写入状态段, 同时收集需要放到文件末尾的大数组
+     */
+    private static class Writer {
+        final ByteArrayOutputStream stateBytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(stateBytes);
+        final List<Object> largeArrays = new ArrayList<>();
+        // 已写出的数组及其编号
+        final Map<Object, Integer> arrayIds = new IdentityHashMap<>();
+        // 已写出的通道及其编号
+        final Map<Channel, Integer> channelIds = new IdentityHashMap<>();
+        // 已写出的数组符号及其编号
+        final Map<Symbol, Integer> arraySymbolIds = new IdentityHashMap<>();
+        // 大数组在大数组段中的偏移
+        long largeOffset = 0;
+
+        void writeState(Interpreter interpreter) throws IOException {
+            out.writeLong(fingerprint(interpreter.codes, interpreter.funcInstrMap));
+            out.writeInt(interpreter.instrIndex);
+            out.writeInt(interpreter.blockLevel);
+            out.writeBoolean(interpreter.started);
+            out.writeBoolean(interpreter.finished);
+            out.writeLong(interpreter.executedInstructions);
+
+            writeRegister(interpreter.retValue);
+
+            writeSymbol(interpreter.condition);
+
+            out.writeInt(interpreter.tempVars.size());
+            for (Map.Entry<Integer, List<String>> entry : interpreter.tempVars.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String name : entry.getValue()) {
+                    writeString(name);
+                }
+            }
+
+            writeArgs(interpreter.argsList);
+
+            writeArgs(Arrays.asList(interpreter.globals));
+
+            out.writeInt(interpreter.stackFrames.size());
+            for (Frame frame : interpreter.stackFrames) {
+                out.writeInt(frame.retAddr);
+                out.writeInt(frame.blockLevel);
+                writeArgs(frame.argStack);
+                writeTable(frame.localVarTable);
+                writeString(frame.forkDest);
+                writeForks(frame.forks);
+            }
+            out.flush();
+        }
+
+        void writeForks(Map<String, ForkedCall> forks) throws IOException {
+            if (forks == null) {
+                out.writeInt(0);
+                return;
+            }
+            out.writeInt(forks.size());
+            for (Map.Entry<String, ForkedCall> entry : forks.entrySet()) {
+                writeString(entry.getKey());
+                try {
+                    writeRegister(entry.getValue().joinResult());
+                } catch (ExecutionException e) {
+                    throw new IOException("Forked call failed: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        void writeRegister(ReturnRegister register) throws IOException {
+            writeType(register.type);
+            out.writeInt(register.intValue);
+            out.writeDouble(register.realValue);
+        }
+
+        void writeTable(SymbolTable table) throws IOException {
+            Map<String, Symbol> entries = table.entries();
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Symbol> entry : entries.entrySet()) {
+                writeString(entry.getKey());
+                // 同名符号链从外层到内层保存, 恢复时依次加入即可重建遮蔽关系
+                List<Symbol> chain = new ArrayList<>();
+                for (Symbol symbol = entry.getValue(); symbol != null; symbol = symbol.getNext()) {
+                    chain.add(0, symbol);
+                }
+                out.writeInt(chain.size());
+                for (Symbol symbol : chain) {
+                    writeSymbol(symbol);
+                }
+            }
+        }
+
+        void writeSymbol(Symbol symbol) throws IOException {
+            if (symbol == null) {
+                out.writeByte(NULL);
+                return;
+            }
+            Integer id = arraySymbolIds.get(symbol);
+            if (id != null) {
+                // 已经保存过的数组符号只写编号
+                out.writeByte(SHARED);
+                out.writeInt(id);
+                return;
+            }
+            if (isArray(symbol)) {
+                arraySymbolIds.put(symbol, arraySymbolIds.size());
+            }
+            out.writeByte(PRESENT);
+            writeString(symbol.getName());
+            writeType(symbol.getType());
+            out.writeInt(symbol.getIntValue());
+            out.writeDouble(symbol.getRealValue());
+            writeString(symbol.getArrName());
+            out.writeLong(symbol.getIndex());
+            out.writeInt(symbol.getColumns());
+            writeArray(symbol.getIntArray());
+            writeArray(symbol.getRealArray());
+            writeArray(symbol.getOffHeapArray());
+            writeArray(symbol.getSparseArray());
+            writeChannel(symbol.getChannel());
+        }
+
+        void writeChannel(Channel channel) throws IOException {
+            if (channel == null) {
+                out.writeInt(-1);
+                return;
+            }
+            Integer id = channelIds.get(channel);
+            if (id != null) {
+                out.writeInt(id);
+                return;
+            }
+            channelIds.put(channel, channelIds.size());
+            out.writeInt(channelIds.size() - 1);
+            out.writeInt(channel.getCapacity());
+            List<Number> values = channel.snapshot();
+            out.writeInt(values.size());
+            for (Number value : values) {
+                writeNumber(value);
+            }
+        }
+
+        void writeNumber(Number value) throws IOException {
+            if (value instanceof Double) {
+                out.writeByte(REAL_VALUE);
+                out.writeDouble(value.doubleValue());
+            } else {
+                out.writeByte(INT_VALUE);
+                out.writeInt(value.intValue());
+            }
+        }
+
+        void writeArray(Object array) throws IOException {
+            if (array == null) {
+                out.writeInt(-1);
+                return;
+            }
+            Integer id = arrayIds.get(array);
+            if (id != null) {
+                out.writeInt(id);
+                return;
+            }
+            arrayIds.put(array, arrayIds.size());
+            // 新数组的编号等于已有数组数, 读取时据此判断是否为首次出现
+            out.writeInt(arrayIds.size() - 1);
+            if (array instanceof SparseArray) {
+                writeSparse((SparseArray) array);
+                return;
+            }
+            boolean isOffHeap = array instanceof OffHeapArray;
+            boolean isInt = isOffHeap ? ((OffHeapArray) array).isInt() : array instanceof int[];
+            out.writeByte(isInt ? INT_VALUE : REAL_VALUE);
+            out.writeByte(isOffHeap ? OFF_HEAP : HEAP);
+            long length = isOffHeap ? ((OffHeapArray) array).length()
+                    : isInt ? ((int[]) array).length : ((double[]) array).length;
+            out.writeLong(length);
+            long bytes = byteSize(array);
+            if (isOffHeap || bytes >= LARGE_ARRAY_BYTES) {
+                out.writeByte(MAPPED);
+                out.writeLong(largeOffset);
+                largeOffset += bytes;
+                largeArrays.add(array);
+            } else {
+                out.writeByte(INLINE);
+                if (isInt) {
+                    for (int value : (int[]) array) {
+                        out.writeInt(value);
+                    }
+                } else {
+                    for (double value : (double[]) array) {
+                        out.writeDouble(value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 稀疏数组: 类型 | 存放方式 | 长度 | 元素数 | (下标, 值)...
+         */
+        void writeSparse(SparseArray array) throws IOException {
+            out.writeByte(array.isInt() ? INT_VALUE : REAL_VALUE);
+            out.writeByte(SPARSE);
+            out.writeLong(array.length());
+            out.writeInt(array.size());
+            for (int slot = 0; slot < array.capacity(); slot++) {
+                if (!array.isUsed(slot)) {
+                    continue;
+                }
+                out.writeLong(array.indexAt(slot));
+                if (array.isInt()) {
+                    out.writeInt(array.intAt(slot));
+                } else {
+                    out.writeDouble(array.realAt(slot));
+                }
+            }
+        }
+
+        void writeArgs(List<Symbol> args) throws IOException {
+            if (args == null) {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(args.size());
+            for (Symbol arg : args) {
+                writeSymbol(arg);
+            }
+        }
+
+        void writeType(SymValueType type) throws IOException {
+            out.writeByte(type == null ? -1 : type.ordinal());
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * 从映射的状态段读取, 大数组从文件末尾的大数组段映射后拷入
+     */
+    private static class Reader {
+        final ByteBuffer in;
+        final FileChannel channel;
+        // 大数组段在文件中的起始位置
+        final long largeBase;
+        final List<Object> arrays = new ArrayList<>();
+        final List<Channel> channels = new ArrayList<>();
+        final List<Symbol> arraySymbols = new ArrayList<>();
+
+        Reader(ByteBuffer in, FileChannel channel, long largeBase) {
+            this.in = in;
+            this.channel = channel;
+            this.largeBase = largeBase;
+        }
+
+        void readState(Interpreter interpreter) throws IOException {
+            if (in.getLong() != fingerprint(interpreter.codes, interpreter.funcInstrMap)) {
+                throw new IOException("Checkpoint was taken from a different program");
+            }
+            int instrIndex = in.getInt();
+            int blockLevel = in.getInt();
+            boolean started = in.get() != 0;
+            boolean finished = in.get() != 0;
+            long executedInstructions = in.getLong();
+
+            ReturnRegister retValue = readRegister();
+
+            Symbol condition = readSymbol();
+
+            Map<Integer, List<String>> tempVars = new HashMap<>();
+            int levels = in.getInt();
+            for (int i = 0; i < levels; i++) {
+                int level = in.getInt();
+                int count = in.getInt();
+                List<String> names = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    names.add(readString());
+                }
+                tempVars.put(level, names);
+            }
+
+            List<Symbol> argsList = readArgs();
+
+            List<Symbol> globals = readArgs();
+            if (globals.size() != interpreter.globals.length) {
+                throw new IOException("Checkpoint has " + globals.size() + " globals, expected "
+                        + interpreter.globals.length);
+            }
+
+            Stack<Frame> stackFrames = new Stack<>();
+            int frames = in.getInt();
+            for (int i = 0; i < frames; i++) {
+                Frame frame = new Frame(in.getInt());
+                frame.blockLevel = in.getInt();
+                frame.argStack = readArgs();
+                readTable(frame.localVarTable);
+                frame.forkDest = readString();
+                int forks = in.getInt();
+                for (int j = 0; j < forks; j++) {
+                    String dest = readString();
+                    frame.addFork(dest, ForkedCall.completed(readRegister()));
+                }
+                stackFrames.push(frame);
+            }
+
+            // 全部读取成功后再替换, 失败时解释器保持原状
+            interpreter.instrIndex = instrIndex;
+            interpreter.blockLevel = blockLevel;
+            interpreter.started = started;
+            interpreter.finished = finished;
+            interpreter.executedInstructions = executedInstructions;
+            interpreter.retValue = retValue;
+            interpreter.condition = condition;
+            interpreter.tempVars = tempVars;
+            interpreter.argsList = argsList;
+            interpreter.stackFrames = stackFrames;
+            globals.toArray(interpreter.globals);
+        }
+
+        ReturnRegister readRegister() {
+            ReturnRegister register = new ReturnRegister();
+            register.type = readType();
+            register.intValue = in.getInt();
+            register.realValue = in.getDouble();
+            return register;
+        }
+
+        void readTable(SymbolTable table) throws IOException {
+            int names = in.getInt();
+            for (int i = 0; i < names; i++) {
+                readString();
+                int chainLength = in.getInt();
+                for (int j = 0; j < chainLength; j++) {
+                    table.addSymbol(readSymbol());
+                }
+            }
+        }
+
+        Symbol readSymbol() throws IOException {
+            byte tag = in.get();
+            if (tag == NULL) {
+                return null;
+            }
+            if (tag == SHARED) {
+                int id = in.getInt();
+                if (id < 0 || id >= arraySymbols.size()) {
+                    throw new IOException("Corrupted checkpoint file: unknown array symbol " + id);
+                }
+                return arraySymbols.get(id);
+            }
+            Symbol symbol = new Symbol(readString());
+            symbol.setType(readType());
+            symbol.setIntValue(in.getInt());
+            symbol.setRealValue(in.getDouble());
+            symbol.setArrName(readString());
+            symbol.setIndex(in.getLong());
+            symbol.setColumns(in.getInt());
+            symbol.setIntArray((int[]) readArray());
+            symbol.setRealArray((double[]) readArray());
+            symbol.setOffHeapArray((OffHeapArray) readArray());
+            symbol.setSparseArray((SparseArray) readArray());
+            symbol.setChannel(readChannel());
+            if (isArray(symbol)) {
+                arraySymbols.add(symbol);
+            }
+            return symbol;
+        }
+
+        Channel readChannel() throws IOException {
+            int id = in.getInt();
+            if (id < 0) {
+                return null;
+            }
+            if (id < channels.size()) {
+                return channels.get(id);
+            }
+            Channel channel = new Channel(in.getInt());
+            int count = in.getInt();
+            try {
+                for (int i = 0; i < count; i++) {
+                    Number value = in.get() == REAL_VALUE ? (Number) in.getDouble() : (Number) in.getInt();
+                    if (!channel.offer(value, 0, TimeUnit.MILLISECONDS)) {
+                        throw new IOException("Corrupted checkpoint file: channel over capacity");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while restoring channel", e);
+            }
+            channels.add(channel);
+            return channel;
+        }
+
+        Object readArray() throws IOException {
+            int id = in.getInt();
+            if (id < 0) {
+                return null;
+            }
+            if (id < arrays.size()) {
+                return arrays.get(id);
+            }
+            boolean isInt = in.get() == INT_VALUE;
+            byte storage = in.get();
+            long length = in.getLong();
+            if (storage == SPARSE) {
+                SparseArray array = new SparseArray(isInt, length);
+                int size = in.getInt();
+                for (int i = 0; i < size; i++) {
+                    long index = in.getLong();
+                    if (isInt) {
+                        array.setInt(index, in.getInt());
+                    } else {
+                        array.setReal(index, in.getDouble());
+                    }
+                }
+                arrays.add(array);
+                return array;
+            }
+            if (storage == OFF_HEAP) {
+                OffHeapArray array = new OffHeapArray(isInt, length);
+                if (in.get() != MAPPED) {
+                    throw new IOException("Corrupted checkpoint file: off-heap array not mapped");
+                }
+                readMapped(array, largeBase + in.getLong());
+                arrays.add(array);
+                return array;
+            }
+            Object array = isInt ? new int[(int) length] : new double[(int) length];
+            if (in.get() == MAPPED) {
+                readMapped(array, largeBase + in.getLong());
+            } else if (isInt) {
+                in.asIntBuffer().get((int[]) array);
+                in.position(in.position() + (int) length * Integer.BYTES);
+            } else {
+                in.asDoubleBuffer().get((double[]) array);
+                in.position(in.position() + (int) length * Double.BYTES);
+            }
+            arrays.add(array);
+            return array;
+        }
+
+        /**
+         * 分段映射大数组段, 整块拷入数组
+         */
+        void readMapped(Object array, long position) throws IOException {
+            long total = byteSize(array);
+            if (position + total > channel.size()) {
+                throw new IOException("Corrupted checkpoint file: array content truncated");
+            }
+            if (array instanceof OffHeapArray) {
+                // 每块不超过一次映射的大小, 映射后整块拷入
+                OffHeapArray offHeap = (OffHeapArray) array;
+                for (int i = 0; i < offHeap.chunkCount(); i++) {
+                    ByteBuffer content = offHeap.chunk(i);
+                    content.put(channel.map(FileChannel.MapMode.READ_ONLY, position, content.remaining()));
+                    position += content.capacity();
+                }
+                return;
+            }
+            int elementBytes = array instanceof int[] ? Integer.BYTES : Double.BYTES;
+            int elementsPerChunk = MAP_CHUNK_BYTES / elementBytes;
+            int length = (int) (total / elementBytes);
+            for (int offset = 0; offset < length; offset += elementsPerChunk) {
+                int n = Math.min(elementsPerChunk, length - offset);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position + (long) offset * elementBytes, (long) n * elementBytes);
+                if (array instanceof int[]) {
+                    chunk.asIntBuffer().get((int[]) array, offset, n);
+                } else {
+                    chunk.asDoubleBuffer().get((double[]) array, offset, n);
+                }
+            }
+        }
+
+        List<Symbol> readArgs() throws IOException {
+            int size = in.getInt();
+            if (size < 0) {
+                return null;
+            }
+            List<Symbol> args = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                args.add(readSymbol());
+            }
+            return args;
+        }
+
+        SymValueType readType() {
+            byte ordinal = in.get();
+            return ordinal < 0 ? null : SymValueType.values()[ordinal];
+        }
+
+        String readString() {
+            int length = in.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
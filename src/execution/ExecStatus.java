@@ -0,0 +1,11 @@
+package execution;
+
+/**
+ * 解释器分段执行后的状态
+ */
+public enum ExecStatus {
+    // 指令数用完而暂停, 可以继续执行
+    SUSPENDED,
+    // main函数已经退出
+    FINISHED
+}
@@ -0,0 +1,74 @@
+package execution;
+
+import exception.ExecutionException;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @description fork出的函数调用
+ *              在ForkJoinPool中用独立的解释器执行, 或在超过粒度阈值时已经按普通调用执行完毕
+ **/
+class ForkedCall extends RecursiveTask<ReturnRegister> {
+    private static final long serialVersionUID = 1L;
+
+    // 执行被调函数的解释器, 已完成的调用为null
+    private final Interpreter child;
+    // 已完成调用的返回值
+    private ReturnRegister value;
+    // 子解释器执行时的错误, 在join时抛出
+    private ExecutionException failure;
+
+    ForkedCall(Interpreter child) {
+        this.child = child;
+    }
+
+    private ForkedCall(ReturnRegister value) {
+        this.child = null;
+        this.value = value;
+    }
+
+    /**
+     * 已经执行完毕的调用
+     */
+    static ForkedCall completed(ReturnRegister value) {
+        ReturnRegister copy = new ReturnRegister();
+        copy.type = value.type;
+        copy.intValue = value.intValue;
+        copy.realValue = value.realValue;
+        return new ForkedCall(copy);
+    }
+
+    @Override
+    protected ReturnRegister compute() {
+        try {
+            child.run();
+            return child.retValue;
+        } catch (ExecutionException e) {
+            failure = e;
+            return null;
+        } finally {
+            child.flushInstructions();
+        }
+    }
+
+    /**
+     * 等待调用结束并取得返回值
+     */
+    ReturnRegister joinResult() throws ExecutionException {
+        if (child == null) {
+            return value;
+        }
+        ReturnRegister result = join();
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * 子解释器执行的指令数
+     */
+    long getExecutedInstructions() {
+        return child == null ? 0 : child.executedInstructions;
+    }
+}
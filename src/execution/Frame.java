@@ -1,10 +1,13 @@
 package execution;
 
 
-import syntax.TreeNode;
+import execution.symbols.Symbol;
 import execution.symbols.SymbolTable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @description 函数栈帧
@@ -13,11 +16,20 @@ import java.util.List;
  **/
 class Frame {
     // 参数栈
-    List<TreeNode> argStack;
+    List<Symbol> argStack;
     // 函数的局部变量表
     SymbolTable localVarTable = new SymbolTable();
     // 方法返回地址
     int retAddr;
+    // 调用时的代码块层级, 返回时恢复
+    int blockLevel;
+    // 按普通调用执行的fork, 返回值交给调用者栈帧中的这个变量
+    String forkDest;
+    // 尚未join的fork调用, 键为接收返回值的变量名
+    Map<String, ForkedCall> forks;
+    // 从数组池分配的数组及其声明所在的块层次, 按声明顺序, 退出语句块或返回时归还
+    List<Symbol> pooledArrays;
+    List<Integer> pooledLevels;
 
     Frame() {
     }
@@ -25,4 +37,20 @@ class Frame {
     Frame(int retAddr) {
         this.retAddr = retAddr;
     }
+
+    void addFork(String dest, ForkedCall forkedCall) {
+        if (forks == null) {
+            forks = new HashMap<>();
+        }
+        forks.put(dest, forkedCall);
+    }
+
+    void addPooledArray(Symbol array, int level) {
+        if (pooledArrays == null) {
+            pooledArrays = new ArrayList<>();
+            pooledLevels = new ArrayList<>();
+        }
+        pooledArrays.add(array);
+        pooledLevels.add(level);
+    }
 }
@@ -1,16 +1,38 @@
 package execution;
 
+import exception.ExecutionAbortedException;
 import exception.ExecutionException;
 import exception.GramException;
+import exception.LexException;
 import exception.SemanticException;
 import semantics.*;
 import syntax.SyntaxParser;
 import syntax.TreeNode;
 import syntax.TreeNodeType;
 import lex.Lexer;
+import execution.symbols.Channel;
+import execution.symbols.OffHeapArray;
+import execution.symbols.SparseArray;
 import execution.symbols.SymValueType;
 import execution.symbols.Symbol;
+import execution.symbols.SymbolTable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @description 执行四元式代码的解释器
@@ -19,31 +41,104 @@ import java.util.*;
  **/
 public class Interpreter {
     // 程序计数器
-    private int instrIndex = 0;
+    int instrIndex = 0;
     // 四元组形式的中间代码
-    private List<Quadruple> codes;
+    List<Quadruple> codes;
     // 代码块层级
-    private int blockLevel = 0;
+    int blockLevel = 0;
     // 每一层代码块的临时变量表
-    private Map<Integer, List<String>> tempVars = new HashMap<>();
+    Map<Integer, List<String>> tempVars = new HashMap<>();
     // 根据函数名找到入口地址
-    private Map<String, Integer> funcInstrMap;
+    Map<String, Integer> funcInstrMap;
     // main函数出口地址，即执行结束
     private final int MAIN_OUT_ADDR = -1;
     // 函数栈帧
-    private Stack<Frame> stackFrames = new Stack<>();
+    Stack<Frame> stackFrames = new Stack<>();
     // 参数列表
-    private List<TreeNode> argsList = new ArrayList<>();
-    // 返回值
-    private Symbol retValue = new Symbol(CodeConstant.RETURN_VALUE);
+    List<Symbol> argsList = new ArrayList<>();
+    // 返回值寄存器
+    ReturnRegister retValue = new ReturnRegister();
 
     // 操作数是整数还是实数
     private boolean isFirstOperandInt;
     private boolean isSecondOperandInt;
     // 跳转条件
-    private Symbol condition;
-    // 命令行输入
-    private Scanner scanner = new Scanner(System.in);
+    Symbol condition;
+    // 命令行输入, 子解释器共享最外层解释器的, 带缓存运行时改为给定的输入
+    private Scanner scanner;
+    // print的输出, 子解释器共享最外层解释器的
+    private PrintStream out = System.out;
+    // 是否换入过热替换的函数, 换入后程序与缓存的键不再对应
+    private boolean functionsReplaced = false;
+    // 是否已从main函数入口开始执行
+    boolean started = false;
+    // main函数是否已经退出
+    boolean finished = false;
+    // 已执行的指令数
+    long executedInstructions = 0;
+    // 指令数限制, 只在回跳和函数调用时检查; 子解释器与最外层解释器使用同一个限制
+    private long instructionBudget = Long.MAX_VALUE;
+    // 所有解释器已计入的指令数之和, 只记录在最外层解释器中, 并行执行的子解释器共同受指令数限制
+    private final AtomicLong countedInstructions = new AtomicLong();
+    // 本解释器的executedInstructions中已计入countedInstructions的部分
+    private long flushedInstructions = 0;
+    // 未计入的指令数达到该值时才计入总数, 减少并行执行时对同一计数的竞争
+    private static final long FLUSH_INSTRUCTIONS = 1024;
+    // 是否被取消, 可由其他线程设置
+    private volatile boolean cancelled = false;
+    // 等待换入的函数, 由执行线程在安全点换入
+    private final Queue<InterGenerator> pendingFunctions = new ConcurrentLinkedQueue<>();
+
+    // 默认的fork粒度阈值, 约为每个核心16个任务, 单核时不并行
+    private static final int DEFAULT_FORK_DEPTH_LIMIT = ForkJoinPool.getCommonPoolParallelism() <= 1 ? 0
+            : 32 - Integer.numberOfLeadingZeros(ForkJoinPool.getCommonPoolParallelism()) + 4;
+    // 最外层的解释器, fork出的子解释器通过它检查是否被取消
+    private final Interpreter root;
+    // 子解释器的调用深度起点, 最外层为0
+    private int forkBaseDepth = 0;
+    // 调用深度不小于该值时fork按普通调用执行
+    private int forkDepthLimit = DEFAULT_FORK_DEPTH_LIMIT;
+    // 默认的堆外数组阈值, 2^26个元素, int数组256MB
+    private static final long DEFAULT_OFF_HEAP_THRESHOLD = 1L << 26;
+    // Java数组的最大长度
+    private static final long MAX_HEAP_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    // 元素数不小于该值的数组放在堆外
+    private long offHeapThreshold = DEFAULT_OFF_HEAP_THRESHOLD;
+    // 默认的稀疏数组阈值, 2^20个元素
+    private static final long DEFAULT_SPARSE_THRESHOLD = 1L << 20;
+    // 声明的元素数不小于该值的数组先稀疏存放
+    private long sparseThreshold = DEFAULT_SPARSE_THRESHOLD;
+    // 热替换换入了有副作用的函数后, 不再并行执行
+    private volatile boolean forkDisabled = false;
+    // spawn启动的任务, 只记录在最外层解释器中, main退出前等待全部结束
+    final Queue<SpawnedTask> spawnedTasks = new ConcurrentLinkedQueue<>();
+    // 任务中的第一个错误, 只记录在最外层解释器中
+    private final AtomicReference<ExecutionException> spawnFailure = new AtomicReference<>();
+    // 是否正阻塞在通道的收发上, 至少已经等待了一个间隔
+    private volatile boolean blockedOnChannel = false;
+    // 成功的通道收发次数, 只记录在最外层解释器中, 用于判断等待期间是否有进展
+    private final AtomicLong channelOps = new AtomicLong();
+    // main上一个等待间隔时所有任务都阻塞时的收发次数, 没有都阻塞时为-1, 只由main的线程使用
+    private long stalledOps = -1;
+    // 等待通道或任务时每次阻塞的最长时间, 之后检查取消标记和任务错误
+    private static final long WAIT_SLICE_MILLIS = 10;
+    // vec<、vec<=条件对应的数组循环, 识别失败时为null
+    private final Map<Quadruple, LoopKernel> loopKernels = new IdentityHashMap<>();
+    // red<、red<=条件对应的归约循环, 识别失败时为null
+    private final Map<Quadruple, LoopReduction> loopReductions = new IdentityHashMap<>();
+    // 不逃逸的局部数组的池, 每个解释器一个
+    private final ArrayPool arrayPool = new ArrayPool();
+    // extern函数名到注册的方法句柄, 只记录在最外层解释器中
+    private final Map<String, MethodHandle> natives = new ConcurrentHashMap<>();
+    // native指令链接后的调用, 参数数组重复使用, 每个解释器一个
+    private final Map<Quadruple, NativeCall> nativeCalls = new IdentityHashMap<>();
+    // 静态段, 第k个元素是槽位%globalk的全局变量, 执行main之前分配, 所有子解释器共享
+    final Symbol[] globals;
+    // 全局变量名及其声明, 热替换的函数按相同的槽位访问全局变量
+    private Map<String, TreeNode> globalDecls = Collections.emptyMap();
+    // 生成程序的中间代码生成器, 热替换后为最近一次替换的生成器, 其中有全局变量、函数签名和调用关系
+    // 直接执行给定的中间代码时为null, 此时不能替换已有的函数
+    private volatile InterGenerator program;
 
     public static void main(String[] args) {
         Lexer lexer = new Lexer("E:\\desktop\\MyCMMInterpreter\\test_opt_2.cmm");
@@ -89,155 +184,1240 @@ public class Interpreter {
      * 初始化工作
      */
     public Interpreter(InterGenerator generator) {
+        this(generator.getCodes(), generator.funcInstrMap);
+        this.globalDecls = generator.globalDecls;
+        this.program = generator;
+    }
+
+    /**
+     * 直接执行给定的中间代码, 如特化后的程序
+     * @param codes 四元式中间代码
+     * @param funcInstrMap 函数入口地址
+     */
+    public Interpreter(List<Quadruple> codes, Map<String, Integer> funcInstrMap) {
         List<String> level0 = new ArrayList<>();
         tempVars.put(0, level0);
-        this.codes = generator.getCodes();
-        this.funcInstrMap = generator.funcInstrMap;
+        // 复制一份, 热替换函数时只追加到解释器自己的代码中
+        // 子解释器在其他线程中读取, 追加时整体替换底层数组, 读取的一方总能看到完整的代码
+        this.codes = new CopyOnWriteArrayList<>(codes);
+        // fork出的子解释器会并发读取
+        this.funcInstrMap = new ConcurrentHashMap<>(funcInstrMap);
+        this.root = this;
+        this.scanner = new Scanner(System.in);
+        this.globals = new Symbol[countGlobals()];
         // 出口栈帧
         Frame outFrame = new Frame(MAIN_OUT_ADDR);
         stackFrames.push(outFrame);
     }
 
     /**
-     * 执行每一行中间代码
+     * 与父解释器共享代码的子解释器, 栈帧由调用者设置
+     */
+    Interpreter(Interpreter parent) {
+        List<String> level0 = new ArrayList<>();
+        tempVars.put(0, level0);
+        this.codes = parent.codes;
+        this.funcInstrMap = parent.funcInstrMap;
+        this.root = parent.root;
+        this.scanner = parent.scanner;
+        this.out = parent.out;
+        this.globals = parent.globals;
+        this.forkBaseDepth = parent.forkBaseDepth + parent.stackFrames.size() - 1;
+        this.forkDepthLimit = parent.forkDepthLimit;
+        this.offHeapThreshold = parent.offHeapThreshold;
+        this.sparseThreshold = parent.sparseThreshold;
+        this.instructionBudget = parent.instructionBudget;
+    }
+
+    /**
+     * fork或spawn出的子解释器, 与父解释器共享代码, 只执行一个函数
+     * @param parent 父解释器
+     * @param funcName 被调函数名
+     * @param args 已经按顺序排列的参数
+     * @param depth fork时的调用深度
+     */
+    private Interpreter(Interpreter parent, String funcName, List<Symbol> args, int depth) {
+        this(parent);
+        // 子解释器的函数栈帧处于深度depth+1, 栈中已有出口栈帧和函数栈帧两层
+        this.forkBaseDepth = depth - 1;
+        Frame outFrame = new Frame(MAIN_OUT_ADDR);
+        stackFrames.push(outFrame);
+        // 函数返回即执行结束
+        Frame frame = new Frame(MAIN_OUT_ADDR);
+        frame.argStack = args;
+        stackFrames.push(frame);
+        instrIndex = funcInstrMap.get(funcName);
+        started = true;
+    }
+
+    /**
+     * 执行每一行中间代码, 直到main函数退出
      */
     public void run() throws ExecutionException {
-        // 从main函数开始执行
-        if (funcInstrMap.containsKey("main")) {
+        while (runFor(Integer.MAX_VALUE) != ExecStatus.FINISHED) {
+            // 一次最多执行Integer.MAX_VALUE条指令, 未结束则继续
+        }
+    }
+
+    /**
+     * 以给定的全部输入执行程序, 结果经缓存复用
+     * 程序确定时以中间代码和输入为键查缓存, 命中则直接写出缓存的输出, 不执行
+     * 未命中时执行, 输出同时写到output和缓存; 出错、取消或换入过函数时不保存
+     * 只能在开始执行前调用
+     * @param input scan读取的全部输入
+     * @param output print的输出
+     * @param cache 结果缓存
+     * @return 是否命中缓存
+     */
+    public boolean runCached(String input, PrintStream output, ResultCache cache) throws ExecutionException {
+        if (started) {
+            throw new IllegalStateException("runCached must be called before execution starts");
+        }
+        scanner = new Scanner(input);
+        // 运行前提交的函数先换入, 键对应实际执行的代码
+        installPendingFunctions();
+        functionsReplaced = false;
+        if (!ResultCache.isDeterministic(codes)) {
+            out = output;
+            run();
+            return false;
+        }
+        String key = ResultCache.key(codes, funcInstrMap, input);
+        ResultCache.Entry entry = cache.get(key);
+        if (entry != null && entry.instructions <= instructionBudget) {
+            output.print(entry.output);
+            output.flush();
+            executedInstructions = entry.instructions;
+            started = true;
+            finished = true;
+            return true;
+        }
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                captured.write(b);
+                output.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                captured.write(b, off, len);
+                output.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                output.flush();
+            }
+        }, true);
+        run();
+        out.flush();
+        if (!functionsReplaced) {
+            cache.put(key, captured.toString(), executedInstructions);
+        }
+        return false;
+    }
+
+    /**
+     * 最多执行指定条数的指令后返回, 之后可再次调用继续执行
+     * @param maxInstructions 本次最多执行的指令数
+     * @return 执行状态
+     */
+    public ExecStatus runFor(int maxInstructions) throws ExecutionException {
+        if (finished) {
+            return ExecStatus.FINISHED;
+        }
+        if (!started) {
+            if (!funcInstrMap.containsKey("main")) {
+                noMainFuncException();
+            }
+            // 先执行静态段, 分配并初始化全局变量, 其中只有声明和计算初值的指令, 没有跳转
+            int staticEnd = staticEnd();
+            instrIndex = 0;
+            while (instrIndex < staticEnd) {
+                execute(codes.get(instrIndex));
+                executedInstructions++;
+            }
+            // 从main函数开始执行
             instrIndex = funcInstrMap.get("main");
-        } else {
-            noMainFuncException();
-            return;
+            started = true;
         }
+        installPendingFunctions();
 
-        while(instrIndex < codes.size()) {
-            if (instrIndex == MAIN_OUT_ADDR) {
-                System.out.println("Main exited.");
-                // main执行结束, 退出
-                return;
+        int executed = 0;
+        try {
+            while (instrIndex < codes.size()) {
+                if (instrIndex == MAIN_OUT_ADDR) {
+                    if (root == this) {
+                        awaitSpawnedTasks();
+                        out.println("Main exited.");
+                    }
+                    // main执行结束, 退出
+                    finished = true;
+                    return ExecStatus.FINISHED;
+                }
+                if (executed == maxInstructions) {
+                    // 指令数用完, 暂停
+                    return ExecStatus.SUSPENDED;
+                }
+                execute(codes.get(instrIndex));
+                executed++;
+                executedInstructions++;
             }
-            Quadruple code = codes.get(instrIndex);
-            switch (code.operation) {
-                case CodeConstant.JMP_WITH_CONDITION:
-                    jumpWithCondition(code);
-                    break;
-                case CodeConstant.JMP:
-                    jump(code);
-                    break;
-                case CodeConstant.SCAN:
-                    scan(code);
-                    break;
-                case CodeConstant.PRINT:
-                    print(code);
-                    break;
-                case CodeConstant.IN:
-                    in();
-                    break;
-                case CodeConstant.OUT:
-                    out();
-                    break;
-                case CodeConstant.INT:
-                case CodeConstant.REAL:
-                case CodeConstant.CHAR:
-                    declaration(code);
-                    break;
-                case CodeConstant.INT_ARR:
-                case CodeConstant.REAL_ARR:
-                    array(code);
-                    break;
-                case CodeConstant.ARR_ACC:
-                    arrayAccess(code);
-                    break;
-                case CodeConstant.PLUS:
-                case CodeConstant.MINUS:
-                case CodeConstant.MUL:
-                case CodeConstant.DIV:
-                    arithmeticOperation(code);
-                    break;
-                case CodeConstant.LE:
-                case CodeConstant.EQ:
-                case CodeConstant.NEQ:
-                case CodeConstant.GR:
-                case CodeConstant.GR_EQ:
-                case CodeConstant.LE_EQ:
-                    relationOperation(code);
-                    break;
-                case CodeConstant.ASSIGN:
-                    assign(code);
-                    break;
-                case CodeConstant.RETURN:
-                    ret(code);
-                    break;
-                case CodeConstant.ARG:
-                    loadArg(code);
-                    break;
-                case CodeConstant.CALL:
-                    call(code);
-                    break;
-                default:
-                    throw new ExecutionException("Unexpected code!");
+        } catch (ExecutionException e) {
+            if (root == this) {
+                // 出错后不再等待, 已启动的任务一并取消
+                cancelSpawnedTasks();
+            }
+            throw e;
+        }
+        finished = true;
+        return ExecStatus.FINISHED;
+    }
+
+    /**
+     * 静态段的结束位置, 即第一个函数的入口, 没有全局变量时为0
+     */
+    private int staticEnd() {
+        int end = codes.size();
+        for (int entry : funcInstrMap.values()) {
+            end = Math.min(end, entry);
+        }
+        return end;
+    }
+
+    /**
+     * 静态段中声明的全局变量个数
+     */
+    private int countGlobals() {
+        int count = 0;
+        for (int i = 0; i < staticEnd(); i++) {
+            if (codes.get(i).dest != null && codes.get(i).dest.startsWith(CodeConstant.GLOBAL_PREFIX)) {
+                count = Math.max(count, globalSlot(codes.get(i).dest) + 1);
             }
         }
+        return count;
+    }
+
+    private static int globalSlot(String name) {
+        return Integer.parseInt(name.substring(CodeConstant.GLOBAL_PREFIX.length()));
+    }
+
+    /**
+     * 执行单条中间代码
+     */
+    private void execute(Quadruple code) throws ExecutionException {
+        switch (code.operation) {
+            case CodeConstant.JMP_WITH_CONDITION:
+                jumpWithCondition(code);
+                break;
+            case CodeConstant.JMP:
+                jump(code);
+                break;
+            case CodeConstant.FOR_LE:
+            case CodeConstant.FOR_LE_EQ:
+                countedStep(code);
+                break;
+            case CodeConstant.SWITCH:
+                switchJump(code);
+                break;
+            case CodeConstant.SCAN:
+                scan(code);
+                break;
+            case CodeConstant.PRINT:
+                print(code);
+                break;
+            case CodeConstant.IN:
+                in();
+                break;
+            case CodeConstant.OUT:
+                out();
+                break;
+            case CodeConstant.INT:
+            case CodeConstant.REAL:
+            case CodeConstant.CHAR:
+                declaration(code);
+                break;
+            case CodeConstant.INT_ARR:
+            case CodeConstant.REAL_ARR:
+            case CodeConstant.POOL_INT_ARR:
+            case CodeConstant.POOL_REAL_ARR:
+                array(code);
+                break;
+            case CodeConstant.ARR_ACC:
+                arrayAccess(code);
+                break;
+            case CodeConstant.ARR_ACC_2D:
+                matrixAccess(code);
+                break;
+            case CodeConstant.PLUS:
+            case CodeConstant.MINUS:
+            case CodeConstant.MUL:
+            case CodeConstant.DIV:
+                arithmeticOperation(code);
+                break;
+            case CodeConstant.LE:
+            case CodeConstant.EQ:
+            case CodeConstant.NEQ:
+            case CodeConstant.GR:
+            case CodeConstant.GR_EQ:
+            case CodeConstant.LE_EQ:
+                relationOperation(code);
+                break;
+            case CodeConstant.VEC_LE:
+            case CodeConstant.VEC_LE_EQ:
+                vectorLoop(code);
+                break;
+            case CodeConstant.RED_LE:
+            case CodeConstant.RED_LE_EQ:
+                reductionLoop(code);
+                break;
+            case CodeConstant.ASSIGN:
+                assign(code);
+                break;
+            case CodeConstant.PLUS_ASSIGN:
+            case CodeConstant.MINUS_ASSIGN:
+            case CodeConstant.MUL_ASSIGN:
+            case CodeConstant.DIV_ASSIGN:
+                compoundAssign(code);
+                break;
+            case CodeConstant.RETURN:
+                ret(code);
+                break;
+            case CodeConstant.ARG:
+                loadArg(code);
+                break;
+            case CodeConstant.CALL:
+                call(code);
+                break;
+            case CodeConstant.FORK:
+                fork(code);
+                break;
+            case CodeConstant.NATIVE:
+                callNative(code);
+                break;
+            case CodeConstant.SQRT:
+            case CodeConstant.POW:
+            case CodeConstant.ABS:
+            case CodeConstant.MIN:
+            case CodeConstant.MAX:
+            case CodeConstant.FLOOR:
+                builtinOperation(code);
+                break;
+            case CodeConstant.FILL:
+            case CodeConstant.COPY:
+            case CodeConstant.SORT:
+            case CodeConstant.SUM:
+                arrayBuiltin(code);
+                break;
+            case CodeConstant.PAR_LE:
+            case CodeConstant.PAR_LE_EQ:
+                parallelLoop(code);
+                break;
+            case CodeConstant.JOIN:
+                join(code);
+                break;
+            case CodeConstant.SPAWN:
+                spawn(code);
+                break;
+            case CodeConstant.CHAN:
+                channel(code);
+                break;
+            case CodeConstant.SEND:
+                send(code);
+                break;
+            case CodeConstant.RECV:
+                recv(code);
+                break;
+            default:
+                throw new ExecutionException("Unexpected code!");
+        }
     }
 
     /**
      * 装载参数
      */
-    private void loadArg(Quadruple code) {
-        TreeNode arg = new TreeNode();
+    private void loadArg(Quadruple code) throws ExecutionException {
+        Symbol arg = new Symbol(CodeConstant.ARG_PREFIX + argsList.size());
         switch (code.firstOperandType) {
             case INT_LITERAL:
-                arg.setType(TreeNodeType.INT_LITERAL);
+                arg.setType(SymValueType.INT);
                 arg.setIntValue(((IntOperand)code.firstOperand).intLiteral);
                 break;
             case REAL_LITERAL:
-                arg.setType(TreeNodeType.REAL_LITERAL);
+                arg.setType(SymValueType.REAL);
                 arg.setRealValue(((RealOperand)code.firstOperand).realLiteral);
                 break;
             case IDENTIFIER:
-                Symbol tmpSymbol = stackFrames.peek().localVarTable.getSymbol(code.firstOperand.name);
-                if (tmpSymbol.getType() == SymValueType.INT) {
-                    arg.setType(TreeNodeType.INT_LITERAL);
-                    arg.setIntValue(tmpSymbol.getIntValue());
-                } else if(tmpSymbol.getType() == SymValueType.REAL) {
-                    arg.setType(TreeNodeType.REAL_LITERAL);
-                    arg.setRealValue(tmpSymbol.getRealValue());
+                Symbol source = lookupSymbol(code.firstOperand.name);
+                if (source != null && (source.getType() == SymValueType.INT_ARRAY
+                        || source.getType() == SymValueType.REAL_ARRAY)) {
+                    // 数组按引用传递, 被调函数直接使用调用者的符号, 不拷贝元素
+                    // 稀疏数组转为连续存放时替换的是符号中的存储, 调用双方看到的仍是同一个数组
+                    argsList.add(source);
+                    nextInstruction();
+                    return;
+                }
+                if (source != null && source.getType() == SymValueType.CHANNEL) {
+                    // 通道按引用传递
+                    arg.setType(SymValueType.CHANNEL);
+                    arg.setChannel(source.getChannel());
+                    break;
+                }
+                // 变量或调用者自己的参数
+                double value = getFirstOperand(code);
+                if (isFirstOperandInt) {
+                    arg.setType(SymValueType.INT);
+                    arg.setIntValue((int) value);
+                } else {
+                    arg.setType(SymValueType.REAL);
+                    arg.setRealValue(value);
                 }
                 break;
         }
-        argsList.add(arg);
-        nextInstruction();
+        argsList.add(arg);
+        nextInstruction();
+    }
+
+    /**
+     * 调用函数
+     */
+    private void call(Quadruple code) throws ExecutionException {
+        checkLimits();
+        installPendingFunctions();
+        Frame frame = new Frame();
+        // 返回地址为当前的下一条语句
+        frame.retAddr = instrIndex+1;
+        frame.blockLevel = blockLevel;
+        // 已经按顺序排列的参数
+        frame.argStack = argsList;
+        argsList = new ArrayList<>();
+        // 跳转到指定位置
+        String callName = code.firstOperand.name;
+        if (!funcInstrMap.containsKey(callName)) {
+            // 找不到指定位置
+            undefinedFuncException(callName);
+        } else {
+            // 压入栈帧
+            stackFrames.push(frame);
+            instrIndex = funcInstrMap.get(callName);
+        }
+    }
+
+
+    /**
+     * 调用extern函数, 不压入栈帧, 执行注册的Java方法后继续下一条指令
+     * 第一次执行时按参数个数和extern声明链接方法句柄
+     */
+    private void callNative(Quadruple code) throws ExecutionException {
+        NativeCall nativeCall = nativeCalls.get(code);
+        if (nativeCall == null) {
+            String callName = code.firstOperand.name;
+            MethodHandle handle = root.natives.get(callName);
+            if (handle == null) {
+                throw new ExecutionException("Extern function " + callName + " is not bound!");
+            }
+            InterGenerator declarations = root.program;
+            List<TreeNode> params = declarations == null ? null : declarations.funcArgTypeMap.get(callName);
+            TreeNodeType returnType = declarations == null ? null : declarations.externReturnTypeMap.get(callName);
+            nativeCall = NativeCall.link(callName, handle, params, returnType, argsList.size());
+            nativeCalls.put(code, nativeCall);
+        }
+        nativeCall.invoke(argsList, retValue);
+        argsList = new ArrayList<>();
+        nextInstruction();
+    }
+
+    /**
+     * 并行调用无副作用的函数
+     * 调用深度未超过粒度阈值时交给ForkJoinPool中的子解释器执行, 否则按普通调用执行
+     */
+    private void fork(Quadruple code) throws ExecutionException {
+        installPendingFunctions();
+        String callName = code.firstOperand.name;
+        int depth = forkBaseDepth + stackFrames.size();
+        if (depth >= forkDepthLimit || root.forkDisabled || !funcInstrMap.containsKey(callName)) {
+            call(code);
+            // 返回时把返回值交给join
+            stackFrames.peek().forkDest = code.dest;
+            return;
+        }
+        checkLimits();
+        ForkedCall forkedCall = new ForkedCall(new Interpreter(this, callName, argsList, depth));
+        argsList = new ArrayList<>();
+        stackFrames.peek().addFork(code.dest, forkedCall);
+        forkedCall.fork();
+        nextInstruction();
+    }
+
+    /**
+     * 启动任务, 在独立的子解释器中执行函数, 不等待其结束
+     */
+    private void spawn(Quadruple code) throws ExecutionException {
+        checkLimits();
+        installPendingFunctions();
+        String callName = code.firstOperand.name;
+        if (!funcInstrMap.containsKey(callName)) {
+            undefinedFuncException(callName);
+        }
+        Interpreter child = new Interpreter(this, callName, argsList, forkBaseDepth + stackFrames.size());
+        argsList = new ArrayList<>();
+        SpawnedTask task = new SpawnedTask(child, root.spawnFailure);
+        root.spawnedTasks.add(task);
+        task.start();
+        nextInstruction();
+    }
+
+    /**
+     * 声明通道
+     */
+    private void channel(Quadruple code) throws ExecutionException {
+        Symbol symbol = new Symbol(code.dest);
+        double capacity = getFirstOperand(code);
+        if (capacity < 1) {
+            throw new ExecutionException("Channel capacity less than 1!");
+        }
+        if (tempVars.get(blockLevel).contains(symbol.getName())) {
+            redeclarationException(symbol.getName());
+        }
+        symbol.setType(SymValueType.CHANNEL);
+        symbol.setChannel(new Channel((int) capacity));
+        addTempSymbol(symbol);
+        nextInstruction();
+    }
+
+    /**
+     * 向通道发送, 通道满时等待
+     */
+    private void send(Quadruple code) throws ExecutionException {
+        Channel channel = getChannel(code.secondOperand.name);
+        double value = getFirstOperand(code);
+        Number item = isFirstOperandInt ? Integer.valueOf((int) value) : Double.valueOf(value);
+        stalledOps = -1;
+        try {
+            while (!channel.offer(item, WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS)) {
+                blockedOnChannel = true;
+                checkWaiting();
+                if (isWaitingAlone()) {
+                    // 任务可能在结束前刚刚接收, 最后再试一次
+                    if (!channel.offer(item, 0, TimeUnit.MILLISECONDS)) {
+                        deadlockException(code.secondOperand.name);
+                    }
+                    break;
+                }
+            }
+            // 先计数再清除阻塞标记, main不会看到已完成收发却没有进展的状态
+            root.channelOps.incrementAndGet();
+        } catch (InterruptedException e) {
+            interruptedException();
+        } finally {
+            blockedOnChannel = false;
+        }
+        nextInstruction();
+    }
+
+    /**
+     * 从通道接收到变量, 通道空时等待
+     */
+    private void recv(Quadruple code) throws ExecutionException {
+        Channel channel = getChannel(code.firstOperand.name);
+        Symbol target = lookupSymbol(code.dest);
+        if (target == null) {
+            varNotDeclaredException(code.dest);
+        }
+        if (target.getType() != SymValueType.INT && target.getType() != SymValueType.REAL
+                && target.getType() != SymValueType.CHAR) {
+            throw new ExecutionException("Cannot receive into " + code.dest);
+        }
+        Number item = null;
+        stalledOps = -1;
+        try {
+            while ((item = channel.poll(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                blockedOnChannel = true;
+                checkWaiting();
+                if (isWaitingAlone()) {
+                    // 任务可能在结束前刚刚发送, 最后再试一次
+                    item = channel.poll(0, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        deadlockException(code.firstOperand.name);
+                    }
+                    break;
+                }
+            }
+            // 先计数再清除阻塞标记, main不会看到已完成收发却没有进展的状态
+            root.channelOps.incrementAndGet();
+        } catch (InterruptedException e) {
+            interruptedException();
+        } finally {
+            blockedOnChannel = false;
+        }
+        if (target.getType() == SymValueType.REAL) {
+            target.setRealValue(item.doubleValue());
+        } else {
+            // 以变量类型进行类型转换
+            target.setIntValue(item.intValue());
+        }
+        nextInstruction();
+    }
+
+    /**
+     * 取出通道变量或通道参数
+     */
+    private Channel getChannel(String name) throws ExecutionException {
+        Symbol symbol = lookupSymbol(name);
+        if (symbol == null) {
+            symbolNotFoundException(name);
+        }
+        if (symbol.getType() != SymValueType.CHANNEL) {
+            throw new ExecutionException(name + " is not a channel!");
+        }
+        return symbol.getChannel();
+    }
+
+    /**
+     * main退出前等待所有任务结束, 任务中的错误在此抛出
+     * 剩下的任务都阻塞在通道上且一个等待间隔内没有任何收发时, 它们不会再结束, 报告死锁
+     */
+    private void awaitSpawnedTasks() throws ExecutionException {
+        SpawnedTask task;
+        stalledOps = -1;
+        while ((task = spawnedTasks.peek()) != null) {
+            try {
+                while (!task.await(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkWaiting();
+                    if (root == this && isStalled()) {
+                        throw new ExecutionException("Deadlock: main is waiting for tasks"
+                                + " that are all blocked on channels!");
+                    }
+                }
+            } catch (InterruptedException e) {
+                interruptedException();
+            }
+            spawnedTasks.poll();
+            mergeInstructions(task.getExecutedInstructions());
+        }
+        checkWaiting();
+    }
+
+    /**
+     * 取消所有未结束的任务
+     */
+    private void cancelSpawnedTasks() {
+        for (SpawnedTask task : spawnedTasks) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * 阻塞等待的间隙检查取消标记、指令数限制和任务错误
+     */
+    private void checkWaiting() throws ExecutionException {
+        checkLimits();
+        ExecutionException failure = root.spawnFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * main在通道上等待时是否不会再有其他人收发: 没有在运行的任务, 或者任务都阻塞在通道上
+     */
+    private boolean isWaitingAlone() {
+        return root == this && (!hasRunningTasks() || isStalled());
+    }
+
+    /**
+     * main等待期间, 所有未结束的任务是否都阻塞在通道上, 且从上一个等待间隔起没有任何收发
+     * 此时通道的状态不再变化, 阻塞的收发都不会成功; 由main在每个等待间隔调用一次
+     */
+    private boolean isStalled() {
+        for (SpawnedTask task : spawnedTasks) {
+            if (!task.isDone() && !task.isBlockedOnChannel()) {
+                stalledOps = -1;
+                return false;
+            }
+        }
+        long ops = channelOps.get();
+        if (stalledOps == ops) {
+            return true;
+        }
+        stalledOps = ops;
+        return false;
+    }
+
+    /**
+     * 是否正阻塞在通道的收发上
+     */
+    boolean isBlockedOnChannel() {
+        return blockedOnChannel;
+    }
+
+    /**
+     * 是否有尚未结束的任务
+     */
+    boolean hasRunningTasks() {
+        for (SpawnedTask task : spawnedTasks) {
+            if (!task.isDone()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 并行循环
+     * 各次迭代分块交给ForkJoinPool, 每次迭代在以当前栈帧为后备的独立栈帧中执行循环体
+     * 结束后循环变量等于第一个不满足条件的值, 与顺序执行相同
+     */
+    private void parallelLoop(Quadruple code) throws ExecutionException {
+        checkLimits();
+        Symbol loopVar = getSymbol(code.firstOperand.name);
+        if (loopVar == null) {
+            varNotDeclaredException(code.firstOperand.name);
+        }
+        if (loopVar.getType() != SymValueType.INT) {
+            throw new ExecutionException("Parallel loop variable " + loopVar.getName() + " must be int!");
+        }
+        int start = loopVar.getIntValue();
+        long count = iterationCount(code.operation.equals(CodeConstant.PAR_LE), start, getSecondOperand(code));
+        if (count > 0) {
+            // 稀疏数组不能被多个线程同时写入, 先转为连续存放
+            for (Symbol symbol : stackFrames.peek().localVarTable.entries().values()) {
+                for (; symbol != null; symbol = symbol.getNext()) {
+                    if (symbol.getSparseArray() != null) {
+                        densify(symbol);
+                    }
+                }
+            }
+            if (stackFrames.peek().argStack != null) {
+                for (Symbol arg : stackFrames.peek().argStack) {
+                    if (arg.getSparseArray() != null) {
+                        densify(arg);
+                    }
+                }
+            }
+            // 换入了有副作用的函数时顺序执行
+            long grain = root.forkDisabled ? count
+                    : Math.max(1, count / (ForkJoinPool.getCommonPoolParallelism() * 4L));
+            ParallelLoop loop = new ParallelLoop(this, stackFrames.peek(), loopVar.getName(), start,
+                    instrIndex + 1, code.jumpLocation, 0, count, grain);
+            loop.invoke();
+            mergeInstructions(loop.getExecutedInstructions());
+            try {
+                loop.rethrow();
+            } catch (ExecutionAbortedException e) {
+                throw budgetExceeded(e);
+            }
+            loopVar.setIntValue((int) (start + count));
+        }
+        instrIndex = code.jumpLocation;
+    }
+
+    /**
+     * 可以整体执行的数组循环的条件
+     * 先对所有不越界的迭代整体计算, 循环变量前进到第一个未执行的值, 再按<、<=判断条件
+     * 剩余的迭代(包括越界的那一次)逐条执行, 越界错误与逐条执行时在同一下标报告
+     */
+    private void vectorLoop(Quadruple code) throws ExecutionException {
+        LoopKernel kernel;
+        if (loopKernels.containsKey(code)) {
+            kernel = loopKernels.get(code);
+        } else {
+            // 代码被部分求值或热替换改动后可能不再符合, 此时逐条执行
+            kernel = LoopKernel.match(codes, instrIndex);
+            loopKernels.put(code, kernel);
+        }
+        if (kernel != null) {
+            runLoopKernel(code, kernel);
+        }
+        relationOperation(code);
+    }
+
+    private void runLoopKernel(Quadruple code, LoopKernel kernel) throws ExecutionException {
+        Symbol loopVar = stackFrames.peek().localVarTable.getSymbol(kernel.loopVar);
+        if (loopVar == null || loopVar.getType() != SymValueType.INT) {
+            return;
+        }
+        int start = loopVar.getIntValue();
+        long count = iterationCount(code.operation.equals(CodeConstant.VEC_LE), start, getSecondOperand(code));
+        ArrayKernel.Lane target = arrayLane(kernel.target);
+        ArrayKernel.Lane first = lane(kernel.first);
+        ArrayKernel.Lane second = kernel.second == null ? null : lane(kernel.second);
+        if (count <= 0 || start < 0 || target == null || first == null
+                || (kernel.operation != null && second == null)) {
+            return;
+        }
+        // 不越界的迭代数, 不超过剩余的指令数限制
+        long safe = Math.min(count, target.length() - (long) start);
+        if (first.isArray()) {
+            safe = Math.min(safe, first.length() - (long) start);
+        }
+        if (second != null && second.isArray()) {
+            safe = Math.min(safe, second.length() - (long) start);
+        }
+        safe = Math.min(safe, remainingInstructions() / kernel.instructionsPerIteration);
+        checkLimits();
+        if (safe <= 0) {
+            return;
+        }
+        ArrayKernel.run(kernel.operation, target, first, second, start, (int) safe);
+        loopVar.setIntValue((int) (start + safe));
+        executedInstructions += safe * kernel.instructionsPerIteration;
+    }
+
+    /**
+     * 归约循环的条件
+     * 先对所有不越界的迭代整体归约, 循环变量前进到第一个未执行的值, 再按<、<=判断条件
+     */
+    private void reductionLoop(Quadruple code) throws ExecutionException {
+        LoopReduction reduction;
+        if (loopReductions.containsKey(code)) {
+            reduction = loopReductions.get(code);
+        } else {
+            reduction = LoopReduction.match(codes, instrIndex);
+            loopReductions.put(code, reduction);
+        }
+        if (reduction != null) {
+            runLoopReduction(code, reduction);
+        }
+        relationOperation(code);
+    }
+
+    private void runLoopReduction(Quadruple code, LoopReduction reduction) throws ExecutionException {
+        SymbolTable table = stackFrames.peek().localVarTable;
+        Symbol loopVar = table.getSymbol(reduction.loopVar);
+        Symbol accumulator = table.getSymbol(reduction.accumulator);
+        ArrayKernel.Lane array = arrayLane(reduction.array);
+        if (loopVar == null || loopVar.getType() != SymValueType.INT || accumulator == null || array == null
+                || (accumulator.getType() != SymValueType.INT && accumulator.getType() != SymValueType.REAL)) {
+            return;
+        }
+        int start = loopVar.getIntValue();
+        long count = iterationCount(code.operation.equals(CodeConstant.RED_LE), start, getSecondOperand(code));
+        if (count <= 0 || start < 0) {
+            return;
+        }
+        // 不越界的迭代数, 按每次迭代都更新估计, 不超过剩余的指令数限制
+        long safe = Math.min(count, array.length() - (long) start);
+        safe = Math.min(safe, remainingInstructions()
+                / (reduction.instructionsPerIteration + reduction.instructionsPerUpdate));
+        checkLimits();
+        if (safe <= 0) {
+            return;
+        }
+        boolean isInt = accumulator.getType() == SymValueType.INT;
+        ArrayReduction result = new ArrayReduction(reduction, isInt,
+                isInt ? accumulator.getIntValue() : accumulator.getRealValue());
+        result.run(array, start, (int) (start + safe));
+        if (isInt) {
+            accumulator.setIntValue((int) result.value);
+        } else {
+            accumulator.setRealValue(result.value);
+        }
+        loopVar.setIntValue((int) (start + safe));
+        executedInstructions += safe * reduction.instructionsPerIteration
+                + result.updates * reduction.instructionsPerUpdate;
+    }
+
+    /**
+     * 循环变量从start开始每次加1, 小于(lessThan为false时小于等于)上界的迭代数
+     */
+    private static long iterationCount(boolean lessThan, int start, double bound) {
+        if (lessThan) {
+            return (long) Math.ceil(bound - start);
+        }
+        return (long) Math.floor(bound - start) + 1;
+    }
+
+    /**
+     * 当前栈帧中的数组或数组参数, 不是数组时返回null
+     */
+    private ArrayKernel.Lane arrayLane(String name) {
+        Symbol array = lookupSymbol(name);
+        if (array == null || array.getColumns() > 0 || array.getOffHeapArray() != null
+                || array.getSparseArray() != null) {
+            // 二维数组、堆外数组和稀疏数组逐条执行
+            return null;
+        }
+        if (array.getType() == SymValueType.INT_ARRAY) {
+            return ArrayKernel.Lane.of(array.getIntArray());
+        }
+        if (array.getType() == SymValueType.REAL_ARRAY) {
+            return ArrayKernel.Lane.of(array.getRealArray());
+        }
+        return null;
+    }
+
+    /**
+     * 数组循环的操作数, 类型不符合时返回null
+     */
+    private ArrayKernel.Lane lane(LoopKernel.Source source) {
+        switch (source.kind) {
+            case ARRAY:
+                return arrayLane(source.name);
+            case INDEX:
+                return ArrayKernel.Lane.index();
+            case INT_LITERAL:
+                return ArrayKernel.Lane.ofInt(source.intLiteral);
+            case REAL_LITERAL:
+                return ArrayKernel.Lane.ofReal(source.realLiteral);
+            default:
+                Symbol symbol = lookupSymbol(source.name);
+                if (symbol == null) {
+                    return null;
+                }
+                switch (symbol.getType()) {
+                    case INT:
+                    case CHAR:
+                    case INT_ARRAY_ELEMENT:
+                        return ArrayKernel.Lane.ofInt(symbol.getIntValue());
+                    case REAL:
+                    case REAL_ARRAY_ELEMENT:
+                        return ArrayKernel.Lane.ofReal(symbol.getRealValue());
+                    default:
+                        return null;
+                }
+        }
+    }
+
+    /**
+     * 执行并行循环的一次迭代, 由ParallelLoop在工作线程中调用
+     * @param outer 循环所在的栈帧, 只读
+     * @param loopVarName 循环变量名
+     * @param value 本次迭代的循环变量值
+     * @param bodyStart 循环体开始位置
+     * @param bodyEnd 循环体结束后的位置
+     */
+    void runIteration(Frame outer, String loopVarName, int value, int bodyStart, int bodyEnd)
+            throws ExecutionException {
+        Frame frame = new Frame(MAIN_OUT_ADDR);
+        frame.localVarTable = new SymbolTable(outer.localVarTable);
+        frame.argStack = outer.argStack;
+        Symbol loopVar = new Symbol(loopVarName);
+        loopVar.setType(SymValueType.INT);
+        loopVar.setIntValue(value);
+        frame.localVarTable.addSymbol(loopVar);
+        stackFrames.clear();
+        stackFrames.push(frame);
+        blockLevel = 0;
+        tempVars.clear();
+        tempVars.put(0, new ArrayList<>());
+        argsList = new ArrayList<>();
+        instrIndex = bodyStart;
+        checkLimits();
+        while (instrIndex != bodyEnd) {
+            execute(codes.get(instrIndex));
+            executedInstructions++;
+        }
+    }
+
+    /**
+     * 等待fork的调用结束, 把返回值赋给变量
+     */
+    private void join(Quadruple code) throws ExecutionException {
+        ForkedCall forkedCall = stackFrames.peek().forks.remove(code.dest);
+        // join可能位于另一个调用和它的返回值赋值之间, 不能覆盖返回值寄存器
+        ReturnRegister saved = retValue;
+        try {
+            retValue = forkedCall.joinResult();
+        } catch (ExecutionAbortedException e) {
+            mergeInstructions(forkedCall.getExecutedInstructions());
+            throw budgetExceeded(e);
+        }
+        mergeInstructions(forkedCall.getExecutedInstructions());
+        assign(code);
+        retValue = saved;
+    }
+
+    /**
+     * 无条件跳转
+     */
+    private void jump(Quadruple code) throws ExecutionException {
+        if (code.jumpLocation <= instrIndex) {
+            // 循环的回跳
+            checkLimits();
+        }
+        instrIndex = code.jumpLocation;
+    }
+
+    /**
+     * switch, 按跳转表跳到对应的case, 没有对应的case时跳到default或switch之后
+     */
+    private void switchJump(Quadruple code) throws ExecutionException {
+        double value = getFirstOperand(code);
+        if (!isFirstOperandInt) {
+            throw new ExecutionException("Switch value must be int or char!");
+        }
+        int target = code.switchTable.lookup((int) value);
+        instrIndex = target == -1 ? code.jumpLocation : target;
+    }
+
+    /**
+     * for循环的步进
+     * 循环变量加1, 仍小于(小于等于)上界时跳回循环体开头, 否则执行下一条
+     */
+    private void countedStep(Quadruple code) throws ExecutionException {
+        Symbol loopVar = stackFrames.peek().localVarTable.getSymbol(code.firstOperand.name);
+        if (loopVar == null) {
+            varNotDeclaredException(code.firstOperand.name);
+        }
+        // 与赋值 i = i + 1 的类型转换相同
+        if (loopVar.getType() == SymValueType.INT || loopVar.getType() == SymValueType.CHAR) {
+            loopVar.setIntValue(loopVar.getIntValue() + 1);
+        } else if (loopVar.getType() == SymValueType.REAL) {
+            loopVar.setRealValue(loopVar.getRealValue() + 1);
+        }
+        double value = getFirstOperand(code);
+        double bound = getSecondOperand(code);
+        boolean next = code.operation.equals(CodeConstant.FOR_LE) ? value < bound : value <= bound;
+        if (next) {
+            checkLimits();
+            instrIndex = code.jumpLocation;
+        } else {
+            nextInstruction();
+        }
+    }
+
+    /**
+     * 检查指令数限制和取消标记
+     */
+    private void checkLimits() throws ExecutionException {
+        if (cancelled || root.cancelled) {
+            throw new ExecutionAbortedException("Execution cancelled after "
+                    + executedInstructions + " instructions", executedInstructions, true);
+        }
+        long delta = executedInstructions - flushedInstructions;
+        // 每个解释器都加上自己未计入的部分检查, 并行时总共最多超出(解释器数-1)*FLUSH_INSTRUCTIONS条
+        long total = delta >= FLUSH_INSTRUCTIONS ? flushInstructions() : root.countedInstructions.get() + delta;
+        if (total > instructionBudget) {
+            throw new ExecutionAbortedException("Instruction budget " + instructionBudget + " exceeded after "
+                    + total + " instructions", total, false);
+        }
+    }
+
+    /**
+     * 把尚未计入的指令数计入最外层解释器的总数, 子解释器结束时也要调用一次
+     * @return 所有解释器已计入的指令数之和
+     */
+    long flushInstructions() {
+        long delta = executedInstructions - flushedInstructions;
+        flushedInstructions = executedInstructions;
+        return root.countedInstructions.addAndGet(delta);
+    }
+
+    /**
+     * 合并已结束的子解释器执行的指令数, 它们已由子解释器计入总数
+     */
+    private void mergeInstructions(long childInstructions) {
+        executedInstructions += childInstructions;
+        flushedInstructions += childInstructions;
+    }
+
+    /**
+     * 在指令数限制之内还能执行的指令数, 包括其他并行执行的解释器已计入的指令
+     */
+    private long remainingInstructions() {
+        return instructionBudget - root.countedInstructions.get() - (executedInstructions - flushedInstructions);
+    }
+
+    /**
+     * 子解释器超出指令数限制时, 以本解释器的限制和合并后的总指令数重新报告; 取消原样抛出
+     */
+    private ExecutionAbortedException budgetExceeded(ExecutionAbortedException e) {
+        if (e.isCancelled()) {
+            return e;
+        }
+        // 其他仍在并行执行的解释器已计入的指令也算在内
+        long total = flushInstructions();
+        return new ExecutionAbortedException("Instruction budget " + instructionBudget + " exceeded after "
+                + total + " instructions", total, false);
+    }
+
+    /**
+     * 设置指令数限制
+     * fork、并行循环和spawn的子解释器执行的指令一并计入, 共同受这一个限制
+     * 超出后在下一次回跳或函数调用时抛出ExecutionAbortedException
+     */
+    public void setInstructionBudget(long instructionBudget) {
+        this.instructionBudget = instructionBudget;
+    }
+
+    /**
+     * 取消执行, 可以在其他线程调用
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 获取已执行的指令数
+     */
+    public long getExecutedInstructions() {
+        return executedInstructions;
+    }
+
+    /**
+     * 热替换函数: 单独编译一个函数定义, 之后的调用进入新的函数体
+     * 已经在执行旧函数体的栈帧不受影响, 旧代码保留到这些栈帧返回之后
+     * 只编译和重定位这一个函数, 耗时与函数大小相关, 与整个程序无关
+     * 可以在其他线程执行时调用, 新函数在下一次函数调用或runFor开始时换入
+     * @param source 一个完整的函数定义, 如 func f(int a) int { ... }
+     */
+    public void replaceFunction(String source) throws LexException, GramException, SemanticException {
+        Lexer lexer = new Lexer(null);
+        lexer.setSrcCode(source + "\n");
+        lexer.loadTokenList();
+        if (!lexer.ifSuccess) {
+            throw new LexException(lexer.errInfoBuffer.toString());
+        }
+        SyntaxParser parser = new SyntaxParser(lexer);
+        // 可以调用程序中已有的函数、等待换入的函数和注册的extern函数
+        parser.addKnownFunctions(new ArrayList<>(funcInstrMap.keySet()));
+        InterGenerator current = root.program;
+        if (current != null) {
+            parser.addKnownFunctions(new ArrayList<>(current.funcReturnTypeMap.keySet()));
+        }
+        parser.addKnownFunctions(root.natives.keySet());
+        parser.startParse();
+        if (!parser.ifSuccess) {
+            throw new GramException(parser.errInfoBuffer.toString());
+        }
+        if (parser.getTreeNodes().size() != 1) {
+            throw new GramException("Expected exactly one function definition, found "
+                    + parser.getTreeNodes().size());
+        }
+        if (parser.getTreeNodes().get(0).getType() != TreeNodeType.FUNCTION) {
+            throw new GramException("Expected a function definition, cannot declare globals when replacing!");
+        }
+        InterGenerator generator = new InterGenerator(parser);
+        generator.addExternFunctions(root.natives.keySet());
+        synchronized (root) {
+            String name = parser.getTreeNodes().get(0).getSymbolName();
+            if (root.program == null) {
+                if (funcInstrMap.containsKey(name)) {
+                    throw new SemanticException("Signature of " + name + " is unknown, it cannot be replaced!");
+                }
+            } else {
+                // 可以读写程序的全局变量, 不能声明新的全局变量; 替换已有函数时签名不变
+                generator.addProgram(root.program);
+            }
+            generator.start();
+            // 检查通过后新函数的信息供之后的替换使用
+            if (root.program != null) {
+                root.program = generator;
+            }
+            pendingFunctions.add(generator);
+        }
+    }
+
+    /**
+     * 在执行线程中换入等待的函数
+     * 新代码追加到末尾, 跳转地址按追加位置重定位, 再更新函数入口地址
+     */
+    private void installPendingFunctions() {
+        InterGenerator generator;
+        while ((generator = pendingFunctions.poll()) != null) {
+            int base = codes.size();
+            for (Quadruple code : generator.getCodes()) {
+                if (code.isJump()) {
+                    code.relocate(location -> location + base);
+                }
+            }
+            // 先一次追加全部代码, 再更新入口地址, 子解释器查到新入口时代码已经可见
+            codes.addAll(generator.getCodes());
+            for (Map.Entry<String, Integer> entry : generator.funcInstrMap.entrySet()) {
+                funcInstrMap.put(entry.getKey(), entry.getValue() + base);
+            }
+            functionsReplaced = true;
+            if (!generator.pureFuncs.containsAll(generator.funcInstrMap.keySet())) {
+                // 已改写为fork的调用可能进入有副作用的新函数
+                forkDisabled = true;
+            }
+        }
+    }
+
+    /**
+     * 绑定extern函数, 程序中以extern func声明, 调用时执行给定的方法句柄
+     * 参数只能是int、char、double, 返回值还可以是void; 第一次调用时检查方法的类型与extern声明一致
+     * 在运行前或运行中绑定, 已执行过的调用点仍使用原来的方法
+     * @param name extern函数名
+     * @param handle 方法句柄, 如MethodHandles.lookup().findStatic(...)
+     */
+    public void registerNative(String name, MethodHandle handle) {
+        if (!NativeCall.isSupported(handle.type())) {
+            throw new IllegalArgumentException("Extern function " + name
+                    + " must take int, char or double and return int, char, double or void!");
+        }
+        root.natives.put(name, handle);
+    }
+
+    /**
+     * 把一个类中的public static方法绑定为同名的extern函数
+     * 重载的方法无法按名字区分, 不绑定; 类型不是int、char、double的方法也绑定, 调用时报告与声明不符
+     */
+    public void registerNatives(Class<?> owner) {
+        Map<String, Method> methods = new HashMap<>();
+        Set<String> overloaded = new HashSet<>();
+        for (Method method : owner.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (methods.put(method.getName(), method) != null) {
+                overloaded.add(method.getName());
+            }
+        }
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Method method : methods.values()) {
+            if (overloaded.contains(method.getName())) {
+                continue;
+            }
+            try {
+                root.natives.put(method.getName(), lookup.unreflect(method));
+            } catch (IllegalAccessException e) {
+                // 不可访问的方法不绑定
+            }
+        }
     }
 
     /**
-     * 调用函数
+     * 设置fork的粒度阈值, 调用深度不小于该值的fork按普通调用执行, 0表示不并行
      */
-    private void call(Quadruple code) throws ExecutionException {
-        Frame frame = new Frame();
-        // 返回地址为当前的下一条语句
-        frame.retAddr = instrIndex+1;
-        // 已经按顺序排列的参数
-        frame.argStack = argsList;
-        argsList = new ArrayList<>();
-        // 跳转到指定位置
-        String callName = code.firstOperand.name;
-        if (!funcInstrMap.containsKey(callName)) {
-            // 找不到指定位置
-            undefinedFuncException(callName);
-        } else {
-            // 压入栈帧
-            stackFrames.push(frame);
-            instrIndex = funcInstrMap.get(callName);
-        }
+    public void setForkDepthLimit(int forkDepthLimit) {
+        this.forkDepthLimit = forkDepthLimit;
+    }
+
+    /**
+     * 设置堆外数组的阈值, 元素数不小于该值的数组放在堆外, 超过Java数组长度上限的数组总是放在堆外
+     * 堆外数组不参与数组循环的整体执行和归约
+     */
+    public void setOffHeapThreshold(long offHeapThreshold) {
+        this.offHeapThreshold = offHeapThreshold;
     }
 
+    /**
+     * 设置稀疏数组的阈值, 声明的元素数不小于该值的数组先稀疏存放, 写入的元素超过长度的1/8后转为连续存放
+     * 稀疏数组不参与数组循环的整体执行和归约
+     */
+    public void setSparseThreshold(long sparseThreshold) {
+        this.sparseThreshold = sparseThreshold;
+    }
 
+    /**
+     * 将当前运行状态保存到检查点文件, 应在两次runFor之间调用
+     * @param path 检查点文件路径
+     */
+    public void checkpoint(String path) throws IOException {
+        Checkpoint.save(this, Paths.get(path));
+    }
 
     /**
-     * 无条件跳转
+     * 从检查点文件恢复运行状态, 之后调用run或runFor从保存处继续执行
+     * 当前解释器必须由生成检查点的同一个程序构造
+     * @param path 检查点文件路径
      */
-    private void jump(Quadruple code) {
-        instrIndex = code.jumpLocation;
+    public void restore(String path) throws IOException {
+        Checkpoint.restore(this, Paths.get(path));
     }
 
     /**
@@ -259,53 +1439,35 @@ public class Interpreter {
      */
     private void print(Quadruple code) {
         if (code.firstOperandType == OperandType.IDENTIFIER) {
-            Symbol symbol = getSymbol(code.firstOperand.name);
-            if (code.firstOperand.name.startsWith("%arg")) {
-                // 是参数，在当前栈帧中获取
-                int argIndex = Integer.parseInt(code.firstOperand.name.substring(4));
-                TreeNode arg = stackFrames.peek().argStack.get(argIndex);
-                switch (arg.getType()) {
-                    case INT_LITERAL:
-                        System.out.println(arg.getIntValue());
-                        break;
-                    case REAL_LITERAL:
-                        System.out.println(arg.getRealValue());
-                        break;
-                }
-            } else {
-                switch (symbol.getType()) {
-                    case INT_ARRAY_ELEMENT:
-                    case INT:
-                        System.out.println(symbol.getIntValue());
-                        break;
-                    case REAL_ARRAY_ELEMENT:
-                    case REAL:
-                        System.out.println(symbol.getRealValue());
-                        break;
-                    case CHAR:
-                        System.out.printf("%c\n", symbol.getIntValue());
-                        break;
-                    case INT_ARRAY:
-                        Integer[] arrInt =  Arrays.stream(symbol.getIntArray()).boxed().toArray(Integer[]::new);
-                        System.out.println(arrToString(arrInt));
-                        break;
-                    case REAL_ARRAY:
-                        Double[] arrReal =  Arrays.stream(symbol.getRealArray()).boxed().toArray(Double[]::new);
-                        System.out.println(arrToString(arrReal));
-                        break;
-                    case TRUE:
-                        System.out.println("true");
-                        break;
-                    case FALSE:
-                        System.out.println("false");
-                        break;
-                }
+            // 参数或变量
+            Symbol symbol = lookupSymbol(code.firstOperand.name);
+            switch (symbol.getType()) {
+                case INT_ARRAY_ELEMENT:
+                case INT:
+                    out.println(symbol.getIntValue());
+                    break;
+                case REAL_ARRAY_ELEMENT:
+                case REAL:
+                    out.println(symbol.getRealValue());
+                    break;
+                case CHAR:
+                    out.printf("%c\n", symbol.getIntValue());
+                    break;
+                case INT_ARRAY:
+                case REAL_ARRAY:
+                    out.println(arrToString(symbol));
+                    break;
+                case TRUE:
+                    out.println("true");
+                    break;
+                case FALSE:
+                    out.println("false");
+                    break;
             }
-
         } else if (code.firstOperandType == OperandType.INT_LITERAL) {
-            System.out.println(((IntOperand)code.firstOperand).intLiteral);
+            out.println(((IntOperand)code.firstOperand).intLiteral);
         } else if (code.firstOperandType == OperandType.REAL_LITERAL) {
-            System.out.println(((RealOperand)code.firstOperand).realLiteral);
+            out.println(((RealOperand)code.firstOperand).realLiteral);
         }
         nextInstruction();
     }
@@ -314,11 +1476,14 @@ public class Interpreter {
      * 从控制台读取输入
      */
     private void scan(Quadruple code) {
-        Symbol symbol = getSymbol(code.dest);
-        if(symbol.getType() == SymValueType.INT) {
-            symbol.setIntValue(scanner.nextInt());
-        } else if(symbol.getType() == SymValueType.REAL){
-            symbol.setRealValue(scanner.nextDouble());
+        Symbol symbol = lookupSymbol(code.dest);
+        // 任务可能同时读取输入
+        synchronized (scanner) {
+            if(symbol.getType() == SymValueType.INT) {
+                symbol.setIntValue(scanner.nextInt());
+            } else if(symbol.getType() == SymValueType.REAL){
+                symbol.setRealValue(scanner.nextDouble());
+            }
         }
         nextInstruction();
     }
@@ -339,6 +1504,7 @@ public class Interpreter {
      * 退出语句块
      */
     private void out() {
+        releasePooledArrays(stackFrames.peek(), blockLevel);
         // 删除当前栈帧局部变量表的临时符号
         stackFrames.peek().localVarTable.deleteSymbols(tempVars.get(blockLevel));
         tempVars.remove(blockLevel);
@@ -350,43 +1516,93 @@ public class Interpreter {
      * 访问数组
      */
     private void arrayAccess(Quadruple code) throws ExecutionException {
-        Symbol symbol = new Symbol(code.dest);
-        int index = 0;
-        switch (code.secondOperandType) {
-            case IDENTIFIER:
-                // 索引是标识符
-                index = stackFrames.peek().localVarTable.getSymbol(code.secondOperand.name).getIntValue();
-                break;
-            case INT_LITERAL:
-                index = ((IntOperand)(code.secondOperand)).intLiteral;
-                break;
+        int index = indexOf(code.secondOperandType, code.secondOperand);
+        Symbol array = arraySymbol(code.firstOperand.name);
+        if (array.getColumns() > 0) {
+            throw new ExecutionException("Array " + array.getName() + " has two dimensions, use "
+                    + array.getName() + "[i][j]!");
         }
-
-        Symbol array = stackFrames.peek().localVarTable.getSymbol(code.firstOperand.name);
         if (index < 0) {
             // 越下界
             arrayIndexOutOfBoundsException(index);
         }
-        symbol.setArrName(array.getName());
-        symbol.setIndex(index);
+        addTempSymbol(element(code.dest, code.firstOperand.name, array, index));
+        nextInstruction();
+    }
+
+    /**
+     * 访问二维数组
+     * 按行列分别检查下标, 再以 行下标*列数+列下标 访问连续存放的元素
+     */
+    private void matrixAccess(Quadruple code) throws ExecutionException {
+        int row = indexOf(code.firstOperandType, code.firstOperand);
+        int column = indexOf(code.secondOperandType, code.secondOperand);
+        Symbol array = arraySymbol(code.array);
+        int columns = array.getColumns();
+        if (columns == 0) {
+            throw new ExecutionException("Array " + array.getName() + " has one dimension, use "
+                    + array.getName() + "[i]!");
+        }
+        if (row < 0 || row >= array.getArrayLength() / columns || column < 0 || column >= columns) {
+            throw new ExecutionException("Array index is out of bounds: [" + row + "][" + column + "]");
+        }
+        addTempSymbol(element(code.dest, code.array, array, (long) row * columns + column));
+        nextInstruction();
+    }
+
+    /**
+     * 数组下标操作数的值
+     */
+    private int indexOf(OperandType type, Operand operand) throws ExecutionException {
+        switch (type) {
+            case IDENTIFIER:
+                // 索引是变量或参数
+                Symbol indexSymbol = lookupSymbol(operand.name);
+                if (indexSymbol == null) {
+                    symbolNotFoundException(operand.name);
+                }
+                return indexSymbol.getIntValue();
+            case INT_LITERAL:
+                return ((IntOperand) operand).intLiteral;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 按数组名或数组参数名取出数组
+     */
+    private Symbol arraySymbol(String name) throws ExecutionException {
+        Symbol array = lookupSymbol(name);
+        if (array == null) {
+            symbolNotFoundException(name);
+        }
+        if (array.getType() != SymValueType.INT_ARRAY && array.getType() != SymValueType.REAL_ARRAY) {
+            throw new ExecutionException(name + " is not an array!");
+        }
+        return array;
+    }
 
+    /**
+     * 保存数组元素的临时变量, 记录访问数组所用的名字和下标以便赋值
+     * 数组参数记录参数名, 赋值时从参数栈找到调用者的数组
+     */
+    private Symbol element(String name, String arrName, Symbol array, long index) throws ExecutionException {
+        Symbol symbol = new Symbol(name);
+        symbol.setArrName(arrName);
+        symbol.setIndex(index);
+        if (index >= array.getArrayLength()) {
+            // 越上界
+            arrayIndexOutOfBoundsException(index);
+        }
         if(array.getType() == SymValueType.INT_ARRAY) {
-            if (index >= (array.getIntArray().length)) {
-                // 越上界
-                arrayIndexOutOfBoundsException(index);
-            }
             symbol.setType(SymValueType.INT_ARRAY_ELEMENT);
-            symbol.setIntValue(array.getIntArray()[index]);
+            symbol.setIntValue(array.getIntElement(index));
         } else if(array.getType() == SymValueType.REAL_ARRAY) {
-            if (index >= (array.getRealArray().length)) {
-                // 越上界
-                arrayIndexOutOfBoundsException(index);
-            }
             symbol.setType(SymValueType.REAL_ARRAY_ELEMENT);
-            symbol.setRealValue(array.getRealArray()[index]);
+            symbol.setRealValue(array.getRealElement(index));
         }
-        addTempSymbol(symbol);
-        nextInstruction();
+        return symbol;
     }
 
     /**
@@ -447,6 +1663,94 @@ public class Interpreter {
         nextInstruction();
     }
 
+    /**
+     * 内建数学函数, 一条指令完成计算, 结果类型由参数类型决定
+     */
+    private void builtinOperation(Quadruple code) throws ExecutionException {
+        double operand1 = getFirstOperand(code);
+        boolean isInt1 = isFirstOperandInt;
+        double operand2 = 0;
+        boolean isInt2 = true;
+        if (code.secondOperandType != OperandType.NULL) {
+            operand2 = getSecondOperand(code);
+            isInt2 = isSecondOperandInt;
+        }
+        boolean isInt = MathBuiltins.isIntResult(code.operation, isInt1, isInt2);
+        double value = MathBuiltins.apply(code.operation, operand1, operand2, isInt);
+        Symbol symbol = new Symbol(code.dest);
+        if (isInt) {
+            symbol.setIntValue((int) value);
+            symbol.setType(SymValueType.INT);
+        } else {
+            symbol.setRealValue(value);
+            symbol.setType(SymValueType.REAL);
+        }
+        addTempSymbol(symbol);
+        nextInstruction();
+    }
+
+    /**
+     * 数组内建函数, 一条指令处理整个数组
+     * 写入的稀疏数组先转为连续存放, 填0时直接清空
+     */
+    private void arrayBuiltin(Quadruple code) throws ExecutionException {
+        switch (code.operation) {
+            case CodeConstant.FILL: {
+                double value = getFirstOperand(code);
+                Symbol array = arraySymbol(code.dest);
+                if (array.getSparseArray() != null && value != 0) {
+                    densify(array);
+                }
+                ArrayBuiltins.fill(array, value);
+                break;
+            }
+            case CodeConstant.COPY: {
+                Symbol src = arraySymbol(code.firstOperand.name);
+                Symbol dst = arraySymbol(code.dest);
+                double count = getSecondOperand(code);
+                if (!isSecondOperandInt) {
+                    throw new ExecutionException("Count of copy must be int!");
+                }
+                if (src.getType() != dst.getType()) {
+                    throw new ExecutionException("Cannot copy " + src.getName() + " to " + dst.getName()
+                            + " of a different type!");
+                }
+                long n = (long) count;
+                if (n < 0 || n > src.getArrayLength() || n > dst.getArrayLength()) {
+                    arrayIndexOutOfBoundsException(n);
+                }
+                if (dst.getSparseArray() != null) {
+                    densify(dst);
+                }
+                ArrayBuiltins.copy(dst, src, n);
+                break;
+            }
+            case CodeConstant.SORT: {
+                Symbol array = arraySymbol(code.dest);
+                if (array.getSparseArray() != null) {
+                    densify(array);
+                }
+                if (!ArrayBuiltins.sort(array)) {
+                    throw new ExecutionException("Array " + array.getName() + " is too large to sort!");
+                }
+                break;
+            }
+            default: {
+                Symbol array = arraySymbol(code.firstOperand.name);
+                Symbol symbol = new Symbol(code.dest);
+                if (array.getType() == SymValueType.INT_ARRAY) {
+                    symbol.setIntValue(ArrayBuiltins.sumInt(array));
+                    symbol.setType(SymValueType.INT);
+                } else {
+                    symbol.setRealValue(ArrayBuiltins.sumReal(array));
+                    symbol.setType(SymValueType.REAL);
+                }
+                addTempSymbol(symbol);
+            }
+        }
+        nextInstruction();
+    }
+
     /**
      * 关系运算
      */
@@ -456,6 +1760,8 @@ public class Interpreter {
         Symbol symbol = new Symbol(code.dest);
         switch (code.operation) {
             case CodeConstant.LE:
+            case CodeConstant.VEC_LE:
+            case CodeConstant.RED_LE:
                 if(operand1 < operand2) {
                     symbol.setType(SymValueType.TRUE);
                 } else {
@@ -470,6 +1776,8 @@ public class Interpreter {
                 }
                 break;
             case CodeConstant.LE_EQ:
+            case CodeConstant.VEC_LE_EQ:
+            case CodeConstant.RED_LE_EQ:
                 if(operand1 <= operand2) {
                     symbol.setType(SymValueType.TRUE);
                 } else {
@@ -505,7 +1813,7 @@ public class Interpreter {
      * 赋值
      */
     private void assign(Quadruple code) throws ExecutionException {
-        Symbol target = stackFrames.peek().localVarTable.getSymbol(code.dest);
+        Symbol target = lookupSymbol(code.dest);
         if (target == null) {
             // 变量还没有被声明
             // 不能赋值
@@ -514,12 +1822,14 @@ public class Interpreter {
         double source = getFirstOperand(code);
         Symbol array;
         if(target.getType() == SymValueType.INT_ARRAY_ELEMENT) {
-            array = stackFrames.peek().localVarTable.getSymbol(target.getArrName());
-            array.getIntArray()[target.getIndex()] = (int)source;
+            array = lookupSymbol(target.getArrName());
+            array.setIntElement(target.getIndex(), (int)source);
+            densifyIfFull(array);
             target.setIntValue((int)source);
         } else if(target.getType() == SymValueType.REAL_ARRAY_ELEMENT) {
-            array = stackFrames.peek().localVarTable.getSymbol(target.getArrName());
-            array.getRealArray()[target.getIndex()] = source;
+            array = lookupSymbol(target.getArrName());
+            array.setRealElement(target.getIndex(), source);
+            densifyIfFull(array);
             target.setRealValue(source);
         } else {
             switch (target.getType()) {
@@ -535,6 +1845,90 @@ public class Interpreter {
         nextInstruction();
     }
 
+    /**
+     * 复合赋值, 在变量或数组元素上原地计算 目标 op 值
+     * 运算和类型转换与 目标 = 目标 op 值 相同, 不生成临时变量
+     */
+    private void compoundAssign(Quadruple code) throws ExecutionException {
+        Symbol target = lookupSymbol(code.dest);
+        if (target == null) {
+            varNotDeclaredException(code.dest);
+        }
+        double value = getFirstOperand(code);
+        boolean isInt = isFirstOperandInt;
+        Symbol array;
+        switch (target.getType()) {
+            case INT_ARRAY_ELEMENT:
+                array = lookupSymbol(target.getArrName());
+                long index = target.getIndex();
+                int old = array.getIntElement(index);
+                int result = isInt ? compute(code.operation, old, (int) value)
+                        : (int) compute(code.operation, (double) old, value);
+                array.setIntElement(index, result);
+                densifyIfFull(array);
+                target.setIntValue(result);
+                break;
+            case REAL_ARRAY_ELEMENT:
+                array = lookupSymbol(target.getArrName());
+                double real = compute(code.operation, array.getRealElement(target.getIndex()), value);
+                array.setRealElement(target.getIndex(), real);
+                densifyIfFull(array);
+                target.setRealValue(real);
+                break;
+            case INT:
+            case CHAR:
+                target.setIntValue(isInt ? compute(code.operation, target.getIntValue(), (int) value)
+                        : (int) compute(code.operation, (double) target.getIntValue(), value));
+                break;
+            case REAL:
+                target.setRealValue(compute(code.operation, target.getRealValue(), value));
+                break;
+            default:
+                throw new ExecutionException("Cannot apply " + code.operation + " to " + code.dest + "!");
+        }
+        nextInstruction();
+    }
+
+    /**
+     * 复合赋值的整数运算
+     * 除法与 目标 = 目标 / 值 的DIV相同: 第一操作数(目标)是除数, 第二操作数(值)是被除数, 被除数为0时报错
+     */
+    private static int compute(String operation, int left, int right) throws ExecutionException {
+        switch (operation) {
+            case CodeConstant.PLUS_ASSIGN:
+                return left + right;
+            case CodeConstant.MINUS_ASSIGN:
+                return left - right;
+            case CodeConstant.MUL_ASSIGN:
+                return left * right;
+            default:
+                if (right == 0) {
+                    throw new ExecutionException("Cannot divide by zero!");
+                }
+                return right / left;
+        }
+    }
+
+    /**
+     * 复合赋值的实数运算, 除法的操作数顺序与整数运算相同
+     */
+    private static double compute(String operation, double left, double right) throws ExecutionException {
+        switch (operation) {
+            case CodeConstant.PLUS_ASSIGN:
+                return left + right;
+            case CodeConstant.MINUS_ASSIGN:
+                return left - right;
+            case CodeConstant.MUL_ASSIGN:
+                return left * right;
+            default:
+                // 浮点数精度小数点后10位
+                if (Math.abs(right) < 1e-10) {
+                    throw new ExecutionException("Cannot divide by zero!");
+                }
+                return right / left;
+        }
+    }
+
     /**
      * 声明变量
      */
@@ -561,6 +1955,12 @@ public class Interpreter {
                 }
                 break;
         }
+        if (symbol.getName().startsWith(CodeConstant.GLOBAL_PREFIX)) {
+            // 全局变量放入静态段的槽位
+            globals[globalSlot(symbol.getName())] = symbol;
+            nextInstruction();
+            return;
+        }
         // 添加到当前语句块的变量列表
         if (tempVars.get(blockLevel).contains(symbol.getName())) {
             // 当前块已经有该变量名
@@ -579,48 +1979,149 @@ public class Interpreter {
         if (length < 0) {
             throw new ExecutionException("Array length less than 1!");
         }
-        switch (code.operation) {
-            case CodeConstant.INT_ARR:
-                symbol.setIntArray(new int[(int)length]);
-                symbol.setType(SymValueType.INT_ARRAY);
-                break;
-            case CodeConstant.REAL_ARR:
-                symbol.setRealArray(new double[(int)length]);
-                symbol.setType(SymValueType.REAL_ARRAY);
-                break;
+        long total = (long) length;
+        if (code.secondOperandType != OperandType.NULL) {
+            // 二维数组, 第二个操作数是列数, 按行连续存放
+            int columns = (int) getSecondOperand(code);
+            if (columns < 1) {
+                throw new ExecutionException("Array length less than 1!");
+            }
+            symbol.setColumns(columns);
+            total = (long) length * columns;
+        }
+        boolean isInt = code.operation.equals(CodeConstant.INT_ARR) || code.operation.equals(CodeConstant.POOL_INT_ARR);
+        boolean isPooled = code.operation.equals(CodeConstant.POOL_INT_ARR)
+                || code.operation.equals(CodeConstant.POOL_REAL_ARR);
+        symbol.setType(isInt ? SymValueType.INT_ARRAY : SymValueType.REAL_ARRAY);
+        boolean isGlobal = code.dest.startsWith(CodeConstant.GLOBAL_PREFIX);
+        if (isGlobal) {
+            // 全局数组在静态段中只分配一次, 可能被多个线程同时读取, 总是连续存放
+            allocateDense(symbol, isInt, total);
+            globals[globalSlot(code.dest)] = symbol;
+            nextInstruction();
+            return;
+        }
+        if (total >= sparseThreshold) {
+            // 声明的长度很大时先稀疏存放, 只占用写过的元素
+            symbol.setSparseArray(new SparseArray(isInt, total));
+        } else if (isPooled && total < offHeapThreshold
+                && total * (isInt ? Integer.BYTES : Double.BYTES) <= ArrayPool.MAX_ARRAY_BYTES) {
+            // 不逃逸的数组从池中取出, 离开作用域时归还
+            if (isInt) {
+                symbol.setIntArray(arrayPool.takeInts((int) total));
+            } else {
+                symbol.setRealArray(arrayPool.takeReals((int) total));
+            }
+            stackFrames.peek().addPooledArray(symbol, blockLevel);
+        } else {
+            allocateDense(symbol, isInt, total);
         }
         addTempSymbol(symbol);
         nextInstruction();
     }
 
+    /**
+     * 归还栈帧中块层次不小于level的池分配数组
+     * 数组不逃逸, 此时已没有其他地方引用, 符号中的引用一并清除
+     */
+    private void releasePooledArrays(Frame frame, int level) {
+        List<Symbol> arrays = frame.pooledArrays;
+        if (arrays == null) {
+            return;
+        }
+        for (int i = arrays.size() - 1; i >= 0 && frame.pooledLevels.get(i) >= level; i--) {
+            Symbol array = arrays.remove(i);
+            frame.pooledLevels.remove(i);
+            if (array.getIntArray() != null) {
+                arrayPool.release(array.getIntArray());
+                array.setIntArray(null);
+            } else if (array.getRealArray() != null) {
+                arrayPool.release(array.getRealArray());
+                array.setRealArray(null);
+            }
+        }
+    }
+
+    /**
+     * 连续存放数组的元素, 大数组放到堆外, 不占用Java堆
+     */
+    private void allocateDense(Symbol symbol, boolean isInt, long total) throws ExecutionException {
+        if (total >= offHeapThreshold || total > MAX_HEAP_ARRAY_LENGTH) {
+            try {
+                symbol.setOffHeapArray(new OffHeapArray(isInt, total));
+            } catch (OutOfMemoryError e) {
+                throw new ExecutionException("Array " + symbol.getName() + " is too large: " + total);
+            }
+        } else if (isInt) {
+            symbol.setIntArray(new int[(int) total]);
+        } else {
+            symbol.setRealArray(new double[(int) total]);
+        }
+    }
+
+    /**
+     * 稀疏数组写入的元素多到占用的内存接近连续存放时, 转为连续存放
+     */
+    private void densifyIfFull(Symbol array) throws ExecutionException {
+        SparseArray sparse = array.getSparseArray();
+        if (sparse != null && sparse.isDense()) {
+            densify(array);
+        }
+    }
+
+    /**
+     * 稀疏数组转为连续存放, 写过的元素拷入, 其余为0
+     */
+    private void densify(Symbol array) throws ExecutionException {
+        SparseArray sparse = array.getSparseArray();
+        allocateDense(array, sparse.isInt(), sparse.length());
+        array.setSparseArray(null);
+        for (int slot = 0; slot < sparse.capacity(); slot++) {
+            if (!sparse.isUsed(slot)) {
+                continue;
+            }
+            if (sparse.isInt()) {
+                array.setIntElement(sparse.indexAt(slot), sparse.intAt(slot));
+            } else {
+                array.setRealElement(sparse.indexAt(slot), sparse.realAt(slot));
+            }
+        }
+    }
+
     /**
      * 函数返回
      */
-    private void ret(Quadruple code) {
-        blockLevel--;
+    private void ret(Quadruple code) throws ExecutionException {
+        // 有返回值时先在被调函数的栈帧中取值, 再弹出栈帧
+        switch (code.firstOperandType) {
+            case INT_LITERAL:
+                retValue.setInt(((IntOperand)code.firstOperand).intLiteral);
+                break;
+            case REAL_LITERAL:
+                retValue.setReal(((RealOperand)code.firstOperand).realLiteral);
+                break;
+            case IDENTIFIER:
+                // 返回变量要进行取值
+                double value = getFirstOperand(code);
+                if (isFirstOperandInt) {
+                    retValue.setInt((int) value);
+                } else {
+                    retValue.setReal(value);
+                }
+                break;
+        }
         // 弹出栈帧
         Frame curFrame = stackFrames.pop();
+        // 函数体内声明的数组都归还
+        releasePooledArrays(curFrame, curFrame.blockLevel + 1);
+        if (curFrame.forkDest != null) {
+            // 按普通调用执行的fork
+            stackFrames.peek().addFork(curFrame.forkDest, ForkedCall.completed(retValue));
+        }
+        // 函数体内未执行out的语句块一并退出
+        blockLevel = curFrame.blockLevel;
         // 设置返回地址
         instrIndex = curFrame.retAddr;
-        if (code.firstOperandType != null) {
-            // 有返回值
-            // 设置返回值
-            switch (code.firstOperandType) {
-                case INT_LITERAL:
-                    retValue.setType(SymValueType.INT);
-                    retValue.setIntValue(((IntOperand)code.firstOperand).intLiteral);
-                    break;
-                case REAL_LITERAL:
-                    retValue.setType(SymValueType.REAL);
-                    retValue.setRealValue(((RealOperand)code.firstOperand).realLiteral);
-                    break;
-                case IDENTIFIER:
-                    // 返回变量要进行取值
-                    retValue = curFrame .localVarTable.getSymbol(code.firstOperand.name);
-
-            }
-        }
-
     }
 
 
@@ -632,6 +2133,21 @@ public class Interpreter {
         return stackFrames.peek().localVarTable.getSymbol(name);
     }
 
+    /**
+     * 取出参数或变量对应的符号, 参数在当前栈帧的参数栈中, 全局变量在静态段中
+     */
+    private Symbol lookupSymbol(String name) {
+        if (name.startsWith(CodeConstant.ARG_PREFIX)) {
+            int argIndex = Integer.parseInt(name.substring(CodeConstant.ARG_PREFIX.length()));
+            return stackFrames.peek().argStack.get(argIndex);
+        }
+        if (name.startsWith(CodeConstant.GLOBAL_PREFIX)) {
+            // 全局变量按槽位直接取出
+            return globals[globalSlot(name)];
+        }
+        return getSymbol(name);
+    }
+
     /**
      * 在当前块层次添加临时变量
      */
@@ -660,42 +2176,26 @@ public class Interpreter {
         } else if(code.firstOperandType == OperandType.REAL_LITERAL) {
             isFirstOperandInt = false;
             return ((RealOperand)code.firstOperand).realLiteral;
+        } else if(code.firstOperandType == OperandType.RETURN_VALUE) {
+            // 直接读取返回值寄存器
+            isFirstOperandInt = retValue.isInt();
+            return isFirstOperandInt ? retValue.intValue : retValue.realValue;
         } else {
-            if (code.firstOperand.name.startsWith("%arg")) {
-                // 是参数，在当前栈帧中获取
-                int argIndex = Integer.parseInt(code.firstOperand.name.substring(4));
-                TreeNode arg = stackFrames.peek().argStack.get(argIndex);
-                switch (arg.getType()) {
-                    case INT_LITERAL:
-                        isFirstOperandInt = true;
-                        return (double)arg.getIntValue();
-                    case REAL_LITERAL:
-                        isFirstOperandInt = false;
-                        return arg.getRealValue();
-                }
-            }
-            if (code.firstOperand.name.equals(CodeConstant.RETURN_VALUE)) {
-                // 是返回值
-                switch (retValue.getType()) {
-                    case INT:
-                        isFirstOperandInt = true;
-                        return (double) retValue.getIntValue();
-                    case REAL:
-                        isFirstOperandInt = false;
-                        return retValue.getRealValue();
-                }
-            }
-
-            // 是临时变量，在符号表中查找
-            Symbol symbol = stackFrames.peek().localVarTable.getSymbol(code.firstOperand.name);
+            // 是参数或临时变量，在当前栈帧中查找
+            Symbol symbol = lookupSymbol(code.firstOperand.name);
             if (symbol == null) {
                 symbolNotFoundException(code.firstOperand.name);
             }
+            if (symbol.getType() == SymValueType.CHANNEL) {
+                channelAsNumberException(code.firstOperand.name);
+            }
             if (symbol.getType() == SymValueType.INT ||
+                    symbol.getType() == SymValueType.CHAR ||
                     symbol.getType() == SymValueType.INT_ARRAY_ELEMENT) {
                 isFirstOperandInt = true;
                 return (double) symbol.getIntValue();
             } else{
+                isFirstOperandInt = false;
                 return symbol.getRealValue();
             }
         }
@@ -709,43 +2209,28 @@ public class Interpreter {
             isSecondOperandInt = true;
             return (double)((IntOperand)code.secondOperand).intLiteral;
         } else if(code.secondOperandType == OperandType.REAL_LITERAL) {
+            isSecondOperandInt = false;
             return ((RealOperand)code.secondOperand).realLiteral;
+        } else if(code.secondOperandType == OperandType.RETURN_VALUE) {
+            // 直接读取返回值寄存器
+            isSecondOperandInt = retValue.isInt();
+            return isSecondOperandInt ? retValue.intValue : retValue.realValue;
         } else {
-            if (code.secondOperand.name.startsWith("%arg")) {
-                // 是参数，在当前栈帧中获取
-                int argIndex = Integer.parseInt(code.secondOperand.name.substring(4));
-                TreeNode arg = stackFrames.peek().argStack.get(argIndex);
-                switch (arg.getType()) {
-                    case INT_LITERAL:
-                        isSecondOperandInt = true;
-                        return (double)arg.getIntValue();
-                    case REAL_LITERAL:
-                        isSecondOperandInt = false;
-                        return arg.getRealValue();
-                }
-
-            }
-            if (code.secondOperand.name.equals(CodeConstant.RETURN_VALUE)) {
-                // 是返回值
-                switch (retValue.getType()) {
-                    case INT:
-                        isSecondOperandInt = true;
-                        return (double) retValue.getIntValue();
-                    case REAL:
-                        isSecondOperandInt = false;
-                        return retValue.getRealValue();
-                }
-            }
-            // 是临时变量，在符号表中查找
-            Symbol symbol = getSymbol(code.secondOperand.name);
+            // 是参数或临时变量，在当前栈帧中查找
+            Symbol symbol = lookupSymbol(code.secondOperand.name);
             if (symbol == null) {
                 symbolNotFoundException(code.secondOperand.name);
             }
+            if (symbol.getType() == SymValueType.CHANNEL) {
+                channelAsNumberException(code.secondOperand.name);
+            }
             if (symbol.getType() == SymValueType.INT ||
+                    symbol.getType() == SymValueType.CHAR ||
                     symbol.getType() == SymValueType.INT_ARRAY_ELEMENT) {
                 isSecondOperandInt = true;
                 return (double) symbol.getIntValue();
             } else{
+                isSecondOperandInt = false;
                 return symbol.getRealValue();
             }
 
@@ -753,16 +2238,41 @@ public class Interpreter {
     }
 
     /**
-     * 格式化输出数组
+     * 格式化输出数组, 二维数组每行作为一个元素
+     */
+    private String arrToString(Symbol array) {
+        long length = array.getArrayLength();
+        int columns = array.getColumns();
+        if (columns == 0) {
+            return arrToString(array, 0, length);
+        }
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("[");
+        for (long start = 0; start < length; start += columns) {
+            if (start > 0) {
+                stringBuilder.append(", ");
+            }
+            stringBuilder.append(arrToString(array, start, start + columns));
+        }
+        stringBuilder.append("]");
+        return stringBuilder.toString();
+    }
+
+    /**
+     * 格式化输出数组中[from, to)的元素
      */
-    private  <E> String arrToString(E[] arr) {
+    private String arrToString(Symbol array, long from, long to) {
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append("[");
-        if (arr.length > 1) {
-            for (int i=0; i<arr.length-1; i++) {
-                stringBuilder.append(arr[i]).append(", ");
+        for (long i = from; i < to; i++) {
+            if (i > from) {
+                stringBuilder.append(", ");
+            }
+            if (array.getType() == SymValueType.INT_ARRAY) {
+                stringBuilder.append(array.getIntElement(i));
+            } else {
+                stringBuilder.append(array.getRealElement(i));
             }
-            stringBuilder.append(arr[arr.length-1]);
         }
         stringBuilder.append("]");
 
@@ -792,10 +2302,34 @@ public class Interpreter {
         throw new ExecutionException("Variable " + varName + " is not declared!");
     }
 
+    /**
+     * 通道不能参与运算
+     */
+    private void channelAsNumberException(String name) throws ExecutionException {
+        throw new ExecutionException("Channel " + name + " cannot be used as a number!");
+    }
+
+    /**
+     * main在通道上等待, 但已经没有任务可以收发
+     */
+    private void deadlockException(String channelName) throws ExecutionException {
+        throw new ExecutionException("Deadlock: main is waiting on channel " + channelName
+                + " with no running tasks!");
+    }
+
+    /**
+     * 等待时被中断
+     */
+    private void interruptedException() throws ExecutionException {
+        Thread.currentThread().interrupt();
+        throw new ExecutionAbortedException("Execution interrupted after "
+                + executedInstructions + " instructions", executedInstructions, true);
+    }
+
     /**
      * 数组索引越界
      */
-    private void arrayIndexOutOfBoundsException(int index) throws ExecutionException{
+    private void arrayIndexOutOfBoundsException(long index) throws ExecutionException{
         throw new ExecutionException("Array index is out of bounds: "+index);
     }
 
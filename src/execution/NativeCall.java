@@ -0,0 +1,127 @@
+package execution;
+
+import exception.ExecutionException;
+import execution.symbols.SymValueType;
+import execution.symbols.Symbol;
+import syntax.TreeNode;
+import syntax.TreeNodeType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @description 链接到一个调用点的extern函数
+ *              第一次执行时把注册的方法句柄适配为(double[])double, 之后每次调用只填参数数组再invokeExact
+ *              参数和返回值只能是int、char、double, 返回值还可以是void, 且须与extern声明一致
+ *              参数和返回值都经过double, int、char与double之间的转换不丢失精度
+ *              参数数组重复使用, 每个解释器各自链接, 不在线程之间共享
+ **/
+final class NativeCall {
+    private final String name;
+    private final MethodHandle invoker;
+    private final Class<?> returnType;
+    private final double[] args;
+
+    private NativeCall(String name, MethodHandle invoker, Class<?> returnType, int argCount) {
+        this.name = name;
+        this.invoker = invoker;
+        this.returnType = returnType;
+        this.args = new double[argCount];
+    }
+
+    /**
+     * 链接方法句柄, 参数个数须与调用一致, 参数和返回值只能是int、char、double
+     * 已知extern声明时, 方法的类型须与声明一致: int对应int, char对应char, real对应double, void对应void
+     * @param params 声明的参数列表, 只有中间代码而没有声明时为null
+     * @param returnType 声明的返回值类型, 没有声明时为null
+     */
+    static NativeCall link(String name, MethodHandle target, List<TreeNode> params, TreeNodeType returnType,
+                           int argCount) throws ExecutionException {
+        MethodType type = target.type();
+        if (type.parameterCount() != argCount) {
+            throw new ExecutionException(String.format("Extern function %s expects %d arguments, found %d",
+                    name, type.parameterCount(), argCount));
+        }
+        if (!isSupported(type)) {
+            throw new ExecutionException("Extern function " + name
+                    + " must take int, char or double and return int, char, double or void, found " + type);
+        }
+        if (params != null && returnType != null) {
+            MethodType declared = declaredType(params, returnType);
+            if (!type.equals(declared)) {
+                throw new ExecutionException(String.format(
+                        "Extern function %s is declared as %s, but the bound method is %s", name, declared, type));
+            }
+        }
+        MethodType doubles = MethodType.methodType(double.class, Collections.nCopies(argCount, double.class));
+        // void方法的返回值转换为0
+        MethodHandle adapted = MethodHandles.explicitCastArguments(target, doubles);
+        return new NativeCall(name, adapted.asSpreader(double[].class, argCount), type.returnType(), argCount);
+    }
+
+    /**
+     * 方法类型中的参数和返回值是否都是int、char、double, 返回值可以为void
+     * long、float、boolean等转换为int或double时会截断或改变含义, 不支持
+     */
+    static boolean isSupported(MethodType type) {
+        for (Class<?> param : type.parameterList()) {
+            if (!isSupported(param)) {
+                return false;
+            }
+        }
+        return type.returnType() == void.class || isSupported(type.returnType());
+    }
+
+    private static boolean isSupported(Class<?> type) {
+        return type == int.class || type == char.class || type == double.class;
+    }
+
+    /**
+     * extern声明对应的Java方法类型
+     */
+    private static MethodType declaredType(List<TreeNode> params, TreeNodeType returnType) {
+        List<Class<?>> paramTypes = new ArrayList<>();
+        for (TreeNode param : params) {
+            paramTypes.add(javaType(param.getType()));
+        }
+        return MethodType.methodType(javaType(returnType), paramTypes);
+    }
+
+    private static Class<?> javaType(TreeNodeType type) {
+        switch (type) {
+            case INT_DECLARATION:
+                return int.class;
+            case CHAR_DECLARATION:
+                return char.class;
+            case REAL_DECLARATION:
+                return double.class;
+            default:
+                return void.class;
+        }
+    }
+
+    /**
+     * 以参数栈中的值调用, 返回值写入返回值寄存器, void方法不改变寄存器
+     */
+    void invoke(List<Symbol> argList, ReturnRegister retValue) throws ExecutionException {
+        for (int i = 0; i < args.length; i++) {
+            Symbol arg = argList.get(i);
+            args[i] = arg.getType() == SymValueType.REAL ? arg.getRealValue() : arg.getIntValue();
+        }
+        double result;
+        try {
+            result = (double) invoker.invokeExact(args);
+        } catch (Throwable e) {
+            throw new ExecutionException("Native function " + name + " failed: " + e);
+        }
+        if (returnType == double.class) {
+            retValue.setReal(result);
+        } else if (returnType != void.class) {
+            retValue.setInt((int) result);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package execution;
+
+import exception.ExecutionException;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @description 并行循环的一段迭代
+ *              迭代数超过粒度时对半拆分, 否则用一个子解释器依次执行这段迭代
+ *              任一迭代出错后其余尚未开始的迭代不再执行, 错误由发起循环的解释器抛出
+ **/
+class ParallelLoop extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Interpreter parent;
+    // 循环所在的栈帧
+    private final Frame outer;
+    private final String loopVarName;
+    // 循环变量初值
+    private final int start;
+    private final int bodyStart;
+    private final int bodyEnd;
+    // 本段迭代序号范围[from, to)
+    private final long from;
+    private final long to;
+    // 不再拆分的迭代数
+    private final long grain;
+    // 整个循环共享的执行指令数和第一个错误
+    private final AtomicLong executedInstructions;
+    private final AtomicReference<ExecutionException> failure;
+
+    ParallelLoop(Interpreter parent, Frame outer, String loopVarName, int start, int bodyStart, int bodyEnd,
+                 long from, long to, long grain) {
+        this(parent, outer, loopVarName, start, bodyStart, bodyEnd, from, to, grain,
+                new AtomicLong(), new AtomicReference<>());
+    }
+
+    private ParallelLoop(Interpreter parent, Frame outer, String loopVarName, int start, int bodyStart,
+                         int bodyEnd, long from, long to, long grain, AtomicLong executedInstructions,
+                         AtomicReference<ExecutionException> failure) {
+        this.parent = parent;
+        this.outer = outer;
+        this.loopVarName = loopVarName;
+        this.start = start;
+        this.bodyStart = bodyStart;
+        this.bodyEnd = bodyEnd;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+        this.executedInstructions = executedInstructions;
+        this.failure = failure;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from > grain) {
+            long mid = from + (to - from) / 2;
+            invokeAll(split(from, mid), split(mid, to));
+            return;
+        }
+        Interpreter worker = new Interpreter(parent);
+        try {
+            for (long i = from; i < to && failure.get() == null; i++) {
+                worker.runIteration(outer, loopVarName, (int) (start + i), bodyStart, bodyEnd);
+            }
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            worker.flushInstructions();
+            executedInstructions.addAndGet(worker.executedInstructions);
+        }
+    }
+
+    private ParallelLoop split(long from, long to) {
+        return new ParallelLoop(parent, outer, loopVarName, start, bodyStart, bodyEnd, from, to, grain,
+                executedInstructions, failure);
+    }
+
+    long getExecutedInstructions() {
+        return executedInstructions.get();
+    }
+
+    /**
+     * 抛出迭代中的第一个错误
+     */
+    void rethrow() throws ExecutionException {
+        ExecutionException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package execution;
+
+import semantics.CodeConstant;
+import semantics.Quadruple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * @description 确定性程序运行结果的磁盘缓存
+ *              键为中间代码、函数入口地址和完整输入的SHA-256, 值为程序的全部输出和执行的指令数, 每个键一个文件
+ *              除scan外程序中只有spawn的任务调度和extern函数不确定, 不含这两者的程序相同输入必然得到相同输出
+ *              文件的修改时间记录最近使用时间, 总大小超过上限时删除最久未使用的文件
+ *              写入时先写临时文件再改名, 读到损坏的文件视为未命中并删除
+ **/
+public final class ResultCache {
+    private static final int MAGIC = 0x434D4D52;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".res";
+
+    private final Path dir;
+    private final long maxBytes;
+    // 键 -> 文件大小, 按访问顺序, 最前面的最久未使用
+    private final Map<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * 缓存的一次运行结果
+     */
+    public static final class Entry {
+        public final String output;
+        public final long instructions;
+
+        Entry(String output, long instructions) {
+            this.output = output;
+            this.instructions = instructions;
+        }
+    }
+
+    /**
+     * 打开缓存目录, 不存在时创建, 已有的文件按修改时间恢复使用顺序
+     * @param dir 缓存目录
+     * @param maxBytes 所有缓存文件的总字节数上限
+     */
+    public ResultCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Map<Path, FileTime> times = new LinkedHashMap<>();
+        for (Path file : files) {
+            times.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            index.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    /**
+     * 程序是否确定: 不启动任务、不调用extern函数
+     */
+    public static boolean isDeterministic(List<Quadruple> codes) {
+        for (Quadruple code : codes) {
+            if (code.operation.equals(CodeConstant.SPAWN) || code.operation.equals(CodeConstant.NATIVE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 程序与输入的键, 十六进制的SHA-256
+     */
+    public static String key(List<Quadruple> codes, Map<String, Integer> funcInstrMap, String input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 每个Java平台都必须支持SHA-256
+            throw new IllegalStateException(e);
+        }
+        for (Quadruple code : codes) {
+            digest.update(code.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        digest.update(new TreeMap<>(funcInstrMap).toString().getBytes(StandardCharsets.UTF_8));
+        // 分隔程序和输入, 输入为空时键也与程序本身不同
+        digest.update((byte) 0);
+        digest.update(input.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 取出缓存的结果并标记为最近使用, 没有或文件损坏时返回null
+     */
+    public synchronized Entry get(String key) {
+        Path file = fileOf(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            // 不存在或已被删除
+            forget(key);
+            return null;
+        }
+        Entry entry = decode(bytes);
+        if (entry == null) {
+            forget(key);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // 只影响淘汰顺序
+        }
+        if (index.get(key) == null) {
+            // 其他缓存对象写入的文件
+            index.put(key, (long) bytes.length);
+            totalBytes += bytes.length;
+        }
+        return entry;
+    }
+
+    /**
+     * 保存运行结果, 超过总大小上限时淘汰最久未使用的结果
+     * 写入失败时放弃保存, 不影响程序运行
+     */
+    public synchronized void put(String key, String output, long instructions) {
+        byte[] bytes = encode(output, instructions);
+        if (bytes.length > maxBytes) {
+            return;
+        }
+        Path file = fileOf(key);
+        try {
+            Path temp = Files.createTempFile(dir, key, ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            return;
+        }
+        Long old = index.put(key, (long) bytes.length);
+        totalBytes += bytes.length - (old == null ? 0 : old);
+        evict();
+    }
+
+    /**
+     * 缓存文件的总字节数
+     */
+    public synchronized long size() {
+        return totalBytes;
+    }
+
+    private Path fileOf(String key) {
+        return dir.resolve(key + SUFFIX);
+    }
+
+    private void forget(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(fileOf(key));
+        } catch (IOException e) {
+            // 下次淘汰时再删除
+        }
+    }
+
+    /**
+     * 按使用顺序删除, 直到总大小不超过上限
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            try {
+                Files.deleteIfExists(fileOf(eldest.getKey()));
+            } catch (IOException e) {
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * 文件格式: 魔数 | 版本 | 指令数 | 输出的CRC32 | 输出长度 | UTF-8输出
+     */
+    private static byte[] encode(String output, long instructions) {
+        byte[] text = output.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length + 28);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(instructions);
+            out.writeLong(crc.getValue());
+            out.writeInt(text.length);
+            out.write(text);
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long instructions = in.readLong();
+            long checksum = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length != in.available()) {
+                return null;
+            }
+            byte[] text = new byte[length];
+            in.readFully(text);
+            CRC32 crc = new CRC32();
+            crc.update(text);
+            if (crc.getValue() != checksum) {
+                return null;
+            }
+            return new Entry(new String(text, StandardCharsets.UTF_8), instructions);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
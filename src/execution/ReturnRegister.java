@@ -0,0 +1,36 @@
+package execution;
+
+import execution.symbols.SymValueType;
+
+/**
+ * @description 函数返回值寄存器
+ *              分为整数和实数两个通道, 只保存值而不引用被调函数的符号
+ **/
+class ReturnRegister {
+    // 返回值类型, 只会是INT或REAL
+    SymValueType type;
+    // 整数通道
+    int intValue;
+    // 实数通道
+    double realValue;
+
+    /**
+     * 写入整数返回值
+     */
+    void setInt(int intValue) {
+        this.type = SymValueType.INT;
+        this.intValue = intValue;
+    }
+
+    /**
+     * 写入实数返回值
+     */
+    void setReal(double realValue) {
+        this.type = SymValueType.REAL;
+        this.realValue = realValue;
+    }
+
+    boolean isInt() {
+        return type == SymValueType.INT;
+    }
+}
@@ -0,0 +1,125 @@
+package execution;
+
+import exception.ExecutionException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * @description 多程序调度器
+ *              用少量工作线程轮转执行大量解释器, 每次只执行一个时间片的指令数,
+ *              未结束的解释器重新排到就绪队列尾部, 长时间运行的程序不会饿死其他程序
+ **/
+public class Scheduler {
+    // 默认时间片, 即每次最多执行的指令数
+    public static final int DEFAULT_TIME_SLICE = 10000;
+
+    // 就绪队列
+    private final LinkedBlockingQueue<Task> readyQueue = new LinkedBlockingQueue<>();
+    // 工作线程
+    private final Thread[] workers;
+    // 时间片
+    private final int timeSlice;
+    // 是否已关闭
+    private volatile boolean shutdown = false;
+
+    /**
+     * 调度中的一个程序
+     */
+    private static class Task {
+        final Interpreter interpreter;
+        final CompletableFuture<Interpreter> result = new CompletableFuture<>();
+
+        Task(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+    }
+
+    public Scheduler(int workerCount) {
+        this(workerCount, DEFAULT_TIME_SLICE);
+    }
+
+    public Scheduler(int workerCount, int timeSlice) {
+        if (workerCount < 1 || timeSlice < 1) {
+            throw new IllegalArgumentException("Worker count and time slice must be positive!");
+        }
+        this.timeSlice = timeSlice;
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::work, "cmm-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * 提交一个解释器, 返回的future在main函数退出后完成
+     * 执行期间错误时以ExecutionException异常完成
+     */
+    public CompletableFuture<Interpreter> submit(Interpreter interpreter) {
+        if (shutdown) {
+            throw new IllegalStateException("Scheduler is shut down!");
+        }
+        Task task = new Task(interpreter);
+        enqueue(task);
+        return task.result;
+    }
+
+    /**
+     * 关闭调度器, 队列中未完成的程序不再执行, 它们的future以CancellationException完成
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        Task task;
+        while ((task = readyQueue.poll()) != null) {
+            cancel(task);
+        }
+    }
+
+    /**
+     * 排入就绪队列, 与shutdown同时发生时由排入的一方取消
+     */
+    private void enqueue(Task task) {
+        readyQueue.add(task);
+        // shutdown可能已经清空过队列, 此时从队列中取回并取消
+        if (shutdown && readyQueue.remove(task)) {
+            cancel(task);
+        }
+    }
+
+    private static void cancel(Task task) {
+        task.result.completeExceptionally(new CancellationException("Scheduler is shut down!"));
+    }
+
+    /**
+     * 工作线程: 取出就绪的解释器执行一个时间片
+     */
+    private void work() {
+        while (!shutdown) {
+            Task task;
+            try {
+                task = readyQueue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (shutdown) {
+                cancel(task);
+                break;
+            }
+            try {
+                if (task.interpreter.runFor(timeSlice) == ExecStatus.FINISHED) {
+                    task.result.complete(task.interpreter);
+                } else {
+                    // 时间片用完, 排到队尾
+                    enqueue(task);
+                }
+            } catch (ExecutionException | RuntimeException e) {
+                task.result.completeExceptionally(e);
+            }
+        }
+    }
+}
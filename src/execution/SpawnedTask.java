@@ -0,0 +1,97 @@
+package execution;
+
+import exception.ExecutionException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @description spawn启动的任务
+ *              每个任务用独立的子解释器执行一个函数, 有自己的栈帧、参数和返回值寄存器,
+ *              与启动者只共享代码和通过参数传入的通道
+ *              运行时支持虚拟线程时每个任务一个虚拟线程, 否则使用守护线程池
+ *              任务出错时记录到最外层解释器, 由等待通道或等待任务结束的解释器抛出
+ **/
+class SpawnedTask implements Runnable {
+    private static final ExecutorService EXECUTOR = newExecutor();
+
+    // 执行函数的子解释器
+    private final Interpreter child;
+    // 所有任务共享的第一个错误
+    private final AtomicReference<ExecutionException> failure;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    SpawnedTask(Interpreter child, AtomicReference<ExecutionException> failure) {
+        this.child = child;
+        this.failure = failure;
+    }
+
+    /**
+     * 虚拟线程执行器在较新的运行时中才有, 通过反射获取
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "cmm-spawn");
+                // 不阻止宿主程序退出
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    void start() {
+        EXECUTOR.execute(this);
+    }
+
+    @Override
+    public void run() {
+        try {
+            child.run();
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, new ExecutionException("Spawned task failed: " + e));
+        } finally {
+            child.flushInstructions();
+            done.countDown();
+        }
+    }
+
+    /**
+     * 最多等待指定时间
+     * @return 任务是否已经结束
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * 任务是否正阻塞在通道的收发上
+     */
+    boolean isBlockedOnChannel() {
+        return child.isBlockedOnChannel();
+    }
+
+    void cancel() {
+        child.cancel();
+    }
+
+    /**
+     * 子解释器执行的指令数
+     */
+    long getExecutedInstructions() {
+        return child.executedInstructions;
+    }
+}
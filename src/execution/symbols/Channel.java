@@ -0,0 +1,65 @@
+package execution.symbols;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description 有界通道
+ *              元素放在无锁队列中, 两个信号量分别记录空位数和元素数,
+ *              满时发送等待空位, 空时接收等待元素
+ *              等待都带超时, 由解释器在超时后检查取消标记再继续等待
+ **/
+public class Channel {
+    private final int capacity;
+    private final Queue<Number> queue = new ConcurrentLinkedQueue<>();
+    // 空位数
+    private final Semaphore slots;
+    // 已经放入队列的元素数
+    private final Semaphore items = new Semaphore(0);
+
+    public Channel(int capacity) {
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+    }
+
+    /**
+     * 发送一个值, 通道满时最多等待指定时间
+     * @return 是否发送成功
+     */
+    public boolean offer(Number value, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!slots.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        queue.add(value);
+        items.release();
+        return true;
+    }
+
+    /**
+     * 接收一个值, 通道空时最多等待指定时间
+     * @return 接收到的值, 超时返回null
+     */
+    public Number poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!items.tryAcquire(timeout, unit)) {
+            return null;
+        }
+        Number value = queue.poll();
+        slots.release();
+        return value;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 当前队列中的值, 用于保存检查点
+     */
+    public List<Number> snapshot() {
+        return new ArrayList<>(queue);
+    }
+}
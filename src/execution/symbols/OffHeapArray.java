@@ -0,0 +1,73 @@
+package execution.symbols;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @description 堆外存储的数组
+ *              元素放在分块的直接缓冲区中, 不占用Java堆, 下标为long, 长度可以超过int范围
+ *              每块2^27个元素, int数组每块512MB, real数组每块1GB
+ *              按大端字节序存放, 与检查点中数组内容的格式相同, 保存和恢复时整块拷贝
+ *              只使用绝对位置的读写, 不同线程可以同时访问不同元素
+ **/
+public final class OffHeapArray {
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final boolean isInt;
+    private final long length;
+    // 元素字节数的对数, int为2, real为3
+    private final int elementShift;
+    private final ByteBuffer[] chunks;
+
+    public OffHeapArray(boolean isInt, long length) {
+        this.isInt = isInt;
+        this.length = length;
+        this.elementShift = isInt ? 2 : 3;
+        int count = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+        chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long elements = Math.min(CHUNK_MASK + 1, length - ((long) i << CHUNK_SHIFT));
+            // 直接缓冲区分配时已清零, 与数组的默认值相同
+            chunks[i] = ByteBuffer.allocateDirect((int) (elements << elementShift));
+        }
+    }
+
+    public boolean isInt() {
+        return isInt;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public long byteSize() {
+        return length << elementShift;
+    }
+
+    public int getInt(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].getInt((int) (index & CHUNK_MASK) << 2);
+    }
+
+    public void setInt(long index, int value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)].putInt((int) (index & CHUNK_MASK) << 2, value);
+    }
+
+    public double getReal(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].getDouble((int) (index & CHUNK_MASK) << 3);
+    }
+
+    public void setReal(long index, double value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)].putDouble((int) (index & CHUNK_MASK) << 3, value);
+    }
+
+    public int chunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * 第i块的内容, 返回独立位置的视图, 用于整块拷贝
+     */
+    public ByteBuffer chunk(int i) {
+        return chunks[i].duplicate();
+    }
+}
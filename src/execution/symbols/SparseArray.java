@@ -0,0 +1,157 @@
+package execution.symbols;
+
+import java.util.Arrays;
+
+/**
+ * @description 稀疏存放的数组
+ *              只保存写过的元素, 以开放定址(线性探测)的下标到值的哈希表实现, 键和值都是基本类型数组
+ *              没有写过的元素为0, 与连续存放的数组默认值相同
+ *              写入的元素数超过长度的1/8时, 占用的内存已接近连续存放, 应转为连续存放
+ *              不是线程安全的, 并行循环开始前转为连续存放
+ **/
+public final class SparseArray {
+    // 空槽位的键, 下标不会为负
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int DENSE_RATIO = 8;
+
+    private final boolean isInt;
+    private final long length;
+    private long[] keys;
+    private int[] ints;
+    private double[] reals;
+    // 已使用的槽位数
+    private int size;
+
+    public SparseArray(boolean isInt, long length) {
+        this.isInt = isInt;
+        this.length = length;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        if (isInt) {
+            ints = new int[capacity];
+        } else {
+            reals = new double[capacity];
+        }
+    }
+
+    public boolean isInt() {
+        return isInt;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 写入的元素是否已多到应转为连续存放
+     */
+    public boolean isDense() {
+        return (long) size * DENSE_RATIO > length;
+    }
+
+    public int getInt(long index) {
+        int slot = find(index);
+        return keys[slot] == EMPTY ? 0 : ints[slot];
+    }
+
+    public double getReal(long index) {
+        int slot = find(index);
+        return keys[slot] == EMPTY ? 0 : reals[slot];
+    }
+
+    public void setInt(long index, int value) {
+        // 先插入, 扩容后ints才指向新数组
+        int slot = insert(index);
+        ints[slot] = value;
+    }
+
+    public void setReal(long index, double value) {
+        int slot = insert(index);
+        reals[slot] = value;
+    }
+
+    /**
+     * 槽位总数, 与isUsed、indexAt、intAt、realAt一起遍历所有写过的元素
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return keys[slot] != EMPTY;
+    }
+
+    public long indexAt(int slot) {
+        return keys[slot];
+    }
+
+    public int intAt(int slot) {
+        return ints[slot];
+    }
+
+    public double realAt(int slot) {
+        return reals[slot];
+    }
+
+    /**
+     * 下标所在的槽位, 不存在时为探测到的第一个空槽位
+     */
+    private int find(long index) {
+        int mask = keys.length - 1;
+        int slot = hash(index) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != index) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * 下标所在的槽位, 不存在时占用一个新槽位, 装载因子超过1/2时扩容
+     */
+    private int insert(long index) {
+        int slot = find(index);
+        if (keys[slot] != EMPTY) {
+            return slot;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            slot = find(index);
+        }
+        keys[slot] = index;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldInts = ints;
+        double[] oldReals = reals;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) {
+                continue;
+            }
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            if (isInt) {
+                ints[slot] = oldInts[i];
+            } else {
+                reals[slot] = oldReals[i];
+            }
+        }
+    }
+
+    private static int hash(long index) {
+        long h = index * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
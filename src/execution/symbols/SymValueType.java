@@ -12,5 +12,6 @@ public enum SymValueType {
     TRUE,
     FALSE,
     INT_ARRAY_ELEMENT,
-    REAL_ARRAY_ELEMENT
+    REAL_ARRAY_ELEMENT,
+    CHANNEL
 }
@@ -21,9 +21,19 @@ public class Symbol {
     private String arrName;
     private int[] intArray;
     private double[] realArray;
+    // 超过阈值的数组放在堆外, 此时intArray和realArray为null
+    private OffHeapArray offHeapArray;
+    // 声明的长度很大时先稀疏存放, 写入的元素多了再转为连续存放
+    private SparseArray sparseArray;
 
     // 原始数组的索引
-    private int index;
+    private long index;
+
+    // 二维数组的列数, 即一行的跨度, 按行连续存放; 一维数组为0
+    private int columns;
+
+    // 通道, 按引用传递
+    private Channel channel;
 
 
     public Symbol (String name) {
@@ -74,6 +84,13 @@ public class Symbol {
         return name;
     }
 
+    /**
+     * 被当前符号遮蔽的外层同名符号
+     */
+    public Symbol getNext () {
+        return next;
+    }
+
 
     public String getArrName() {
         return arrName;
@@ -83,11 +100,93 @@ public class Symbol {
         this.arrName = arrName;
     }
 
-    public int getIndex () {
+    public OffHeapArray getOffHeapArray() {
+        return offHeapArray;
+    }
+
+    public void setOffHeapArray(OffHeapArray offHeapArray) {
+        this.offHeapArray = offHeapArray;
+    }
+
+    public SparseArray getSparseArray() {
+        return sparseArray;
+    }
+
+    public void setSparseArray(SparseArray sparseArray) {
+        this.sparseArray = sparseArray;
+    }
+
+    /**
+     * 数组长度, 二维数组为行数*列数
+     */
+    public long getArrayLength() {
+        if (sparseArray != null) {
+            return sparseArray.length();
+        }
+        if (offHeapArray != null) {
+            return offHeapArray.length();
+        }
+        return intArray != null ? intArray.length : realArray.length;
+    }
+
+    /**
+     * 读取数组元素, 下标已检查过上下界
+     */
+    public int getIntElement(long index) {
+        if (sparseArray != null) {
+            return sparseArray.getInt(index);
+        }
+        return offHeapArray != null ? offHeapArray.getInt(index) : intArray[(int) index];
+    }
+
+    public void setIntElement(long index, int value) {
+        if (sparseArray != null) {
+            sparseArray.setInt(index, value);
+        } else if (offHeapArray != null) {
+            offHeapArray.setInt(index, value);
+        } else {
+            intArray[(int) index] = value;
+        }
+    }
+
+    public double getRealElement(long index) {
+        if (sparseArray != null) {
+            return sparseArray.getReal(index);
+        }
+        return offHeapArray != null ? offHeapArray.getReal(index) : realArray[(int) index];
+    }
+
+    public void setRealElement(long index, double value) {
+        if (sparseArray != null) {
+            sparseArray.setReal(index, value);
+        } else if (offHeapArray != null) {
+            offHeapArray.setReal(index, value);
+        } else {
+            realArray[(int) index] = value;
+        }
+    }
+
+    public long getIndex () {
         return index;
     }
 
-    public void setIndex (int index) {
+    public void setIndex (long index) {
         this.index = index;
     }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public void setColumns(int columns) {
+        this.columns = columns;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public void setChannel(Channel channel) {
+        this.channel = channel;
+    }
 }
@@ -1,5 +1,6 @@
 package execution.symbols;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +15,19 @@ import java.util.Map;
 public class SymbolTable {
     // 内部用hash表实现
     private final Map<String, Symbol> map = new HashMap<>();;
+    // 外层符号表, 本表中找不到时到外层查找, 只读
+    private final SymbolTable parent;
+
+    public SymbolTable() {
+        this(null);
+    }
+
+    /**
+     * 以外层符号表为后备的符号表, 如并行循环每次迭代的局部变量
+     */
+    public SymbolTable(SymbolTable parent) {
+        this.parent = parent;
+    }
 
     /**
      * 添加符号至表中
@@ -49,6 +63,18 @@ public class SymbolTable {
      * 根据名字获取对应符号
      */
     public Symbol getSymbol(String name) {
-        return map.get(name);
+        Symbol symbol = map.get(name);
+        if (symbol == null && parent != null) {
+            return parent.getSymbol(name);
+        }
+        return symbol;
+    }
+
+    /**
+     * 表中所有名字及其最内层符号的只读视图, 外层同名符号通过next链访问
+     * 已删除到底的名字对应值为null
+     */
+    public Map<String, Symbol> entries() {
+        return Collections.unmodifiableMap(map);
     }
 }
@@ -1,5 +1,6 @@
 package gui;
 
+import exception.ExecutionAbortedException;
 import exception.ExecutionException;
 import exception.SemanticException;
 import syntax.SyntaxParser;
@@ -26,6 +27,8 @@ public class Controller {
     InterGenerator generator;
     // 解释执行器
     Interpreter interpreter;
+    // 解释执行的线程
+    private Thread executeThread;
 
     // 源文件路径
     private String filepath;
@@ -137,22 +140,43 @@ public class Controller {
 
     /**
      * 解释执行
+     * 在后台线程中执行, 界面可以停止执行
      */
     public void execute(ActionEvent event) {
+        if (interpreter != null && executeThread != null && executeThread.isAlive()) {
+            // 上一次执行还没有结束
+            return;
+        }
         interpreter = new Interpreter(generator);
-        long startTime = System.currentTimeMillis();    //获取开始时间
+        Interpreter current = interpreter;
+        executeThread = new Thread(() -> {
+            long startTime = System.currentTimeMillis();    //获取开始时间
+
+            try {
+                current.run();
+            } catch (ExecutionAbortedException e) {
+                System.out.println("执行被中止！" + e.getMessage());
+            } catch (ExecutionException e) {
+                System.out.println("执行期间错误！" + e.getMessage());
+            }
 
-        try {
-            interpreter.run();
-        } catch (ExecutionException e) {
-            System.out.println("执行期间错误！" + e.getMessage());
-        }
+            long endTime = System.currentTimeMillis();    //获取结束时间
 
-        long endTime = System.currentTimeMillis();    //获取结束时间
+            System.out.println("----------------");
+            System.out.println("解释器执行完毕");
+            System.out.printf("执行时间为 %dms\n", endTime-startTime);
+        }, "cmm-execute");
+        executeThread.setDaemon(true);
+        executeThread.start();
+    }
 
-        System.out.println("----------------");
-        System.out.println("解释器执行完毕");
-        System.out.printf("执行时间为 %dms\n", endTime-startTime);
+    /**
+     * 停止解释执行
+     */
+    public void stopExecution(ActionEvent event) {
+        if (interpreter != null) {
+            interpreter.cancel();
+        }
     }
 
     /**
@@ -244,7 +268,9 @@ public class Controller {
             return;
         }
         // 带关系表达式条件单独设置
-        if (stmtNode.getType() == TreeNodeType.WHILE || stmtNode.getType() == TreeNodeType.IF || stmtNode.getType() == TreeNodeType.ELSE_IF) {
+        if (stmtNode.getType() == TreeNodeType.WHILE || stmtNode.getType() == TreeNodeType.PARALLEL_WHILE
+                || stmtNode.getType() == TreeNodeType.FOR
+                || stmtNode.getType() == TreeNodeType.IF || stmtNode.getType() == TreeNodeType.ELSE_IF) {
             TreeItem<String> conditionTreeItem = new TreeItem<>(
                     stmtNode.getCondition().getType().toString());
 
@@ -252,8 +278,8 @@ public class Controller {
 
             stmtSubTree.getChildren().add(conditionTreeItem);
 
-            if (stmtNode.getType() == TreeNodeType.IF) {
-                // else if的情况
+            if (stmtNode.getType() == TreeNodeType.IF || stmtNode.getType() == TreeNodeType.FOR) {
+                // else if的情况, 或for的初始化语句
                 if (!stmtNode.getStatements().isEmpty()) {
                     TreeItem<String> subIfTreeItem;
                     for (TreeNode node: stmtNode.getStatements()) {
@@ -264,6 +290,21 @@ public class Controller {
                 }
             }
         }
+        if (stmtNode.getType() == TreeNodeType.SWITCH) {
+            // switch的每个分支, case显示标签
+            for (TreeNode branch : stmtNode.getStatements()) {
+                StringBuilder label = new StringBuilder(branch.getType().toString());
+                if (branch.getType() == TreeNodeType.CASE) {
+                    label.append(":");
+                    for (TreeNode value : branch.getArgList()) {
+                        label.append(" ").append(value.isNegative() ? -value.getIntValue() : value.getIntValue());
+                    }
+                }
+                TreeItem<String> branchTreeItem = new TreeItem<>(label.toString());
+                traverseStmtNode(branchTreeItem, branch);
+                stmtSubTree.getChildren().add(branchTreeItem);
+            }
+        }
         if (stmtNode.left != null) {
             TreeItem<String> leftTreeItem;
             switch (stmtNode.left.getType()) {
@@ -49,9 +49,6 @@ public class Lexer {
     private int pointer = 0;
     // 静态初始化保留字表
     static {
-        DIRECT_RECOGNIZED.put('+', TokenType.PLUS.ordinal());
-        DIRECT_RECOGNIZED.put('-', TokenType.MINUS.ordinal());
-        DIRECT_RECOGNIZED.put('*', TokenType.MULTIPLY.ordinal());
         DIRECT_RECOGNIZED.put(';', TokenType.SEMICOLON.ordinal());
         DIRECT_RECOGNIZED.put('(', TokenType.L_PARENTHESIS.ordinal());
         DIRECT_RECOGNIZED.put(')', TokenType.R_PARENTHESIS.ordinal());
@@ -60,6 +57,7 @@ public class Lexer {
         DIRECT_RECOGNIZED.put('[', TokenType.L_BRACKET.ordinal());
         DIRECT_RECOGNIZED.put(']', TokenType.R_BRACKET.ordinal());
         DIRECT_RECOGNIZED.put(',', TokenType.COMMA.ordinal());
+        DIRECT_RECOGNIZED.put(':', TokenType.COLON.ordinal());
 
         RESERVED_WORDS.put("if", TokenType.IF.ordinal());
         RESERVED_WORDS.put("else", TokenType.ELSE.ordinal());
@@ -75,6 +73,15 @@ public class Lexer {
         RESERVED_WORDS.put("void", TokenType.VOID.ordinal());
         RESERVED_WORDS.put("func", TokenType.FUNC.ordinal());
         RESERVED_WORDS.put("return", TokenType.RETURN.ordinal());
+        RESERVED_WORDS.put("parallel", TokenType.PARALLEL.ordinal());
+        RESERVED_WORDS.put("spawn", TokenType.SPAWN.ordinal());
+        RESERVED_WORDS.put("chan", TokenType.CHAN.ordinal());
+        RESERVED_WORDS.put("send", TokenType.SEND.ordinal());
+        RESERVED_WORDS.put("recv", TokenType.RECV.ordinal());
+        RESERVED_WORDS.put("switch", TokenType.SWITCH.ordinal());
+        RESERVED_WORDS.put("case", TokenType.CASE.ordinal());
+        RESERVED_WORDS.put("default", TokenType.DEFAULT.ordinal());
+        RESERVED_WORDS.put("extern", TokenType.EXTERN.ordinal());
     }
 
     public static void main(String[] args) {
@@ -183,6 +190,36 @@ public class Lexer {
         } else if(curCh == '/') {
             readCharSkip();
             parseSplash(token);
+        } else if(curCh == '+') {
+            // 判断加号、自增还是复合赋值
+            readChar();
+            if (curCh == '+') {
+                token.setType(TokenType.INCREMENT);
+            } else if (curCh == '=') {
+                token.setType(TokenType.PLUS_ASSIGN);
+            } else {
+                token.setType(TokenType.PLUS);
+                pointer--;
+            }
+        } else if(curCh == '-') {
+            // 判断减号、自减还是复合赋值
+            readChar();
+            if (curCh == '-') {
+                token.setType(TokenType.DECREMENT);
+            } else if (curCh == '=') {
+                token.setType(TokenType.MINUS_ASSIGN);
+            } else {
+                token.setType(TokenType.MINUS);
+                pointer--;
+            }
+        } else if(curCh == '*') {
+            readChar();
+            if (curCh == '=') {
+                token.setType(TokenType.MULTIPLY_ASSIGN);
+            } else {
+                token.setType(TokenType.MULTIPLY);
+                pointer--;
+            }
         } else if(curCh == '=') {
             // 判断赋值还是相等
             readChar();
@@ -203,6 +240,17 @@ public class Lexer {
                 token.setType(TokenType.LESS);
                 pointer--;
             }
+        } else if(curCh == '&' || curCh == '|') {
+            // 逻辑与、逻辑或必须是两个相同的字符
+            char first = curCh;
+            readChar();
+            if (curCh == first) {
+                token.setType(first == '&' ? TokenType.AND : TokenType.OR);
+            } else {
+                pointer--;
+            }
+        } else if(curCh == '!') {
+            token.setType(TokenType.NOT);
         } else if(curCh == ';') {
             token.setType(TokenType.SEMICOLON);
         } else if(curCh == '>') {
@@ -426,6 +474,8 @@ public class Lexer {
             // 单行行注释, 直接读到行尾
             readToLineEnd();
             token.setType(TokenType.SINGLE_LINE_COMMENT);
+        } else if(curCh == '=') {
+            token.setType(TokenType.DIVIDE_ASSIGN);
         } else {
             // 除号
             token.setType(TokenType.DIVIDE);
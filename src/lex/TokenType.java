@@ -21,6 +21,15 @@ public enum TokenType {
     VOID,
     FUNC,       // func, 函数定义开始
     RETURN,
+    PARALLEL,   // parallel, 并行循环
+    SPAWN,      // spawn, 启动并发任务
+    CHAN,       // chan, 通道声明
+    SEND,       // send, 向通道发送
+    RECV,       // recv, 从通道接收
+    SWITCH,     // switch
+    CASE,       // case
+    DEFAULT,    // default, switch中没有对应case时执行
+    EXTERN,     // extern, 声明由Java实现的函数
 
     // 算术运算符
     PLUS,       // +
@@ -29,6 +38,12 @@ public enum TokenType {
     DIVIDE,     // /
 
     ASSIGN,     // =
+    PLUS_ASSIGN,        // +=
+    MINUS_ASSIGN,       // -=
+    MULTIPLY_ASSIGN,    // *=
+    DIVIDE_ASSIGN,      // /=
+    INCREMENT,          // ++
+    DECREMENT,          // --
 
     // 关系运算符
     LESS,           // <
@@ -38,11 +53,16 @@ public enum TokenType {
     EQUAL,          // ==
     NOT_EQUAL,      // <>
 
+    // 逻辑运算符, 只能用于条件
+    AND,            // &&
+    OR,             // ||
+    NOT,            // !
 
     // 分隔符
     SEMICOLON,          // ;
     SINGLE_QUOTE,       // '
     COMMA,       // ,
+    COLON,       // :, case标签之后
 
     // 括号
     L_PARENTHESIS,      // (
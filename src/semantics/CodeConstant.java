@@ -24,21 +24,59 @@ public class CodeConstant {
     public static final String ARG = "arg";
     // 调用函数
     public static final String CALL = "call";
+    // 调用extern函数, 执行注册的Java静态方法, 返回值放入返回值寄存器
+    public static final String NATIVE = "native";
     // 函数返回
     public static final String RETURN = "ret";
+    // 并行调用无副作用的函数, 结果留给join
+    public static final String FORK = "fork";
+    // 等待fork的调用结束并把返回值赋给变量
+    public static final String JOIN = "join";
+    // 在新任务中执行函数, 调用者不等待
+    public static final String SPAWN = "spawn";
+    // 声明有界通道
+    public static final String CHAN = "chan";
+    // 向通道发送, 通道满时等待
+    public static final String SEND = "send";
+    // 从通道接收, 通道空时等待
+    public static final String RECV = "recv";
 
     public static final String INT = "int";
     public static final String REAL = "real";
     public static final String INT_ARR = "int[]";
     public static final String REAL_ARR = "real[]";
+    // 不会逃逸出所在调用的数组声明, 从解释器的数组池分配, 退出语句块或函数返回时归还
+    public static final String POOL_INT_ARR = "pool_int[]";
+    public static final String POOL_REAL_ARR = "pool_real[]";
     public static final String CHAR = "char";
     public static final String VOID = "void";
 
     public static final String ASSIGN = "assign";
+    // 复合赋值, 在变量或数组元素上原地更新
+    public static final String PLUS_ASSIGN = "+=";
+    public static final String MINUS_ASSIGN = "-=";
+    public static final String MUL_ASSIGN = "*=";
+    public static final String DIV_ASSIGN = "/=";
     public static final String PLUS = "+";
     public static final String MINUS = "-";
     public static final String MUL = "*";
     public static final String DIV = "/";
+    // 内建数学函数, 操作数为参数, 结果放入目标临时变量
+    public static final String SQRT = "sqrt";
+    public static final String POW = "pow";
+    public static final String ABS = "abs";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String FLOOR = "floor";
+    // 数组内建函数, 一条指令处理整个数组
+    // fill,值,null,数组名
+    public static final String FILL = "fill";
+    // copy,源数组,个数,目标数组
+    public static final String COPY = "copy";
+    // sort,null,null,数组名
+    public static final String SORT = "sort";
+    // sum,数组名,null,临时变量名
+    public static final String SUM = "sum";
     public static final String LE = "<";
     public static final String EQ = "==";
     public static final String NEQ = "<>";
@@ -47,6 +85,22 @@ public class CodeConstant {
     public static final String GR_EQ = ">=";
     // 数组访问
     public static final String ARR_ACC = "arr_acc";
+    // 二维数组访问, 按 行下标*列数+列下标 一次算出连续存放的位置并取元素
+    public static final String ARR_ACC_2D = "arr_acc2";
+    // 并行循环, 循环变量小于/小于等于上界时把各次迭代分给多个线程执行, 之后跳到循环结束位置
+    public static final String PAR_LE = "par<";
+    public static final String PAR_LE_EQ = "par<=";
+    // 按跳转表跳到值对应的case, 没有对应case时跳到jumpLocation
+    public static final String SWITCH = "switch";
+    // for循环的步进, 循环变量加1后小于/小于等于上界时跳回循环体开头, 否则执行下一条
+    public static final String FOR_LE = "for<";
+    public static final String FOR_LE_EQ = "for<=";
+    // 可以整体执行的数组循环的条件, 循环变量小于/小于等于上界时先对数组整体计算, 再按<、<=判断
+    public static final String VEC_LE = "vec<";
+    public static final String VEC_LE_EQ = "vec<=";
+    // 归约循环的条件, 循环变量小于/小于等于上界时先对数组整体归约, 再按<、<=判断
+    public static final String RED_LE = "red<";
+    public static final String RED_LE_EQ = "red<=";
 
     // 进入语句块代码
     public static final Quadruple inCode = new Quadruple(CodeConstant.IN);
@@ -55,6 +109,8 @@ public class CodeConstant {
 
     // 参数名前缀
     public static final String ARG_PREFIX = "%arg";
+    // 全局变量名前缀, 后接静态段中的槽位号
+    public static final String GLOBAL_PREFIX = "%global";
     // 返回值
     public static final String RETURN_VALUE = "%rax";
     // TRUE
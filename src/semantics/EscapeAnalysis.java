@@ -0,0 +1,122 @@
+package semantics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description 函数局部数组的逃逸分析
+ *              数组只在声明它的调用执行期间被使用时不会逃逸, 退出语句块或函数返回后可以回收复用
+ *              函数内对数组名的使用只有数组访问、输出、数组内建函数, 以及作为参数传给call或fork时不会逃逸:
+ *              被调函数在返回前使用数组, fork在所在语句块结束之前join
+ *              传给spawn的任务, 或以其他方式出现在操作数中时视为逃逸
+ *              不逃逸的数组声明改为pool_int[]、pool_real[], 执行时从解释器的数组池分配
+ **/
+class EscapeAnalysis {
+
+    private EscapeAnalysis() {
+    }
+
+    /**
+     * 标记所有不逃逸的数组声明
+     * @return 标记的声明数
+     */
+    static int mark(List<Quadruple> codes, Map<String, Integer> funcInstrMap, StringBuilder optimInfo) {
+        int marked = 0;
+        for (int[] range : ForkJoinPlanner.functionRanges(codes, funcInstrMap).values()) {
+            List<Integer> declarations = new ArrayList<>();
+            Set<String> escaped = new HashSet<>();
+            for (int i = range[0]; i < range[1]; i++) {
+                Quadruple code = codes.get(i);
+                if (code.operation.equals(CodeConstant.INT_ARR) || code.operation.equals(CodeConstant.REAL_ARR)) {
+                    declarations.add(i);
+                    // 长度和列数是标量, 不会是数组
+                    continue;
+                }
+                collectEscapes(codes, i, range[1], escaped);
+            }
+            for (int i : declarations) {
+                Quadruple code = codes.get(i);
+                if (escaped.contains(code.dest)) {
+                    continue;
+                }
+                code.operation = code.operation.equals(CodeConstant.INT_ARR)
+                        ? CodeConstant.POOL_INT_ARR : CodeConstant.POOL_REAL_ARR;
+                optimInfo.append("数组").append(code.dest).append("不会逃逸出所在的调用, 从数组池分配\n");
+                marked++;
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * 第i行使用的名字中, 可能使数组逃逸的加入escaped
+     * 按名字判断, 同名的标量也会使数组被视为逃逸, 结果偏保守
+     */
+    private static void collectEscapes(List<Quadruple> codes, int i, int end, Set<String> escaped) {
+        Quadruple code = codes.get(i);
+        switch (code.operation) {
+            case CodeConstant.ARR_ACC:
+                // 数组名只用于取元素, 下标才可能是其他变量
+                addOperand(escaped, code.secondOperandType, code.secondOperand);
+                return;
+            case CodeConstant.ARR_ACC_2D:
+                // 数组名不在操作数中, 两个操作数都是下标
+                addOperand(escaped, code.firstOperandType, code.firstOperand);
+                addOperand(escaped, code.secondOperandType, code.secondOperand);
+                return;
+            case CodeConstant.PRINT:
+                // 输出时只读取
+                return;
+            case CodeConstant.FILL:
+                // 数组只在指令执行期间整体写入, 值是标量
+                addOperand(escaped, code.firstOperandType, code.firstOperand);
+                return;
+            case CodeConstant.COPY:
+                // 两个数组都只在指令执行期间使用, 个数是标量
+                addOperand(escaped, code.secondOperandType, code.secondOperand);
+                return;
+            case CodeConstant.SORT:
+            case CodeConstant.SUM:
+                return;
+            case CodeConstant.ARG:
+                if (!passedToSpawn(codes, i, end)) {
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        addOperand(escaped, code.firstOperandType, code.firstOperand);
+        addOperand(escaped, code.secondOperandType, code.secondOperand);
+        if (!code.isJump() && code.dest != null) {
+            escaped.add(code.dest);
+        }
+    }
+
+    /**
+     * 第i行的参数是否传给spawn, 参数之后的第一条调用指令即为接收参数的调用
+     */
+    private static boolean passedToSpawn(List<Quadruple> codes, int i, int end) {
+        for (int k = i + 1; k < end; k++) {
+            switch (codes.get(k).operation) {
+                case CodeConstant.CALL:
+                case CodeConstant.FORK:
+                    return false;
+                case CodeConstant.SPAWN:
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static void addOperand(Set<String> escaped, OperandType type, Operand operand) {
+        if (type == OperandType.IDENTIFIER) {
+            escaped.add(operand.name);
+        }
+    }
+}
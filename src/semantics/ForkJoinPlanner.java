@@ -0,0 +1,393 @@
+package semantics;
+
+import exception.SemanticException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description 无副作用函数调用的并行化
+ *              无副作用指函数及其调用的函数都不做输入输出、不收发通道、不启动任务、不调用extern函数, 不通过数组形参写入元素,
+ *              不写全局变量, 结果只取决于参数和全局变量
+ *              数组按引用传入, 并行的调用传入数组或读取全局变量时, 调用者在join之前不能写数组元素、全局变量或调用有副作用的函数
+ *              对于 call f; assign %rax,x 之后紧跟的一段不使用x的顺序代码,
+ *              若其中还有其他调用, 则把call改为fork, 把赋值改为join并移到这段代码之后,
+ *              使f与后面的调用同时执行, 如 x = fib(n-1); y = fib(n-2);
+ *              只在同一个语句块内移动, 代码总数不变, 不需要重定位跳转
+ **/
+class ForkJoinPlanner {
+
+    private ForkJoinPlanner() {
+    }
+
+    /**
+     * 找出直接有副作用的函数: 做输入输出、收发通道、启动任务、调用extern函数、写数组形参或全局变量
+     * 调用其他函数带来的副作用由findPureFunctions按调用关系传递
+     */
+    static Set<String> findEffectFunctions(List<Quadruple> codes, Map<String, Integer> funcInstrMap) {
+        Set<String> effects = new HashSet<>();
+        for (Map.Entry<String, int[]> entry : functionRanges(codes, funcInstrMap).entrySet()) {
+            int[] range = entry.getValue();
+            // 数组形参和全局数组元素的临时变量, 给它赋值即写入调用者可见的数组
+            Set<String> argElements = new HashSet<>();
+            boolean hasEffect = false;
+            for (int i = range[0]; i < range[1]; i++) {
+                Quadruple code = codes.get(i);
+                if (isElementAccess(code) && isShared(arrayOf(code))) {
+                    argElements.add(code.dest);
+                } else if (isStore(code) && (argElements.contains(code.dest)
+                        || code.dest.startsWith(CodeConstant.GLOBAL_PREFIX))) {
+                    hasEffect = true;
+                } else if (isArrayStore(code) && isShared(code.dest)) {
+                    // fill、copy、sort写入整个数组形参或全局数组
+                    hasEffect = true;
+                }
+                switch (code.operation) {
+                    case CodeConstant.PRINT:
+                    case CodeConstant.SCAN:
+                    case CodeConstant.SPAWN:
+                    case CodeConstant.SEND:
+                    case CodeConstant.RECV:
+                    case CodeConstant.NATIVE:
+                        // Java方法是否有副作用无从得知
+                        hasEffect = true;
+                        break;
+                }
+            }
+            if (hasEffect) {
+                effects.add(entry.getKey());
+            }
+        }
+        return effects;
+    }
+
+    /**
+     * 找出没有副作用的函数: 自身没有副作用, 调用的函数也都没有副作用
+     * 调用了不在callees中的函数时视为有副作用
+     * @param effects 直接有副作用的函数
+     * @param callees 每个函数call或fork的函数
+     */
+    static Set<String> findPureFunctions(Set<String> effects, Map<String, Set<String>> callees) {
+        Set<String> seeds = new HashSet<>(effects);
+        for (Set<String> called : callees.values()) {
+            for (String name : called) {
+                if (!callees.containsKey(name)) {
+                    seeds.add(name);
+                }
+            }
+        }
+        Set<String> pure = new HashSet<>(callees.keySet());
+        pure.removeAll(findCallers(seeds, callees));
+        return pure;
+    }
+
+    /**
+     * 找出seeds中的函数以及直接或间接调用了它们的函数
+     */
+    static Set<String> findCallers(Set<String> seeds, Map<String, Set<String>> callees) {
+        Set<String> callers = new HashSet<>(seeds);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> entry : callees.entrySet()) {
+                if (!callers.contains(entry.getKey()) && !Collections.disjoint(entry.getValue(), callers)) {
+                    callers.add(entry.getKey());
+                    changed = true;
+                }
+            }
+        }
+        return callers;
+    }
+
+    /**
+     * 找出roots中的函数以及它们直接或间接调用的函数
+     */
+    static Set<String> findReachable(Set<String> roots, Map<String, Set<String>> callees) {
+        Set<String> reached = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            String func = pending.pop();
+            if (reached.add(func)) {
+                pending.addAll(callees.getOrDefault(func, Collections.emptySet()));
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * 找出直接或间接读取全局变量的函数
+     */
+    static Set<String> findGlobalReaders(List<Quadruple> codes, Map<String, Integer> funcInstrMap) {
+        Map<String, Set<String>> callees = new HashMap<>();
+        Set<String> readers = new HashSet<>();
+        for (Map.Entry<String, int[]> entry : functionRanges(codes, funcInstrMap).entrySet()) {
+            Set<String> called = new HashSet<>();
+            for (int i = entry.getValue()[0]; i < entry.getValue()[1]; i++) {
+                Quadruple code = codes.get(i);
+                if (code.operation.equals(CodeConstant.CALL) || code.operation.equals(CodeConstant.FORK)) {
+                    called.add(code.firstOperand.name);
+                } else if (isGlobal(code.firstOperandType, code.firstOperand)
+                        || isGlobal(code.secondOperandType, code.secondOperand)
+                        || (code.array != null && code.array.startsWith(CodeConstant.GLOBAL_PREFIX))) {
+                    readers.add(entry.getKey());
+                }
+            }
+            callees.put(entry.getKey(), called);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> entry : callees.entrySet()) {
+                if (!readers.contains(entry.getKey()) && !Collections.disjoint(entry.getValue(), readers)) {
+                    readers.add(entry.getKey());
+                    changed = true;
+                }
+            }
+        }
+        return readers;
+    }
+
+    /**
+     * 找出直接写全局变量、全局数组元素或整个全局数组的函数
+     */
+    static Set<String> findGlobalWriters(List<Quadruple> codes, Map<String, Integer> funcInstrMap) {
+        Set<String> writers = new HashSet<>();
+        for (Map.Entry<String, int[]> entry : functionRanges(codes, funcInstrMap).entrySet()) {
+            // 全局数组元素的临时变量
+            Set<String> globalElements = new HashSet<>();
+            for (int i = entry.getValue()[0]; i < entry.getValue()[1]; i++) {
+                Quadruple code = codes.get(i);
+                if (isElementAccess(code) && arrayOf(code).startsWith(CodeConstant.GLOBAL_PREFIX)) {
+                    globalElements.add(code.dest);
+                } else if ((isStore(code) || isArrayStore(code)) && (globalElements.contains(code.dest)
+                        || code.dest.startsWith(CodeConstant.GLOBAL_PREFIX))) {
+                    writers.add(entry.getKey());
+                }
+            }
+        }
+        return writers;
+    }
+
+    /**
+     * 每个函数调用的函数
+     * @param spawn 为true时只取spawn的函数, 否则取call和fork的函数
+     */
+    static Map<String, Set<String>> findCallees(List<Quadruple> codes, Map<String, Integer> funcInstrMap,
+                                                boolean spawn) {
+        Map<String, Set<String>> callees = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : functionRanges(codes, funcInstrMap).entrySet()) {
+            Set<String> called = new HashSet<>();
+            for (int i = entry.getValue()[0]; i < entry.getValue()[1]; i++) {
+                Quadruple code = codes.get(i);
+                boolean isSpawn = code.operation.equals(CodeConstant.SPAWN);
+                boolean isCall = code.operation.equals(CodeConstant.CALL) || code.operation.equals(CodeConstant.FORK);
+                if (spawn ? isSpawn : isCall) {
+                    called.add(code.firstOperand.name);
+                }
+            }
+            callees.put(entry.getKey(), called);
+        }
+        return callees;
+    }
+
+    /**
+     * spawn的任务与main和其他任务同时运行, 共享静态段, 任务中写全局变量会产生数据竞争
+     * 检查spawn的函数及其直接或间接调用的函数都不写全局变量, 与不能向任务传数组一样应使用通道
+     * @param writers 直接写全局变量的函数
+     * @param callees 每个函数call或fork的函数
+     * @param spawnees 每个函数spawn的函数
+     */
+    static void checkSpawnedWrites(Set<String> writers, Map<String, Set<String>> callees,
+                                   Map<String, Set<String>> spawnees) throws SemanticException {
+        for (Set<String> targets : spawnees.values()) {
+            for (String target : targets) {
+                Set<String> visited = new HashSet<>();
+                Deque<String> pending = new ArrayDeque<>();
+                pending.push(target);
+                while (!pending.isEmpty()) {
+                    String func = pending.pop();
+                    if (!visited.add(func)) {
+                        continue;
+                    }
+                    if (writers.contains(func)) {
+                        throw new SemanticException("Spawned function " + target + " writes global variables"
+                                + (func.equals(target) ? "" : " through " + func) + ", use channels!");
+                    }
+                    pending.addAll(callees.getOrDefault(func, Collections.emptySet()));
+                }
+            }
+        }
+    }
+
+    private static boolean isGlobal(OperandType type, Operand operand) {
+        return type == OperandType.IDENTIFIER && operand.name.startsWith(CodeConstant.GLOBAL_PREFIX);
+    }
+
+    /**
+     * 是否为调用者也能访问的数组: 数组形参或全局数组
+     */
+    private static boolean isShared(String array) {
+        return array.startsWith(CodeConstant.ARG_PREFIX) || array.startsWith(CodeConstant.GLOBAL_PREFIX);
+    }
+
+    /**
+     * 改写可以并行的调用
+     * @return 改写的调用数
+     */
+    static int plan(List<Quadruple> codes, Map<String, Integer> funcInstrMap, Set<String> pureFuncs,
+                    Set<String> arrayArgFuncs, StringBuilder optimInfo) {
+        Set<Integer> jumpTargets = new HashSet<>();
+        for (Quadruple code : codes) {
+            if (code.isJump()) {
+                jumpTargets.add(code.jumpLocation);
+            }
+            if (code.switchTable != null) {
+                for (int target : code.switchTable.getTargets()) {
+                    jumpTargets.add(target);
+                }
+            }
+        }
+        int planned = 0;
+        for (int[] range : functionRanges(codes, funcInstrMap).values()) {
+            int i = range[0];
+            while (i < range[1] - 1) {
+                int end = findJoinPoint(codes, range, i, pureFuncs, arrayArgFuncs, jumpTargets);
+                if (end < 0) {
+                    i++;
+                    continue;
+                }
+                Quadruple call = codes.get(i);
+                Quadruple assign = codes.get(i + 1);
+                call.operation = CodeConstant.FORK;
+                call.dest = assign.dest;
+                assign.operation = CodeConstant.JOIN;
+                // 赋值移到这段代码之后
+                Collections.rotate(codes.subList(i + 1, end), -1);
+                optimInfo.append("调用").append(call.firstOperand.name).append("的结果").append(call.dest)
+                        .append("与后续调用互不依赖, 并行执行\n");
+                planned++;
+                i = end;
+            }
+        }
+        return planned;
+    }
+
+    /**
+     * 判断第i行是否为可并行的调用
+     * @return join应当放到的位置之后一行, 不可并行时返回-1
+     */
+    private static int findJoinPoint(List<Quadruple> codes, int[] range, int i, Set<String> pureFuncs,
+                                     Set<String> arrayArgFuncs, Set<Integer> jumpTargets) {
+        Quadruple call = codes.get(i);
+        if (!call.operation.equals(CodeConstant.CALL) || !pureFuncs.contains(call.firstOperand.name)) {
+            return -1;
+        }
+        Quadruple assign = codes.get(i + 1);
+        if (!assign.operation.equals(CodeConstant.ASSIGN) || assign.firstOperandType != OperandType.RETURN_VALUE
+                || assign.dest.startsWith(CodeConstant.ARG_PREFIX) || jumpTargets.contains(i + 1)) {
+            return -1;
+        }
+        String result = assign.dest;
+        // 结果是数组元素时, 后面对同一数组的读取会受影响, 不并行
+        Set<String> elements = new HashSet<>();
+        for (int k = range[0]; k < range[1]; k++) {
+            Quadruple code = codes.get(k);
+            if (isElementAccess(code)) {
+                if (result.equals(code.dest)) {
+                    return -1;
+                }
+                elements.add(code.dest);
+            }
+        }
+        // 传入的数组或全局变量在被调函数中读取, 调用者写数组元素、全局变量或调用有副作用的函数时结束
+        boolean sharesArrays = arrayArgFuncs.contains(call.firstOperand.name);
+        boolean hasCall = false;
+        int j = i + 2;
+        for (; j < range[1]; j++) {
+            Quadruple code = codes.get(j);
+            if (jumpTargets.contains(j) || code.isJump() || uses(code, result)) {
+                break;
+            }
+            if (sharesArrays && ((isStore(code) && (elements.contains(code.dest)
+                    || code.dest.startsWith(CodeConstant.GLOBAL_PREFIX))) || isArrayStore(code)
+                    || (code.operation.equals(CodeConstant.CALL) && !pureFuncs.contains(code.firstOperand.name)))) {
+                break;
+            }
+            boolean stop = false;
+            switch (code.operation) {
+                case CodeConstant.IN:
+                case CodeConstant.OUT:
+                case CodeConstant.RETURN:
+                case CodeConstant.FORK:
+                case CodeConstant.JOIN:
+                    stop = true;
+                    break;
+                case CodeConstant.CALL:
+                    hasCall = true;
+                    break;
+            }
+            if (stop) {
+                break;
+            }
+        }
+        return hasCall ? j : -1;
+    }
+
+    private static boolean isElementAccess(Quadruple code) {
+        return code.operation.equals(CodeConstant.ARR_ACC) || code.operation.equals(CodeConstant.ARR_ACC_2D);
+    }
+
+    /**
+     * 数组访问的数组名
+     */
+    private static String arrayOf(Quadruple code) {
+        return code.operation.equals(CodeConstant.ARR_ACC_2D) ? code.array : code.firstOperand.name;
+    }
+
+    /**
+     * 四元式是否为写入整个目标数组的内建函数
+     */
+    private static boolean isArrayStore(Quadruple code) {
+        return code.operation.equals(CodeConstant.FILL) || code.operation.equals(CodeConstant.COPY)
+                || code.operation.equals(CodeConstant.SORT);
+    }
+
+    /**
+     * 四元式是否写入目标变量
+     */
+    private static boolean isStore(Quadruple code) {
+        return code.operation.equals(CodeConstant.ASSIGN) || code.isCompoundAssign()
+                || code.operation.equals(CodeConstant.RECV) || code.operation.equals(CodeConstant.SCAN);
+    }
+
+    /**
+     * 四元式是否读或写了指定变量
+     */
+    private static boolean uses(Quadruple code, String name) {
+        return (code.firstOperandType == OperandType.IDENTIFIER && name.equals(code.firstOperand.name))
+                || (code.secondOperandType == OperandType.IDENTIFIER && name.equals(code.secondOperand.name))
+                || (!code.isJump() && name.equals(code.dest));
+    }
+
+    /**
+     * 每个函数的代码范围[入口, 下一个函数入口)
+     */
+    static Map<String, int[]> functionRanges(List<Quadruple> codes, Map<String, Integer> funcInstrMap) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(funcInstrMap.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        Map<String, int[]> ranges = new HashMap<>();
+        for (int k = 0; k < entries.size(); k++) {
+            int start = entries.get(k).getValue();
+            int end = k + 1 < entries.size() ? entries.get(k + 1).getValue() : codes.size();
+            ranges.put(entries.get(k).getKey(), new int[]{start, end});
+        }
+        return ranges;
+    }
+}
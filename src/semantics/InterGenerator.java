@@ -19,8 +19,6 @@ public class InterGenerator {
     private List<Quadruple> codes = new ArrayList<>();
     // 语法分析器
     private SyntaxParser parser;
-    // 回填列表
-    private Stack<Integer> backPatch = new Stack<>();
     // 临时变量序号
     // 保证中间变量名全局唯一
     private int tempSerialNum = 0;
@@ -36,6 +34,38 @@ public class InterGenerator {
     public Map<String, Integer> funcInstrMap = new HashMap<>();
     // 根据函数名找到参数类型列表, 可供调用时比对
     public Map<String, List<TreeNode>> funcArgTypeMap = new HashMap<>();
+    // 根据函数名找到返回值类型
+    public Map<String, TreeNodeType> funcReturnTypeMap = new HashMap<>();
+    // extern函数的返回值类型, 链接时与绑定的方法比对
+    public Map<String, TreeNodeType> externReturnTypeMap = new HashMap<>();
+    // 是否为热替换单独生成函数, 此时已有的函数只能换成签名相同的函数
+    private boolean replacing = false;
+    // 当前函数的函数体, 用于确定并行循环处可见的局部变量
+    private TreeNode funcBody;
+    // 当前函数中的数组及其声明结点, 包括数组形参, 用于检查数组实参
+    private Map<String, TreeNode> declaredArrays = new HashMap<>();
+    // 全局变量名及其声明结点, 按声明顺序, 第k个放在静态段的第k个槽位
+    public Map<String, TreeNode> globalDecls = new LinkedHashMap<>();
+    // 全局变量名 -> 槽位名, 如 n->%global0
+    private Map<String, String> globalMap = new HashMap<>();
+    // extern函数, 由注册的Java静态方法实现, 没有入口地址
+    public Set<String> externFuncs = new HashSet<>();
+    // 没有副作用的函数, 调用可以并行执行
+    public Set<String> pureFuncs = new HashSet<>();
+    // 直接写全局变量的函数, 不能由spawn的任务调用
+    public Set<String> globalWriters = new HashSet<>();
+    // 直接有副作用的函数
+    public Set<String> effectFuncs = new HashSet<>();
+    // 直接或间接读取全局变量的函数
+    public Set<String> globalReaders = new HashSet<>();
+    // 在并行循环中调用或被fork的函数, 热替换时不能换成有副作用的函数
+    public Set<String> parallelRoots = new HashSet<>();
+    // 函数 -> call或fork的函数
+    public Map<String, Set<String>> callees = new HashMap<>();
+    // 函数 -> spawn的函数
+    public Map<String, Set<String>> spawnees = new HashMap<>();
+    // 并行循环中调用的函数, 必须没有副作用
+    private Set<String> parallelCallees = new HashSet<>();
 
     // 是否开启优化
     private boolean optimEnabled = true;
@@ -80,10 +110,120 @@ public class InterGenerator {
     }
 
     public void start() throws SemanticException {
+        // 先收集所有函数的参数类型, 调用在定义之前时也能检查实参
+        for (TreeNode node : parser.getTreeNodes()) {
+            if (node.getType() == TreeNodeType.FUNCTION) {
+                if (replacing && funcReturnTypeMap.containsKey(node.getSymbolName())) {
+                    checkSignature(node);
+                }
+                funcArgTypeMap.put(node.getSymbolName(), node.left.left.getArgList());
+                funcReturnTypeMap.put(node.getSymbolName(), node.left.right.getType());
+            } else if (node.getType() == TreeNodeType.EXTERN_FUNCTION) {
+                funcArgTypeMap.put(node.getSymbolName(), node.left.left.getArgList());
+                externReturnTypeMap.put(node.getSymbolName(), node.left.right.getType());
+                externFuncs.add(node.getSymbolName());
+            }
+        }
+        // 全局变量的声明先生成, 放在所有函数之前作为静态段, 执行main之前执行一次
+        for (TreeNode node : parser.getTreeNodes()) {
+            if (isDeclaration(node)) {
+                genGlobalDeclaration(node);
+            }
+        }
         generate(parser.getTreeNodes());
         // 进行未使用变量优化
         if (optimEnabled) {
             optimizeUnusedVariables();
+            // 逐元素运算和归约的数组循环整体执行
+            LoopKernel.mark(codes, optimStringBuilder);
+            LoopReduction.mark(codes, optimStringBuilder);
+            // 不逃逸的局部数组从数组池分配
+            EscapeAnalysis.mark(codes, funcInstrMap, optimStringBuilder);
+        }
+        // 热替换时先去掉被替换函数原来的信息, 再与程序中其他函数的信息合并
+        Set<String> ownFuncs = funcInstrMap.keySet();
+        globalWriters.removeAll(ownFuncs);
+        globalWriters.addAll(ForkJoinPlanner.findGlobalWriters(codes, funcInstrMap));
+        effectFuncs.removeAll(ownFuncs);
+        effectFuncs.addAll(ForkJoinPlanner.findEffectFunctions(codes, funcInstrMap));
+        globalReaders.removeAll(ownFuncs);
+        globalReaders.addAll(ForkJoinPlanner.findGlobalReaders(codes, funcInstrMap));
+        callees.putAll(ForkJoinPlanner.findCallees(codes, funcInstrMap, false));
+        spawnees.putAll(ForkJoinPlanner.findCallees(codes, funcInstrMap, true));
+        globalReaders = ForkJoinPlanner.findCallers(globalReaders, callees);
+        ForkJoinPlanner.checkSpawnedWrites(globalWriters, callees, spawnees);
+        pureFuncs = ForkJoinPlanner.findPureFunctions(effectFuncs, callees);
+        for (String funcName : parallelCallees) {
+            if (!pureFuncs.contains(funcName)) {
+                throw new SemanticException("Function " + funcName + " called in parallel loop has side effects!");
+            }
+        }
+        parallelRoots.addAll(parallelCallees);
+        // 互不依赖的无副作用调用并行执行
+        if (optimEnabled) {
+            // 读取全局变量的函数与传入数组的函数一样, 与调用者共享数据
+            Set<String> sharingFuncs = arrayArgFuncs();
+            sharingFuncs.addAll(globalReaders);
+            ForkJoinPlanner.plan(codes, funcInstrMap, pureFuncs, sharingFuncs, optimStringBuilder);
+        }
+        for (Quadruple code : codes) {
+            if (code.operation.equals(CodeConstant.FORK)) {
+                parallelRoots.add(code.firstOperand.name);
+            }
+        }
+        // 并行执行的调用可能进入热替换的函数, 新函数也不能有副作用
+        Set<String> parallelFuncs = ForkJoinPlanner.findReachable(parallelRoots, callees);
+        for (String funcName : ownFuncs) {
+            if (parallelFuncs.contains(funcName) && !pureFuncs.contains(funcName)) {
+                throw new SemanticException("Function " + funcName
+                        + " may be called in parallel, it cannot be replaced by a function with side effects!");
+            }
+        }
+    }
+
+    /**
+     * 热替换已有的函数时, 参数个数、参数类型和返回值类型必须与原函数相同
+     * 原来的调用点按原签名压入参数、读取返回值
+     */
+    private void checkSignature(TreeNode node) throws SemanticException {
+        String name = node.getSymbolName();
+        List<TreeNode> oldParams = funcArgTypeMap.get(name);
+        TreeNodeType oldReturn = funcReturnTypeMap.get(name);
+        String expected = signatureOf(oldParams, oldReturn);
+        String found = signatureOf(node.left.left.getArgList(), node.left.right.getType());
+        if (!expected.equals(found)) {
+            throw new SemanticException("Replacement of " + name + " must keep its signature " + expected
+                    + ", found " + found + "!");
+        }
+    }
+
+    /**
+     * 函数签名的文本形式, 如 (int, real[][]) int
+     */
+    private static String signatureOf(List<TreeNode> params, TreeNodeType returnType) {
+        StringJoiner joiner = new StringJoiner(", ", "(", ") ");
+        for (TreeNode param : params) {
+            joiner.add(typeName(param.getType()) + (isArrayArg(param) ? (isMatrix(param) ? "[][]" : "[]") : ""));
+        }
+        return joiner + typeName(returnType);
+    }
+
+    private static String typeName(TreeNodeType type) {
+        switch (type) {
+            case INT_DECLARATION:
+            case INT_ARRAY_DECLARATION:
+                return "int";
+            case REAL_DECLARATION:
+            case REAL_ARRAY_DECLARATION:
+                return "real";
+            case CHAR_DECLARATION:
+                return "char";
+            case CHAN_DECLARATION:
+                return "chan";
+            case VOID:
+                return "void";
+            default:
+                return type.name();
         }
     }
 
@@ -102,29 +242,42 @@ public class InterGenerator {
                 case FUNCTION:
                     genFunction(node);
                     break;
+                case EXTERN_FUNCTION:
+                    checkExternFunction(node);
+                    break;
                 case INT_DECLARATION:
                 case REAL_DECLARATION:
                 case CHAR_DECLARATION:
-                    genDeclaration(node, Collections.emptyMap());
-                    break;
                 case INT_ARRAY_DECLARATION:
                 case REAL_ARRAY_DECLARATION:
-                    genArrDeclaration(node, Collections.emptyMap());
+                    // 全局变量已在静态段中生成
                     break;
                 case ASSIGN:
                     genAssign(node, Collections.emptyMap());
                     break;
+                case PLUS_ASSIGN:
+                case MINUS_ASSIGN:
+                case MULTIPLY_ASSIGN:
+                case DIVIDE_ASSIGN:
+                    genCompoundAssign(node, Collections.emptyMap());
+                    break;
                 case IF:
                     genIf(node, Collections.emptyMap());
                     break;
                 case WHILE:
                     genWhile(node, Collections.emptyMap());
                     break;
+                case FOR:
+                    genFor(node, Collections.emptyMap());
+                    break;
+                case SWITCH:
+                    genSwitch(node, Collections.emptyMap());
+                    break;
                 case PRINT:
                     genPrint(node, Collections.emptyMap());
                     break;
                 case SCAN  :
-                    genScan(node);
+                    genScan(node, Collections.emptyMap());
                     break;
                 case STATEMENT_BLOCK:
                     genStatementBlock(node, Collections.emptyMap());
@@ -169,17 +322,32 @@ public class InterGenerator {
                 case ASSIGN:
                     genAssign(node, argMap);
                     break;
+                case PLUS_ASSIGN:
+                case MINUS_ASSIGN:
+                case MULTIPLY_ASSIGN:
+                case DIVIDE_ASSIGN:
+                    genCompoundAssign(node, argMap);
+                    break;
                 case IF:
                     genIf(node, argMap);
                     break;
                 case WHILE:
                     genWhile(node, argMap);
                     break;
+                case FOR:
+                    genFor(node, argMap);
+                    break;
+                case SWITCH:
+                    genSwitch(node, argMap);
+                    break;
+                case PARALLEL_WHILE:
+                    genParallelWhile(node, argMap);
+                    break;
                 case PRINT:
                     genPrint(node, argMap);
                     break;
                 case SCAN  :
-                    genScan(node);
+                    genScan(node, argMap);
                     break;
                 case STATEMENT_BLOCK:
                     genStatementBlock(node, argMap);
@@ -200,6 +368,21 @@ public class InterGenerator {
                 case FUNC_CALL:
                     genFunctionCall(node, argMap);
                     break;
+                case BUILTIN_CALL:
+                    genArrayBuiltin(node, argMap);
+                    break;
+                case SPAWN:
+                    genFunctionCall(node.left, argMap, CodeConstant.SPAWN);
+                    break;
+                case CHAN_DECLARATION:
+                    genChanDeclaration(node, argMap);
+                    break;
+                case SEND:
+                    genSend(node, argMap);
+                    break;
+                case RECV:
+                    genRecv(node, argMap);
+                    break;
                 default:
                     throw new SemanticException("Unknown statement!");
             }
@@ -223,16 +406,150 @@ public class InterGenerator {
         List<TreeNode> argList = argNode.getArgList();
         // 保存函数参数类型
         funcArgTypeMap.put(funcName, argList);
-        Map<String, String> argMap = new HashMap<>();
+        // 全局变量替换为槽位名, 同名的参数遮蔽全局变量
+        Map<String, String> argMap = new HashMap<>(globalMap);
+        declaredArrays = new HashMap<>();
+        globalDecls.forEach((name, decl) -> {
+            if (isArrayArg(decl)) {
+                declaredArrays.put(name, decl);
+            }
+        });
         // 如 x->arg0; y->arg1
         for (int i=0; i<argList.size(); i++) {
             argMap.put(argList.get(i).getSymbolName(), CodeConstant.ARG_PREFIX + i);
+            if (isArrayArg(argList.get(i))) {
+                declaredArrays.put(argList.get(i).getSymbolName(), argList.get(i));
+            } else {
+                declaredArrays.remove(argList.get(i).getSymbolName());
+            }
         }
 
         // 右结点: 实现语句块
+        funcBody = node.right;
         genFuncStatementBlock(node.right, argMap);
     }
 
+    /**
+     * 检查extern函数声明, 不生成代码
+     * 参数只能是int、real、char, 调用时以基本类型传给Java方法
+     */
+    private void checkExternFunction(TreeNode node) throws SemanticException {
+        for (TreeNode param : node.left.left.getArgList()) {
+            if (param.getType() != TreeNodeType.INT_DECLARATION && param.getType() != TreeNodeType.REAL_DECLARATION
+                    && param.getType() != TreeNodeType.CHAR_DECLARATION) {
+                throw new SemanticException("Extern function " + node.getSymbolName()
+                        + " can only take int, real or char arguments!");
+            }
+        }
+    }
+
+    private static boolean isDeclaration(TreeNode node) {
+        switch (node.getType()) {
+            case INT_DECLARATION:
+            case REAL_DECLARATION:
+            case CHAR_DECLARATION:
+            case INT_ARRAY_DECLARATION:
+            case REAL_ARRAY_DECLARATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 生成全局变量声明的中间代码, 目标为静态段中的槽位名
+     * 初值和数组长度只能使用字面量和之前声明的全局变量, 不能调用函数
+     */
+    private void genGlobalDeclaration(TreeNode node) throws SemanticException {
+        String name = node.left.getSymbolName();
+        if (globalMap.containsKey(name)) {
+            redeclarationException(name);
+        }
+        checkGlobalInit(name, node.right);
+        if (isArrayArg(node)) {
+            genArrDeclaration(node, globalMap);
+        } else {
+            genDeclaration(node, globalMap);
+        }
+        // 声明总是最后一条指令, 之前是计算初值的指令
+        String slot = CodeConstant.GLOBAL_PREFIX + globalDecls.size();
+        codes.get(codes.size() - 1).dest = slot;
+        globalDecls.put(name, node);
+        globalMap.put(name, slot);
+    }
+
+    /**
+     * 检查全局变量的初值表达式
+     */
+    private void checkGlobalInit(String global, TreeNode node) throws SemanticException {
+        if (node == null) {
+            return;
+        }
+        switch (node.getType()) {
+            case FUNC_CALL:
+                throw new SemanticException("Global variable " + global + " cannot be initialized by a function call!");
+            case IDENTIFIER:
+                if (!globalMap.containsKey(node.getSymbolName())) {
+                    throw new SemanticException("Global variable " + global + " uses " + node.getSymbolName()
+                            + " which is not a global declared before it!");
+                }
+                return;
+            case BUILTIN_CALL:
+                for (TreeNode arg : node.getArgList()) {
+                    checkGlobalInit(global, arg);
+                }
+                return;
+            default:
+                checkGlobalInit(global, node.left);
+                checkGlobalInit(global, node.right);
+        }
+    }
+
+    /**
+     * 热替换单独编译一个函数时, 加入程序中的全局变量, 按相同的顺序对应到相同的槽位
+     */
+    private void addGlobals(Map<String, TreeNode> globals) {
+        globals.forEach((name, decl) -> {
+            globalMap.put(name, CodeConstant.GLOBAL_PREFIX + globalDecls.size());
+            globalDecls.put(name, decl);
+        });
+    }
+
+    /**
+     * 热替换时加入原程序的全局变量、函数签名和调用关系, 之后单独生成的函数:
+     * 按相同的槽位访问全局变量, 替换已有函数时签名必须相同, 调用已有函数时检查实参,
+     * 按整个程序的调用关系判断是否有副作用、是否会被spawn的任务调用后写全局变量、是否会被并行调用
+     * 生成完毕后本对象的这些信息即为替换后的程序的信息
+     */
+    public void addProgram(InterGenerator program) {
+        replacing = true;
+        addGlobals(program.globalDecls);
+        funcArgTypeMap.putAll(program.funcArgTypeMap);
+        funcReturnTypeMap.putAll(program.funcReturnTypeMap);
+        externReturnTypeMap.putAll(program.externReturnTypeMap);
+        globalWriters.addAll(program.globalWriters);
+        effectFuncs.addAll(program.effectFuncs);
+        globalReaders.addAll(program.globalReaders);
+        callees.putAll(program.callees);
+        spawnees.putAll(program.spawnees);
+        parallelRoots.addAll(program.parallelRoots);
+    }
+
+    /**
+     * 赋值、输入、接收的目标变量在中间代码中的名字, 全局变量替换为槽位名
+     */
+    private static String storeName(String name, Map<String, String> argMap) {
+        String mapped = argMap.get(name);
+        return mapped != null && mapped.startsWith(CodeConstant.GLOBAL_PREFIX) ? mapped : name;
+    }
+
+    /**
+     * 热替换单独编译一个函数时, 加入已注册的extern函数名, 对它们的调用生成native
+     */
+    public void addExternFunctions(Collection<String> names) {
+        externFuncs.addAll(names);
+    }
+
     /**
      * 生成函数语句块
      * ret语句在执行期间会自动跳出语句块层次
@@ -300,10 +617,26 @@ public class InterGenerator {
      * 生成函数调用的中间代码
      */
     private void genFunctionCall(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        genFunctionCall(node, argMap, CodeConstant.CALL);
+    }
+
+    /**
+     * 生成函数调用的中间代码
+     * @param operation 调用方式, call或spawn
+     */
+    private void genFunctionCall(TreeNode node, Map<String, String> argMap, String operation)
+            throws SemanticException {
         // 先生成入参
         // 左结点：参数列表
         TreeNode argNode = node.left;
         List<TreeNode> argList = argNode.getArgList();
+        checkArgs(node.getSymbolName(), argList, operation);
+        if (externFuncs.contains(node.getSymbolName())) {
+            if (operation.equals(CodeConstant.SPAWN)) {
+                throw new SemanticException("Cannot spawn extern function " + node.getSymbolName() + "!");
+            }
+            operation = CodeConstant.NATIVE;
+        }
         Quadruple paramCode;
         for (TreeNode arg:argList) {
             paramCode = new Quadruple();
@@ -314,13 +647,76 @@ public class InterGenerator {
 
         // 再生成call
         Quadruple callCode = new Quadruple();
-        callCode.operation = CodeConstant.CALL;
+        callCode.operation = operation;
         callCode.firstOperandType = OperandType.IDENTIFIER;
         callCode.firstOperand.name = node.getSymbolName();
         codes.add(callCode);
     }
 
 
+    /**
+     * 检查实参与形参的个数和数组类型
+     * 数组形参只接受同元素类型、同维数的数组名, 数组不能传给标量形参
+     * 热替换时已有函数的参数由addProgram加入
+     */
+    private void checkArgs(String funcName, List<TreeNode> argList, String operation) throws SemanticException {
+        List<TreeNode> params = funcArgTypeMap.get(funcName);
+        if (params == null) {
+            return;
+        }
+        if (params.size() != argList.size()) {
+            throw new SemanticException(String.format("Function %s expects %d arguments, found %d",
+                    funcName, params.size(), argList.size()));
+        }
+        for (int i = 0; i < params.size(); i++) {
+            TreeNode param = params.get(i);
+            TreeNode arg = argList.get(i);
+            TreeNode array = arg.getType() == TreeNodeType.IDENTIFIER
+                    ? declaredArrays.get(arg.getSymbolName()) : null;
+            if (!isArrayArg(param)) {
+                if (array != null) {
+                    argumentTypeException(funcName, i, param);
+                }
+                continue;
+            }
+            if (operation.equals(CodeConstant.SPAWN)) {
+                // 任务与调用者同时运行, 共享数组会产生数据竞争, 应使用通道
+                throw new SemanticException("Cannot pass array to spawned function " + funcName + ", use channels!");
+            }
+            if (array == null || array.getType() != param.getType()
+                    || isMatrix(array) != isMatrix(param)) {
+                argumentTypeException(funcName, i, param);
+            }
+        }
+    }
+
+    private static boolean isArrayArg(TreeNode param) {
+        return param.getType() == TreeNodeType.INT_ARRAY_DECLARATION
+                || param.getType() == TreeNodeType.REAL_ARRAY_DECLARATION;
+    }
+
+    /**
+     * 数组声明或数组形参是否为二维
+     */
+    private static boolean isMatrix(TreeNode array) {
+        return array.right != null && array.right.getType() == TreeNodeType.DIMENSIONS;
+    }
+
+    /**
+     * 有数组形参的函数, 调用时按引用传入数组
+     */
+    private Set<String> arrayArgFuncs() {
+        Set<String> funcs = new HashSet<>();
+        funcArgTypeMap.forEach((name, params) -> {
+            for (TreeNode param : params) {
+                if (isArrayArg(param)) {
+                    funcs.add(name);
+                }
+            }
+        });
+        return funcs;
+    }
+
     /**
      * 生成break的中间代码
      */
@@ -366,9 +762,16 @@ public class InterGenerator {
                     arithOpToCode(stack, TreeNodeType.DIVIDE, argMap);
                     break;
                 case ARRAY_ACCESS:
-                    genArrayAccess(stack, argMap);
+                    // 数组元素的临时变量作为后续运算的操作数
+                    TreeNode element = new TreeNode();
+                    element.setType(TreeNodeType.IDENTIFIER);
+                    element.setSymbolName(isMatrixAccess(opNode)
+                            ? genMatrixAccess(stack, argMap) : genArrayAccess(stack, argMap));
+                    stack.push(element);
+                    break;
+                case BUILTIN_CALL:
+                    stack.push(builtinOperand(opNode, argMap));
                     break;
-
             }
         }
         return stack.peek().getSymbolName();
@@ -385,53 +788,177 @@ public class InterGenerator {
         codes.add(CodeConstant.outCode);
     }
 
+    /**
+     * 生成条件的短路跳转链, 条件的值为jumpWhen时跳转, 否则执行下一条
+     * 跳转指令的位置加入jumps等待回填, 逻辑运算不生成保存结果的临时变量
+     */
+    private void genCondition(TreeNode node, boolean jumpWhen, List<Integer> jumps, Map<String, String> argMap) throws SemanticException {
+        switch (node.getType()) {
+            case NOT:
+                genCondition(node.left, !jumpWhen, jumps, argMap);
+                break;
+            case AND:
+            case OR:
+                if (jumpWhen == (node.getType() == TreeNodeType.OR)) {
+                    // 与为假、或为真时跳转: 任意一个条件满足即跳转
+                    genCondition(node.left, jumpWhen, jumps, argMap);
+                    genCondition(node.right, jumpWhen, jumps, argMap);
+                } else {
+                    // 第一个条件已经决定结果时跳过第二个条件
+                    List<Integer> skips = new ArrayList<>();
+                    genCondition(node.left, !jumpWhen, skips, argMap);
+                    genCondition(node.right, jumpWhen, jumps, argMap);
+                    backFill(skips, codes.size());
+                }
+                break;
+            default:
+                // jne在条件为假时跳转, 为真时跳转则比较相反的关系
+                String condition = genRelationalExp(jumpWhen ? negateRelation(node) : node, argMap);
+                if (condition.equals(CodeConstant.TRUE)) {
+                    // 永远不跳转
+                    break;
+                }
+                Quadruple code = new Quadruple();
+                if (condition.equals(CodeConstant.FALSE)) {
+                    code.operation = CodeConstant.JMP;
+                } else {
+                    code.operation = CodeConstant.JMP_WITH_CONDITION;
+                    code.firstOperandType = OperandType.IDENTIFIER;
+                    code.firstOperand.name = condition;
+                }
+                codes.add(code);
+                jumps.add(codes.size() - 1);
+        }
+    }
+
+    /**
+     * 相反的关系运算, 操作数不变
+     */
+    private static TreeNode negateRelation(TreeNode node) {
+        TreeNode negated = new TreeNode();
+        switch (node.getType()) {
+            case LESS:
+                negated.setType(TreeNodeType.GREATER_EQ);
+                break;
+            case LESS_EQ:
+                negated.setType(TreeNodeType.GREATER);
+                break;
+            case GREATER:
+                negated.setType(TreeNodeType.LESS_EQ);
+                break;
+            case GREATER_EQ:
+                negated.setType(TreeNodeType.LESS);
+                break;
+            case EQUAL:
+                negated.setType(TreeNodeType.NOT_EQUAL);
+                break;
+            default:
+                negated.setType(TreeNodeType.EQUAL);
+        }
+        negated.left = node.left;
+        negated.right = node.right;
+        return negated;
+    }
+
+    /**
+     * 回填跳转位置
+     */
+    private void backFill(List<Integer> jumps, int location) {
+        for (int jump : jumps) {
+            codes.get(jump).jumpLocation = location;
+        }
+    }
+
+    /**
+     * 对常数条件进行优化, 按短路求值的顺序, 第一个条件不是常数时不折叠
+     * @return 恒为真返回TRUE, 恒为假返回FALSE, 否则返回null
+     */
+    private String foldCondition(TreeNode node) {
+        String left;
+        switch (node.getType()) {
+            case NOT:
+                left = foldCondition(node.left);
+                if (left == null) {
+                    return null;
+                }
+                return left.equals(CodeConstant.TRUE) ? CodeConstant.FALSE : CodeConstant.TRUE;
+            case AND:
+                left = foldCondition(node.left);
+                if (left == null || left.equals(CodeConstant.FALSE)) {
+                    return left;
+                }
+                return foldCondition(node.right);
+            case OR:
+                left = foldCondition(node.left);
+                if (left == null || left.equals(CodeConstant.TRUE)) {
+                    return left;
+                }
+                return foldCondition(node.right);
+            default:
+                return foldRelationalExp(node);
+        }
+    }
+
+    /**
+     * 对常数的比较进行优化
+     * @return 两边都是整型字面量时返回TRUE或FALSE, 否则返回null
+     */
+    private String foldRelationalExp(TreeNode node) {
+        foldBuiltin(node.left);
+        foldBuiltin(node.right);
+        if (node.left.getType()==TreeNodeType.INT_LITERAL
+                && node.right.getType()==TreeNodeType.INT_LITERAL) {
+            int lVal = node.left.getIntValue(), rVal = node.right.getIntValue();
+            switch (node.getType()) {
+                case LESS:
+                    if (lVal < rVal) {
+                        return CodeConstant.TRUE;
+                    } else {
+                        return CodeConstant.FALSE;
+                    }
+                case EQUAL:
+                    if (lVal == rVal) {
+                        return CodeConstant.TRUE;
+                    } else {
+                        return CodeConstant.FALSE;
+                    }
+                case GREATER:
+                    if (lVal > rVal) {
+                        return CodeConstant.TRUE;
+                    } else {
+                        return CodeConstant.FALSE;
+                    }
+                case LESS_EQ:
+                    if (lVal <= rVal) {
+                        return CodeConstant.TRUE;
+                    } else {
+                        return CodeConstant.FALSE;
+                    }
+                case GREATER_EQ:
+                    if (lVal >= rVal) {
+                        return CodeConstant.TRUE;
+                    } else {
+                        return CodeConstant.FALSE;
+                    }
+                case NOT_EQUAL:
+                    if (lVal != rVal) {
+                        return CodeConstant.TRUE;
+                    } else {
+                        return CodeConstant.FALSE;
+                    }
+            }
+        }
+        return null;
+    }
+
     /**
      * 生成关系表达式的中间代码
      */
     private String genRelationalExp(TreeNode node, Map<String, String> argMap) throws SemanticException {
         if (optimEnabled) {
-            // 对常数的比较进行优化
-            if (node.left.getType()==TreeNodeType.INT_LITERAL
-                    && node.right.getType()==TreeNodeType.INT_LITERAL) {
-                int lVal = node.left.getIntValue(), rVal = node.right.getIntValue();
-                switch (node.getType()) {
-                    case LESS:
-                        if (lVal < rVal) {
-                            return CodeConstant.TRUE;
-                        } else {
-                            return CodeConstant.FALSE;
-                        }
-                    case EQUAL:
-                        if (lVal == rVal) {
-                            return CodeConstant.TRUE;
-                        } else {
-                            return CodeConstant.FALSE;
-                        }
-                    case GREATER:
-                        if (lVal > rVal) {
-                            return CodeConstant.TRUE;
-                        } else {
-                            return CodeConstant.FALSE;
-                        }
-                    case LESS_EQ:
-                        if (lVal <= rVal) {
-                            return CodeConstant.TRUE;
-                        } else {
-                            return CodeConstant.FALSE;
-                        }
-                    case GREATER_EQ:
-                        if (lVal >= rVal) {
-                            return CodeConstant.TRUE;
-                        } else {
-                            return CodeConstant.FALSE;
-                        }
-                    case NOT_EQUAL:
-                        if (lVal != rVal) {
-                            return CodeConstant.TRUE;
-                        } else {
-                            return CodeConstant.FALSE;
-                        }
-                }
+            String folded = foldRelationalExp(node);
+            if (folded != null) {
+                return folded;
             }
         }
 
@@ -471,9 +998,10 @@ public class InterGenerator {
     private void genDeclaration(TreeNode node, Map<String, String>  argMap) throws SemanticException {
         Quadruple code = new Quadruple();
         if (argMap.containsKey(node.left.getSymbolName())) {
-            // 和参数重名, 重定义
+            // 和参数或全局变量重名, 重定义
             redeclarationException(node.left.getSymbolName());
         }
+        declaredArrays.remove(node.left.getSymbolName());
         if(node.right != null) {
             // 声明的同时进行了赋值
             handleOperandLeft(code, node.right, argMap);
@@ -507,11 +1035,24 @@ public class InterGenerator {
      */
     private void genArrDeclaration(TreeNode node, Map<String, String>  argMap) throws SemanticException {
         Quadruple code = new Quadruple();
+        if (argMap.containsKey(node.left.getSymbolName())) {
+            // 和参数或全局变量重名, 重定义
+            redeclarationException(node.left.getSymbolName());
+        }
+        declaredArrays.put(node.left.getSymbolName(), node);
         if(node.getType() == TreeNodeType.INT_ARRAY_DECLARATION) {
             code.operation = CodeConstant.INT_ARR;
         } else if(node.getType() == TreeNodeType.REAL_ARRAY_DECLARATION) {
             code.operation = CodeConstant.REAL_ARR;
         }
+        if (node.right.getType() == TreeNodeType.DIMENSIONS) {
+            // 二维数组, int[],行数,列数,数组名
+            handleOperandLeft(code, node.right.left, argMap);
+            handleOperandRight(code, node.right.right, argMap);
+            code.dest = node.left.getSymbolName();
+            codes.add(code);
+            return;
+        }
         switch (node.right.getType()) {
             case INT_LITERAL:
                 code.firstOperandType = OperandType.INT_LITERAL;
@@ -519,7 +1060,7 @@ public class InterGenerator {
                 break;
             case IDENTIFIER:
                 code.firstOperandType = OperandType.IDENTIFIER;
-                code.firstOperand.name = node.right.getSymbolName();
+                code.firstOperand.name = argMap.getOrDefault(node.right.getSymbolName(), node.right.getSymbolName());
                 break;
             case PLUS:
             case MINUS:
@@ -537,24 +1078,63 @@ public class InterGenerator {
         codes.add(code);
     }
 
+    /**
+     * 生成通道声明的中间代码
+     * chan,容量,null,通道名
+     */
+    private void genChanDeclaration(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        if (argMap.containsKey(node.left.getSymbolName())) {
+            // 和参数或全局变量重名, 重定义
+            redeclarationException(node.left.getSymbolName());
+        }
+        Quadruple code = new Quadruple();
+        code.operation = CodeConstant.CHAN;
+        handleOperandLeft(code, node.right, argMap);
+        code.dest = node.left.getSymbolName();
+        codes.add(code);
+    }
+
+    /**
+     * 生成发送的中间代码
+     * send,值,通道,null
+     */
+    private void genSend(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        Quadruple code = new Quadruple();
+        code.operation = CodeConstant.SEND;
+        handleOperandLeft(code, node.right, argMap);
+        code.secondOperandType = OperandType.IDENTIFIER;
+        code.secondOperand.name = argMap.getOrDefault(node.left.getSymbolName(), node.left.getSymbolName());
+        codes.add(code);
+    }
+
+    /**
+     * 生成接收的中间代码
+     * recv,通道,null,变量
+     */
+    private void genRecv(TreeNode node, Map<String, String> argMap) {
+        Quadruple code = new Quadruple();
+        code.operation = CodeConstant.RECV;
+        code.firstOperandType = OperandType.IDENTIFIER;
+        code.firstOperand.name = argMap.getOrDefault(node.left.getSymbolName(), node.left.getSymbolName());
+        code.dest = storeName(node.right.getSymbolName(), argMap);
+        codes.add(code);
+    }
+
     /**
      * 生成赋值操作的中间代码
      */
     private void genAssign(TreeNode node, Map<String, String> argMap) throws SemanticException {
         Quadruple code = new Quadruple();
         if(node.left.getType() == TreeNodeType.ARRAY_ACCESS) {
-            Stack<TreeNode> stack = new Stack<>();
-            stack.push(node.left.left);
-            stack.push(node.left.right);
-            code.dest = genArrayAccess(stack, argMap);
+            code.dest = genArrayAccess(node.left, argMap);
         } else {
-            code.dest = node.left.getSymbolName();
+            code.dest = storeName(node.left.getSymbolName(), argMap);
         }
         code.operation = CodeConstant.ASSIGN;
         if (node.right.getType() == TreeNodeType.FUNC_CALL) {
             // 函数返回值的赋值
             genFunctionCall(node.right, argMap);
-            code.firstOperandType = OperandType.IDENTIFIER;
+            code.firstOperandType = OperandType.RETURN_VALUE;
             code.firstOperand.name = CodeConstant.RETURN_VALUE;
         } else {
             handleOperandLeft(code, node.right, argMap);
@@ -562,6 +1142,42 @@ public class InterGenerator {
         codes.add(code);
     }
 
+    /**
+     * 生成复合赋值的中间代码
+     * +=,值,null,变量 在变量或数组元素上原地计算, 不生成保存运算结果的临时变量
+     */
+    private void genCompoundAssign(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        Quadruple code = new Quadruple();
+        switch (node.getType()) {
+            case PLUS_ASSIGN:
+                code.operation = CodeConstant.PLUS_ASSIGN;
+                break;
+            case MINUS_ASSIGN:
+                code.operation = CodeConstant.MINUS_ASSIGN;
+                break;
+            case MULTIPLY_ASSIGN:
+                code.operation = CodeConstant.MUL_ASSIGN;
+                break;
+            default:
+                code.operation = CodeConstant.DIV_ASSIGN;
+                if (isZeroLiteral(node.right)) {
+                    divByZeroException();
+                }
+        }
+        if(node.left.getType() == TreeNodeType.ARRAY_ACCESS) {
+            code.dest = genArrayAccess(node.left, argMap);
+        } else {
+            code.dest = storeName(node.left.getSymbolName(), argMap);
+        }
+        handleOperandLeft(code, node.right, argMap);
+        codes.add(code);
+    }
+
+    private static boolean isZeroLiteral(TreeNode node) {
+        return (node.getType() == TreeNodeType.INT_LITERAL && node.getIntValue() == 0)
+                || (node.getType() == TreeNodeType.REAL_LITERAL && Math.abs(node.getRealValue()) < 1e-10);
+    }
+
     /**
      * 生成if语句的中间代码
      */
@@ -587,7 +1203,7 @@ public class InterGenerator {
         if (node.right != null && result.equals(CodeConstant.FALSE)) {
             // 直接生成else的代码块
             codes.add(CodeConstant.inCode);
-            generate(node.right.getStatements());
+            generate(node.right.getStatements(), argMap);
             codes.add(CodeConstant.outCode);
             optimStringBuilder.append("if语句为False优化\n");
             return;
@@ -595,7 +1211,7 @@ public class InterGenerator {
         if(node.right!=null) {
             // 进入条件为false的语句块并回填之前的jump
             codes.add(CodeConstant.inCode);
-            generate(node.right.getStatements());
+            generate(node.right.getStatements(), argMap);
             Quadruple code1 = new Quadruple();
             if (!breakIndex.empty()) {
                 // 如果最后一句是break
@@ -623,82 +1239,262 @@ public class InterGenerator {
         }
     }
 
+    /**
+     * 生成并行循环的中间代码
+     * par<,循环变量,上界,循环结束位置; in; 循环体(不含最后的循环变量加1); out
+     * 循环变量的递增由解释器完成
+     */
+    private void genParallelWhile(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        parallelCallees.addAll(ParallelLoopChecker.check(node, funcBody, argMap, declaredArrays.keySet()));
+        TreeNode condition = node.getCondition();
+        Quadruple code = new Quadruple();
+        if (condition.getType() == TreeNodeType.LESS) {
+            code.operation = CodeConstant.PAR_LE;
+        } else {
+            code.operation = CodeConstant.PAR_LE_EQ;
+        }
+        handleOperandLeft(code, condition.left, argMap);
+        handleOperandRight(code, condition.right, argMap);
+        codes.add(code);
+        codes.add(CodeConstant.inCode);
+        List<TreeNode> stmts = node.left.getStatements();
+        generate(stmts.subList(0, stmts.size() - 1), argMap);
+        codes.add(CodeConstant.outCode);
+        code.jumpLocation = codes.size();
+    }
+
     /**
      * 生成while的中间代码
      */
     private void genWhile(TreeNode node, Map<String, String> argMap) throws SemanticException {
         // 进入循环
         loopLevel++;
-        String condition = genRelationalExp(node.getCondition(), argMap);
-        // while的开头位置入栈
-        backPatch.push(codes.size()-1);
-        Quadruple code = new Quadruple();
-        code.operation = CodeConstant.JMP_WITH_CONDITION;
-        code.firstOperandType = OperandType.IDENTIFIER;
-        code.firstOperand.name = condition;
-        codes.add(code);
+        // while的开头, 每次迭代重新计算整个条件
+        int conditionStart = codes.size();
+        List<Integer> exits = new ArrayList<>();
+        genCondition(node.getCondition(), false, exits, argMap);
+        // 每次迭代进入和退出一次循环体语句块, 条件不满足时直接跳到循环之后
         codes.add(CodeConstant.inCode);
-        generate(node.left.getStatements());
+        generate(node.left.getStatements(), argMap);
+        codes.add(CodeConstant.outCode);
 
         Quadruple code1 = new Quadruple();
         code1.operation = CodeConstant.JMP;
         // 跳到while的开头
-        int jumpLocation = backPatch.pop();
-        code1.jumpLocation = jumpLocation;
+        code1.jumpLocation = conditionStart;
         codes.add(code1);
-        codes.get(jumpLocation+1).jumpLocation = codes.size();
+        backFill(exits, codes.size());
         if (!breakIndex.empty()) {
-            // 回填break位置
+            // 回填break位置, break之前已经退出了循环体语句块
             int breakLocation = breakIndex.pop();
             codes.get(breakLocation).jumpLocation = codes.size();
         }
-        codes.add(CodeConstant.outCode);
         // 退出循环
         loopLevel--;
     }
 
+    /**
+     * 生成for的中间代码
+     * in; 初始化; 条件; jne,条件,null,出口; in; 循环体; out; 步进; jmp,null,null,条件; 出口: out
+     * 外层的in/out使初始化中声明的变量只在循环内可见
+     * 条件为 i < n 或 i <= n 且步进为 i = i + 1 时, 步进、条件和回跳合并为一条
+     * for<,i,n,循环体开头 或 for<=,i,n,循环体开头
+     */
+    private void genFor(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        loopLevel++;
+        codes.add(CodeConstant.inCode);
+        generate(node.getStatements(), argMap);
+        int conditionStart = codes.size();
+        List<Integer> exits = new ArrayList<>();
+        genCondition(node.getCondition(), false, exits, argMap);
+        int bodyStart = codes.size();
+        codes.add(CodeConstant.inCode);
+        generate(node.left.getStatements(), argMap);
+        codes.add(CodeConstant.outCode);
+
+        Quadruple counted = genCountedStep(node, argMap);
+        if (counted != null) {
+            counted.jumpLocation = bodyStart;
+            codes.add(counted);
+        } else {
+            if (node.right != null && node.right.getType() == TreeNodeType.ASSIGN) {
+                genAssign(node.right, argMap);
+            } else if (node.right != null) {
+                genCompoundAssign(node.right, argMap);
+            }
+            Quadruple code1 = new Quadruple();
+            code1.operation = CodeConstant.JMP;
+            code1.jumpLocation = conditionStart;
+            codes.add(code1);
+        }
+        backFill(exits, codes.size());
+        if (!breakIndex.empty()) {
+            // 回填break位置, 跳到外层的out
+            int breakLocation = breakIndex.pop();
+            codes.get(breakLocation).jumpLocation = codes.size();
+        }
+        codes.add(CodeConstant.outCode);
+        loopLevel--;
+    }
+
+    /**
+     * 条件为 i < n 或 i <= n 且步进为 i = i + 1、i += 1 或 i++ 时生成合并的步进指令, 跳转位置由调用者设置
+     * n为字面量或i以外的变量, i不能是参数
+     * @return 不符合时返回null
+     */
+    private Quadruple genCountedStep(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        TreeNode condition = node.getCondition();
+        TreeNode step = node.right;
+        if ((condition.getType() != TreeNodeType.LESS && condition.getType() != TreeNodeType.LESS_EQ)
+                || condition.left.getType() != TreeNodeType.IDENTIFIER || condition.left.isNegative()) {
+            return null;
+        }
+        String loopVar = condition.left.getSymbolName();
+        if (argMap.containsKey(loopVar) || !isUnitStep(step, loopVar)) {
+            return null;
+        }
+        TreeNode bound = condition.right;
+        switch (bound.getType()) {
+            case IDENTIFIER:
+                if (loopVar.equals(bound.getSymbolName())) {
+                    return null;
+                }
+                break;
+            case INT_LITERAL:
+            case REAL_LITERAL:
+                break;
+            default:
+                return null;
+        }
+        if (bound.isNegative()) {
+            return null;
+        }
+        Quadruple code = new Quadruple();
+        code.operation = condition.getType() == TreeNodeType.LESS ? CodeConstant.FOR_LE : CodeConstant.FOR_LE_EQ;
+        handleOperandLeft(code, condition.left, argMap);
+        handleOperandRight(code, bound, argMap);
+        return code;
+    }
+
+    /**
+     * 是否为 i = i + 1、i = 1 + i、i += 1 或 i++
+     */
+    private static boolean isUnitStep(TreeNode step, String loopVar) {
+        if (step == null || !isVariable(step.left, loopVar)) {
+            return false;
+        }
+        if (step.getType() == TreeNodeType.PLUS_ASSIGN) {
+            return isIntOne(step.right);
+        }
+        if (step.getType() != TreeNodeType.ASSIGN || step.right.getType() != TreeNodeType.PLUS) {
+            return false;
+        }
+        TreeNode plus = step.right;
+        return (isVariable(plus.left, loopVar) && isIntOne(plus.right))
+                || (isIntOne(plus.left) && isVariable(plus.right, loopVar));
+    }
+
+    private static boolean isVariable(TreeNode node, String name) {
+        return node.getType() == TreeNodeType.IDENTIFIER && !node.isNegative() && name.equals(node.getSymbolName());
+    }
+
+    private static boolean isIntOne(TreeNode node) {
+        return node.getType() == TreeNodeType.INT_LITERAL && !node.isNegative() && node.getIntValue() == 1;
+    }
+
+    /**
+     * 生成switch的中间代码
+     * switch,值,跳转表,default位置; 每个分支: in; 语句; out; jmp,null,null,switch之后
+     * 没有default时跳转表以外的值跳到switch之后, 分支之间不会继续执行
+     */
+    private void genSwitch(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        Quadruple code = new Quadruple();
+        code.operation = CodeConstant.SWITCH;
+        handleOperandLeft(code, node.left, argMap);
+        codes.add(code);
+        // case值 -> 分支开头
+        SortedMap<Integer, Integer> cases = new TreeMap<>();
+        // 跳出switch的jmp, 等待回填
+        List<Integer> exits = new ArrayList<>();
+        boolean hasDefault = false;
+        List<TreeNode> branches = node.getStatements();
+        for (int i = 0; i < branches.size(); i++) {
+            TreeNode branch = branches.get(i);
+            int start = codes.size();
+            if (branch.getType() == TreeNodeType.DEFAULT) {
+                if (hasDefault) {
+                    throw new SemanticException("Duplicate default in switch!");
+                }
+                hasDefault = true;
+                code.jumpLocation = start;
+            } else {
+                for (TreeNode label : branch.getArgList()) {
+                    int value = label.isNegative() ? -label.getIntValue() : label.getIntValue();
+                    if (cases.put(value, start) != null) {
+                        throw new SemanticException("Duplicate case " + value + " in switch!");
+                    }
+                }
+            }
+            codes.add(CodeConstant.inCode);
+            generate(branch.left.getStatements(), argMap);
+            if (!breakIndex.empty()) {
+                throw new SemanticException("Break is not allowed in switch, cases do not fall through!");
+            }
+            codes.add(CodeConstant.outCode);
+            if (i < branches.size() - 1) {
+                Quadruple exit = new Quadruple();
+                exit.operation = CodeConstant.JMP;
+                codes.add(exit);
+                exits.add(codes.size() - 1);
+            }
+        }
+        int end = codes.size();
+        if (!hasDefault) {
+            code.jumpLocation = end;
+        }
+        for (int exit : exits) {
+            codes.get(exit).jumpLocation = end;
+        }
+        code.switchTable = SwitchTable.build(cases);
+    }
+
     /**
      * 生成选择语句
      */
     private String genSelect(TreeNode node, Stack<Integer> innerBackFills, Map<String, String> argMap) throws SemanticException {
-        boolean needBackFill = (node.getCondition() != null);
-        if(needBackFill) {
-            // condition为存储关系表达式的中间变量
-            String condition = genRelationalExp(node.getCondition(), argMap);
+        // 条件为假时跳过语句块的跳转
+        List<Integer> falseJumps = new ArrayList<>();
+        if(node.getCondition() != null) {
             if (optimEnabled) {
-                if (condition.equals(CodeConstant.TRUE)) {
+                String condition = foldCondition(node.getCondition());
+                if (CodeConstant.TRUE.equals(condition)) {
                     // 不用生成跳转语句
                     // 只生成true时的语句块
                     codes.add(CodeConstant.inCode);
-                    generate(node.left.getStatements());
+                    generate(node.left.getStatements(), argMap);
                     codes.add(CodeConstant.outCode);
                     return CodeConstant.TRUE;
                 }
-                if (condition.equals(CodeConstant.FALSE)) {
+                if (CodeConstant.FALSE.equals(condition)) {
                     // 不用生成跳转语句和语句块
                     return CodeConstant.FALSE;
                 }
 
             }
-            // 条件判断后的跳转语句
-            Quadruple code = new Quadruple();
-            code.operation = CodeConstant.JMP_WITH_CONDITION;
-            code.firstOperandType = OperandType.IDENTIFIER;
-            code.firstOperand.name = condition;
-            codes.add(code);
-            backPatch.push(codes.size()-1);
+            // 条件判断的跳转链
+            genCondition(node.getCondition(), false, falseJumps, argMap);
         }
         // 生成条件为true时的语句块
-        genConditionTrue(node, innerBackFills, needBackFill);
+        genConditionTrue(node, innerBackFills, falseJumps, argMap);
         return CodeConstant.DEFAULT;
     }
 
     /**
      * 生成条件为真的时的语句块
      */
-    private void genConditionTrue(TreeNode node, Stack<Integer> innerBackFills, boolean needBackFill) throws SemanticException {
+    private void genConditionTrue(TreeNode node, Stack<Integer> innerBackFills, List<Integer> falseJumps, Map<String, String> argMap) throws SemanticException {
         codes.add(CodeConstant.inCode);
-        generate(node.left.getStatements());
+        generate(node.left.getStatements(), argMap);
         Quadruple code1 = new Quadruple();
         if (!breakIndex.empty()) {
             // 如果最后一句是break
@@ -716,14 +1512,8 @@ public class InterGenerator {
         code1.operation = CodeConstant.JMP;
         codes.add(code1);
         innerBackFills.push(codes.size()-1);
-        if(needBackFill) {
-            // 跳转目标地址为下一条指令
-            int jumpLocation = codes.size();
-            // jump指令的索引
-            int backFillInstruction = backPatch.pop();
-            // 回填目标地址
-            codes.get(backFillInstruction).jumpLocation = jumpLocation;
-        }
+        // 条件为假时跳到下一条指令
+        backFill(falseJumps, codes.size());
     }
 
 
@@ -759,10 +1549,10 @@ public class InterGenerator {
     /**
      * 生成输入指令
      */
-    private void genScan(TreeNode node) {
+    private void genScan(TreeNode node, Map<String, String> argMap) {
         Quadruple code = new Quadruple();
         code.operation = CodeConstant.SCAN;
-        code.dest = node.left.getSymbolName();
+        code.dest = storeName(node.left.getSymbolName(), argMap);
         codes.add(code);
     }
 
@@ -782,7 +1572,13 @@ public class InterGenerator {
         if(arithmeticExpression == null) {
             return;
         }
-        postTraverseArithExp(arithmeticExpression.left, result);
+        if (isMatrixAccess(arithmeticExpression)) {
+            // 二维数组访问依次为数组名、行下标、列下标, 内层的访问结点不单独生成代码
+            postTraverseArithExp(arithmeticExpression.left.left, result);
+            postTraverseArithExp(arithmeticExpression.left.right, result);
+        } else {
+            postTraverseArithExp(arithmeticExpression.left, result);
+        }
         postTraverseArithExp(arithmeticExpression.right, result);
         result.add(arithmeticExpression);
     }
@@ -899,7 +1695,8 @@ public class InterGenerator {
         handleOperandRight(code, operand1, argMap);
         if(operand2.getType() == TreeNodeType.IDENTIFIER) {
             code.firstOperandType = OperandType.IDENTIFIER;
-            code.firstOperand.name = operand2.getSymbolName();
+            // 数组形参替换为参数名
+            code.firstOperand.name = argMap.getOrDefault(operand2.getSymbolName(), operand2.getSymbolName());
         }
 
         code.dest = getNextTempName();
@@ -907,6 +1704,37 @@ public class InterGenerator {
         return code.dest;
     }
 
+    /**
+     * 生成访问二维数组中间代码
+     * arr_acc2,数组名,行下标,列下标,临时变量名
+     */
+    private String genMatrixAccess(Stack<TreeNode> stack, Map<String, String>  argMap) throws SemanticException {
+        Quadruple code = new Quadruple();
+        code.operation = CodeConstant.ARR_ACC_2D;
+        TreeNode column = stack.pop();
+        TreeNode row = stack.pop();
+        for (TreeNode index : new TreeNode[]{row, column}) {
+            if (index.getType()==TreeNodeType.INT_LITERAL && index.getIntValue()<0) {
+                // 索引小于0
+                arrayIndexOutOfBoundsException(index.getIntValue());
+            }
+        }
+        String array = stack.pop().getSymbolName();
+        code.array = argMap.getOrDefault(array, array);
+        handleOperandLeft(code, row, argMap);
+        handleOperandRight(code, column, argMap);
+        code.dest = getNextTempName();
+        codes.add(code);
+        return code.dest;
+    }
+
+    /**
+     * 是否为二维数组访问, 左结点是数组名和行下标的访问结点
+     */
+    private static boolean isMatrixAccess(TreeNode node) {
+        return node.getType() == TreeNodeType.ARRAY_ACCESS && node.left.getType() == TreeNodeType.ARRAY_ACCESS;
+    }
+
     /**
      * 生成左操作数的中间代码
      */
@@ -934,6 +1762,9 @@ public class InterGenerator {
                 code.firstOperandType = OperandType.IDENTIFIER;
                 code.firstOperand.name = genArrayAccess(node, argMap);
                 break;
+            case BUILTIN_CALL:
+                handleOperandLeft(code, builtinOperand(node, argMap), argMap);
+                break;
             default:
                 code.firstOperandType = OperandType.IDENTIFIER;
                 code.firstOperand.name = genArithmetic(node, argMap);
@@ -964,8 +1795,11 @@ public class InterGenerator {
 
                 break;
             case ARRAY_ACCESS:
-                code.firstOperandType = OperandType.IDENTIFIER;
-                code.firstOperand.name = genArrayAccess(node, argMap);
+                code.secondOperandType = OperandType.IDENTIFIER;
+                code.secondOperand.name = genArrayAccess(node, argMap);
+                break;
+            case BUILTIN_CALL:
+                handleOperandRight(code, builtinOperand(node, argMap), argMap);
                 break;
             default:
                 code.secondOperandType = OperandType.IDENTIFIER;
@@ -973,11 +1807,186 @@ public class InterGenerator {
         }
     }
 
+    /**
+     * 内建函数调用作为操作数
+     * 参数都是字面量时折叠为字面量结点, 否则生成一条内建函数指令, 返回保存结果的临时变量结点
+     */
+    private TreeNode builtinOperand(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        foldBuiltin(node);
+        if (node.getType() != TreeNodeType.BUILTIN_CALL) {
+            return node;
+        }
+        Quadruple code = new Quadruple();
+        code.operation = node.getSymbolName();
+        List<TreeNode> args = node.getArgList();
+        switch (code.operation) {
+            case CodeConstant.FILL:
+            case CodeConstant.COPY:
+            case CodeConstant.SORT:
+                throw new SemanticException("Builtin " + code.operation + " does not return a value!");
+            case CodeConstant.SUM:
+                code.firstOperandType = OperandType.IDENTIFIER;
+                code.firstOperand.name = arrayArg(code.operation, args, 0, argMap);
+                break;
+            default:
+                handleOperandLeft(code, scalarArg(code.operation, args.get(0), argMap), argMap);
+                if (args.size() > 1) {
+                    handleOperandRight(code, scalarArg(code.operation, args.get(1), argMap), argMap);
+                }
+        }
+        code.dest = getNextTempName();
+        codes.add(code);
+        TreeNode result = new TreeNode();
+        result.setType(TreeNodeType.IDENTIFIER);
+        result.setSymbolName(node.isNegative() ? genNegation(code.dest) : code.dest);
+        return result;
+    }
+
+    /**
+     * 生成作为语句的数组内建函数, 被写入的数组放在目标位置
+     * fill,值,null,数组名  copy,源数组,个数,目标数组  sort,null,null,数组名
+     */
+    private void genArrayBuiltin(TreeNode node, Map<String, String> argMap) throws SemanticException {
+        Quadruple code = new Quadruple();
+        code.operation = node.getSymbolName();
+        List<TreeNode> args = node.getArgList();
+        switch (code.operation) {
+            case CodeConstant.FILL:
+                code.dest = arrayArg(code.operation, args, 0, argMap);
+                handleOperandLeft(code, scalarArg(code.operation, args.get(1), argMap), argMap);
+                break;
+            case CodeConstant.COPY:
+                code.dest = arrayArg(code.operation, args, 0, argMap);
+                code.firstOperandType = OperandType.IDENTIFIER;
+                code.firstOperand.name = arrayArg(code.operation, args, 1, argMap);
+                if (declaredArrays.get(args.get(0).getSymbolName()).getType()
+                        != declaredArrays.get(args.get(1).getSymbolName()).getType()) {
+                    throw new SemanticException("Cannot copy " + args.get(1).getSymbolName() + " to "
+                            + args.get(0).getSymbolName() + " of a different type!");
+                }
+                handleOperandRight(code, scalarArg(code.operation, args.get(2), argMap), argMap);
+                break;
+            case CodeConstant.SORT:
+                code.dest = arrayArg(code.operation, args, 0, argMap);
+                break;
+            default:
+                throw new SemanticException("Result of " + code.operation + " is not used!");
+        }
+        codes.add(code);
+    }
+
+    /**
+     * 数组内建函数的数组参数, 只能是数组名, 返回中间代码中的名字, 数组形参替换为参数名
+     */
+    private String arrayArg(String builtin, List<TreeNode> args, int index, Map<String, String> argMap)
+            throws SemanticException {
+        TreeNode arg = args.get(index);
+        if (arg.getType() != TreeNodeType.IDENTIFIER || arg.isNegative()
+                || !declaredArrays.containsKey(arg.getSymbolName())) {
+            throw new SemanticException(String.format("Argument %d of %s expects an array!", index + 1, builtin));
+        }
+        return argMap.getOrDefault(arg.getSymbolName(), arg.getSymbolName());
+    }
+
+    /**
+     * 内建函数的标量参数, 不能是数组名
+     */
+    private TreeNode scalarArg(String builtin, TreeNode arg, Map<String, String> argMap) throws SemanticException {
+        if (arg.getType() == TreeNodeType.IDENTIFIER && declaredArrays.containsKey(arg.getSymbolName())) {
+            throw new SemanticException("Cannot pass array " + arg.getSymbolName() + " to " + builtin + "!");
+        }
+        return signedOperand(arg, argMap);
+    }
+
+    /**
+     * 带负号的参数: 字面量直接取反, 标识符生成0减去它的指令
+     */
+    private TreeNode signedOperand(TreeNode node, Map<String, String> argMap) {
+        if (!node.isNegative()) {
+            return node;
+        }
+        TreeNode result = new TreeNode();
+        switch (node.getType()) {
+            case INT_LITERAL:
+                result.setType(TreeNodeType.INT_LITERAL);
+                result.setIntValue(-node.getIntValue());
+                return result;
+            case REAL_LITERAL:
+                result.setType(TreeNodeType.REAL_LITERAL);
+                result.setRealValue(-node.getRealValue());
+                return result;
+            case IDENTIFIER:
+                result.setType(TreeNodeType.IDENTIFIER);
+                result.setSymbolName(genNegation(argMap.getOrDefault(node.getSymbolName(), node.getSymbolName())));
+                return result;
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * 生成取反的指令 -,0,变量,临时变量
+     */
+    private String genNegation(String name) {
+        Quadruple code = new Quadruple();
+        code.operation = CodeConstant.MINUS;
+        code.firstOperandType = OperandType.INT_LITERAL;
+        code.firstOperand = new IntOperand(0);
+        code.secondOperandType = OperandType.IDENTIFIER;
+        code.secondOperand.name = name;
+        code.dest = getNextTempName();
+        codes.add(code);
+        return code.dest;
+    }
+
+    /**
+     * 参数都是字面量(或可折叠的内建函数调用)的内建函数调用原地折叠为字面量结点, 只在开启优化时进行
+     */
+    private void foldBuiltin(TreeNode node) {
+        if (!optimEnabled || node == null || node.getType() != TreeNodeType.BUILTIN_CALL
+                || !MathBuiltins.isBuiltin(node.getSymbolName())) {
+            return;
+        }
+        double[] values = new double[2];
+        boolean[] isInts = {true, true};
+        List<TreeNode> args = node.getArgList();
+        for (int i = 0; i < args.size(); i++) {
+            TreeNode arg = args.get(i);
+            foldBuiltin(arg);
+            if (arg.getType() == TreeNodeType.INT_LITERAL) {
+                values[i] = arg.isNegative() ? -arg.getIntValue() : arg.getIntValue();
+            } else if (arg.getType() == TreeNodeType.REAL_LITERAL) {
+                values[i] = arg.isNegative() ? -arg.getRealValue() : arg.getRealValue();
+                isInts[i] = false;
+            } else {
+                return;
+            }
+        }
+        String name = node.getSymbolName();
+        boolean isInt = MathBuiltins.isIntResult(name, isInts[0], isInts[1]);
+        double value = MathBuiltins.apply(name, values[0], values[1], isInt);
+        if (isInt) {
+            node.setType(TreeNodeType.INT_LITERAL);
+            node.setIntValue(node.isNegative() ? -(int) value : (int) value);
+        } else {
+            node.setType(TreeNodeType.REAL_LITERAL);
+            node.setRealValue(node.isNegative() ? -value : value);
+        }
+        node.setNegative(false);
+        optimStringBuilder.append("内建函数").append(name).append("常量折叠\n");
+    }
+
     /**
      * 数组访问
      */
     private String genArrayAccess(TreeNode node, Map<String, String>  argMap) throws SemanticException {
         Stack<TreeNode> stack = new Stack<>();
+        if (isMatrixAccess(node)) {
+            stack.push(node.left.left);
+            stack.push(node.left.right);
+            stack.push(node.right);
+            return genMatrixAccess(stack, argMap);
+        }
         stack.push(node.left);
         stack.push(node.right);
         return genArrayAccess(stack, argMap);
@@ -996,8 +2005,10 @@ public class InterGenerator {
         for (int i=0; i<codes.size(); i++) {
             operation = codes.get(i).operation;
             if (operation.equals(CodeConstant.INT) || operation.equals(CodeConstant.REAL) || operation.equals(CodeConstant.CHAR)) {
-                // 声明了变量
-                declaredVarMap.put(codes.get(i).dest, i);
+                // 声明了变量, 全局变量可能被换入的函数使用, 不删除
+                if (!codes.get(i).dest.startsWith(CodeConstant.GLOBAL_PREFIX)) {
+                    declaredVarMap.put(codes.get(i).dest, i);
+                }
             } else {
                 // 使用了变量
                 if (codes.get(i).firstOperandType == OperandType.IDENTIFIER) {
@@ -1006,6 +2017,10 @@ public class InterGenerator {
                 if (codes.get(i).secondOperandType == OperandType.IDENTIFIER) {
                     declaredVarMap.remove(codes.get(i).secondOperand.name);
                 }
+                if (operation.equals(CodeConstant.RECV) || codes.get(i).isCompoundAssign()) {
+                    // 接收的变量之后即使不再读取, 也要保留声明; 复合赋值读取目标变量
+                    declaredVarMap.remove(codes.get(i).dest);
+                }
             }
         }
         if (declaredVarMap.isEmpty()) {
@@ -1028,14 +2043,13 @@ public class InterGenerator {
             if (declaredVarMap.containsValue(i)) {
                 //System.out.printf("中间代码第%d行变量声明但未使用\n", i);
                 codes.remove(i);
-            } else if (codes.get(i).operation.equals(CodeConstant.JMP) ||
-                    codes.get(i).operation.equals(CodeConstant.JMP_WITH_CONDITION) ) {
+            } else if (codes.get(i).isJump()) {
                 // 偏移跳转位置
-                int originJmpIndex = codes.get(i).jumpLocation;
-                // 更新跳转位置
-                codes.get(i).jumpLocation = originJmpIndex-calcIntervalIndex(offsetIntervals, originJmpIndex);
+                codes.get(i).relocate(originJmpIndex -> originJmpIndex-calcIntervalIndex(offsetIntervals, originJmpIndex));
             }
         }
+        // 函数入口地址同样偏移
+        funcInstrMap.replaceAll((name, entry) -> entry - calcIntervalIndex(offsetIntervals, entry));
     }
 
     /**
@@ -1093,6 +2107,25 @@ public class InterGenerator {
     }
 
 
+    /**
+     * 实参类型与形参不符
+     * @param index 参数下标
+     */
+    private void argumentTypeException(String funcName, int index, TreeNode param) throws SemanticException {
+        String expected;
+        switch (param.getType()) {
+            case INT_ARRAY_DECLARATION:
+                expected = isMatrix(param) ? "int[][]" : "int[]";
+                break;
+            case REAL_ARRAY_DECLARATION:
+                expected = isMatrix(param) ? "real[][]" : "real[]";
+                break;
+            default:
+                expected = "non-array value";
+        }
+        throw new SemanticException(String.format("Argument %d of %s expects %s", index + 1, funcName, expected));
+    }
+
     /**
      * 返回值类型错误
      * @param retType 实际的返回值类型
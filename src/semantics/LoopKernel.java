@@ -0,0 +1,370 @@
+package semantics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description 可以整体执行的数组循环
+ *              while (i < n) { c[i] = a[i] op b[i]; i = i + 1; } 生成的中间代码为
+ *              <,i,n,t; jne,t,null,出口; in; arr_acc,c,i,tc; (arr_acc,a,i,ta;)* (op,x,y,tr;)? assign,x,null,tc;
+ *              +,i,1,ti; assign,ti,null,i; out; jmp,null,null,开头
+ *              for (...; i < n; i = i + 1) 的步进合并为for<, 同样可以识别
+ *              其中op为+、-、*, 操作数可以是下标为i的数组元素、i本身、循环外的变量或字面量
+ *              c[i] += a[i] 等复合赋值作为 c[i] = c[i] + a[i] 识别
+ *              各次迭代只读写下标为i的元素, 互不依赖, 可以按数组整体计算
+ *              生成阶段和执行阶段都用同一个方法识别, 执行时代码已被改动则按普通循环执行
+ **/
+public class LoopKernel {
+    /**
+     * 操作数的种类
+     */
+    public enum SourceKind {
+        // 下标为循环变量的数组元素
+        ARRAY,
+        // 循环变量
+        INDEX,
+        // 循环外的变量
+        VARIABLE,
+        INT_LITERAL,
+        REAL_LITERAL
+    }
+
+    /**
+     * 循环体中运算的一个操作数
+     */
+    public static class Source {
+        public final SourceKind kind;
+        // 数组名或变量名
+        public final String name;
+        public final int intLiteral;
+        public final double realLiteral;
+
+        private Source(SourceKind kind, String name, int intLiteral, double realLiteral) {
+            this.kind = kind;
+            this.name = name;
+            this.intLiteral = intLiteral;
+            this.realLiteral = realLiteral;
+        }
+    }
+
+    // 循环变量
+    public final String loopVar;
+    // 被赋值的数组
+    public final String target;
+    // 运算, 为null时直接复制第一个操作数
+    public final String operation;
+    public final Source first;
+    public final Source second;
+    // 逐条执行时每次迭代执行的指令数
+    public final int instructionsPerIteration;
+
+    private LoopKernel(String loopVar, String target, String operation, Source first, Source second,
+                       int instructionsPerIteration) {
+        this.loopVar = loopVar;
+        this.target = target;
+        this.operation = operation;
+        this.first = first;
+        this.second = second;
+        this.instructionsPerIteration = instructionsPerIteration;
+    }
+
+    /**
+     * 识别从index开始的循环
+     * @param codes 中间代码
+     * @param index 循环条件的比较指令位置
+     * @return 不符合形式时返回null
+     */
+    public static LoopKernel match(List<Quadruple> codes, int index) {
+        LoopBody body = loopBody(codes, index);
+        if (body == null) {
+            return null;
+        }
+        String loopVar = codes.get(index).firstOperand.name;
+        int bodyStart = body.start;
+        int bodyEnd = body.end;
+        if (bodyEnd - bodyStart < 2) {
+            return null;
+        }
+
+        // 循环体: 数组元素访问, 至多一个运算, 最后是给目标元素赋值
+        // 或者只有数组元素访问, 最后是目标元素的+=、-=、*=
+        Quadruple assign = codes.get(bodyEnd - 1);
+        String compound = compoundOperation(assign.operation);
+        if (!assign.operation.equals(CodeConstant.ASSIGN) && compound == null) {
+            return null;
+        }
+        Map<String, String> elements = new HashMap<>();
+        Quadruple arithmetic = null;
+        for (int k = bodyStart; k < bodyEnd - 1; k++) {
+            Quadruple code = codes.get(k);
+            switch (code.operation) {
+                case CodeConstant.ARR_ACC:
+                    if (code.secondOperandType != OperandType.IDENTIFIER
+                            || !loopVar.equals(code.secondOperand.name)) {
+                        return null;
+                    }
+                    elements.put(code.dest, code.firstOperand.name);
+                    break;
+                case CodeConstant.PLUS:
+                case CodeConstant.MINUS:
+                case CodeConstant.MUL:
+                    if (arithmetic != null) {
+                        return null;
+                    }
+                    arithmetic = code;
+                    break;
+                default:
+                    return null;
+            }
+        }
+        String targetElement = assign.dest;
+        String target = elements.remove(targetElement);
+        if (target == null) {
+            return null;
+        }
+        Source first;
+        Source second = null;
+        String operation = null;
+        if (compound != null) {
+            if (arithmetic != null) {
+                return null;
+            }
+            operation = compound;
+            first = new Source(SourceKind.ARRAY, target, 0, 0);
+            second = source(assign.firstOperandType, assign.firstOperand, loopVar, elements, targetElement);
+            if (second == null) {
+                return null;
+            }
+        } else if (arithmetic == null) {
+            first = source(assign.firstOperandType, assign.firstOperand, loopVar, elements, targetElement);
+        } else {
+            if (assign.firstOperandType != OperandType.IDENTIFIER
+                    || !arithmetic.dest.equals(assign.firstOperand.name)) {
+                return null;
+            }
+            operation = arithmetic.operation;
+            first = source(arithmetic.firstOperandType, arithmetic.firstOperand, loopVar, elements, targetElement);
+            second = source(arithmetic.secondOperandType, arithmetic.secondOperand, loopVar, elements,
+                    targetElement);
+            if (second == null) {
+                return null;
+            }
+        }
+        if (first == null) {
+            return null;
+        }
+        // 每个数组元素访问都要用到, 否则它的越界检查会被跳过
+        for (String element : elements.keySet()) {
+            if (!isUsed(element, arithmetic, assign)) {
+                return null;
+            }
+        }
+        return new LoopKernel(loopVar, target, operation, first, second, body.instructionsPerIteration);
+    }
+
+    /**
+     * 循环体的位置
+     */
+    static final class LoopBody {
+        // 循环体第一条指令
+        final int start;
+        // 循环体之后的位置, 即循环变量自增或退出循环体语句块的指令
+        final int end;
+        // 逐条执行时每次迭代执行的指令数
+        final int instructionsPerIteration;
+
+        private LoopBody(int start, int end, int instructionsPerIteration) {
+            this.start = start;
+            this.end = end;
+            this.instructionsPerIteration = instructionsPerIteration;
+        }
+    }
+
+    /**
+     * 识别循环头, 循环变量不能是参数或全局变量, 上界是字面量或其他变量
+     * while循环: <,i,上界,t; jne,t,null,出口; in; 循环体; +,i,1,ti; assign,ti,null,i; out; jmp,null,null,index
+     *          或 <,i,上界,t; jne,t,null,出口; in; 循环体; +=,1,null,i; out; jmp,null,null,index
+     * for循环: <,i,上界,t; jne,t,null,出口; in; 循环体; out; for<,i,上界,index+2; 出口
+     * @return 不符合时返回null
+     */
+    static LoopBody loopBody(List<Quadruple> codes, int index) {
+        if (index + 1 >= codes.size()) {
+            return null;
+        }
+        Quadruple compare = codes.get(index);
+        if (!isLoopCompare(compare.operation) || compare.firstOperandType != OperandType.IDENTIFIER
+                || compare.firstOperand.name.startsWith(CodeConstant.ARG_PREFIX)
+                || compare.firstOperand.name.startsWith(CodeConstant.GLOBAL_PREFIX)) {
+            return null;
+        }
+        String loopVar = compare.firstOperand.name;
+        if (compare.secondOperandType == OperandType.IDENTIFIER) {
+            if (loopVar.equals(compare.secondOperand.name)) {
+                return null;
+            }
+        } else if (compare.secondOperandType != OperandType.INT_LITERAL
+                && compare.secondOperandType != OperandType.REAL_LITERAL) {
+            return null;
+        }
+        Quadruple jne = codes.get(index + 1);
+        if (!jne.operation.equals(CodeConstant.JMP_WITH_CONDITION)
+                || !compare.dest.equals(jne.firstOperand.name)) {
+            return null;
+        }
+        int exit = jne.jumpLocation;
+        if (exit - index < 5 || exit > codes.size() || !codes.get(index + 2).operation.equals(CodeConstant.IN)) {
+            return null;
+        }
+        Quadruple last = codes.get(exit - 1);
+        if (isCountedStep(last, compare) && last.jumpLocation == index + 2
+                && codes.get(exit - 2).operation.equals(CodeConstant.OUT)) {
+            return new LoopBody(index + 3, exit - 2, exit - index - 2);
+        }
+        // 出口之前为 +=,1,null,i out jmp
+        if (isUnitIncrement(codes.get(exit - 3), loopVar) && codes.get(exit - 2).operation.equals(CodeConstant.OUT)
+                && last.operation.equals(CodeConstant.JMP) && last.jumpLocation == index) {
+            return new LoopBody(index + 3, exit - 3, exit - index);
+        }
+        // 出口之前依次为 +,i,1 assign,i out jmp
+        if (exit - index < 7 || !isIncrement(codes.get(exit - 4), codes.get(exit - 3), loopVar)
+                || !codes.get(exit - 2).operation.equals(CodeConstant.OUT)
+                || !last.operation.equals(CodeConstant.JMP) || last.jumpLocation != index) {
+            return null;
+        }
+        return new LoopBody(index + 3, exit - 4, exit - index);
+    }
+
+    /**
+     * 是否为与循环条件一致的for<或for<=
+     */
+    private static boolean isCountedStep(Quadruple step, Quadruple compare) {
+        boolean less = compare.operation.equals(CodeConstant.LE) || compare.operation.equals(CodeConstant.VEC_LE)
+                || compare.operation.equals(CodeConstant.RED_LE);
+        if (!step.operation.equals(less ? CodeConstant.FOR_LE : CodeConstant.FOR_LE_EQ)
+                || !isVar(step.firstOperandType, step.firstOperand, compare.firstOperand.name)
+                || step.secondOperandType != compare.secondOperandType) {
+            return false;
+        }
+        switch (step.secondOperandType) {
+            case IDENTIFIER:
+                return step.secondOperand.name.equals(compare.secondOperand.name);
+            case INT_LITERAL:
+                return ((IntOperand) step.secondOperand).intLiteral == ((IntOperand) compare.secondOperand).intLiteral;
+            default:
+                return ((RealOperand) step.secondOperand).realLiteral
+                        == ((RealOperand) compare.secondOperand).realLiteral;
+        }
+    }
+
+    /**
+     * 是否为可以识别的循环条件
+     */
+    private static boolean isLoopCompare(String operation) {
+        return operation.equals(CodeConstant.LE) || operation.equals(CodeConstant.LE_EQ)
+                || operation.equals(CodeConstant.VEC_LE) || operation.equals(CodeConstant.VEC_LE_EQ)
+                || operation.equals(CodeConstant.RED_LE) || operation.equals(CodeConstant.RED_LE_EQ);
+    }
+
+    /**
+     * 是否为 +,i,1,t; assign,t,null,i
+     */
+    private static boolean isIncrement(Quadruple plus, Quadruple assign, String loopVar) {
+        if (!plus.operation.equals(CodeConstant.PLUS) || !assign.operation.equals(CodeConstant.ASSIGN)
+                || !loopVar.equals(assign.dest) || assign.firstOperandType != OperandType.IDENTIFIER
+                || !plus.dest.equals(assign.firstOperand.name)) {
+            return false;
+        }
+        return (isVar(plus.firstOperandType, plus.firstOperand, loopVar) && isOne(plus.secondOperandType, plus.secondOperand))
+                || (isOne(plus.firstOperandType, plus.firstOperand) && isVar(plus.secondOperandType, plus.secondOperand, loopVar));
+    }
+
+    /**
+     * 复合赋值对应的运算, 不能整体执行时返回null
+     */
+    private static String compoundOperation(String operation) {
+        switch (operation) {
+            case CodeConstant.PLUS_ASSIGN:
+                return CodeConstant.PLUS;
+            case CodeConstant.MINUS_ASSIGN:
+                return CodeConstant.MINUS;
+            case CodeConstant.MUL_ASSIGN:
+                return CodeConstant.MUL;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 是否为 +=,1,null,i
+     */
+    private static boolean isUnitIncrement(Quadruple code, String loopVar) {
+        return code.operation.equals(CodeConstant.PLUS_ASSIGN) && loopVar.equals(code.dest)
+                && isOne(code.firstOperandType, code.firstOperand);
+    }
+
+    static boolean isVar(OperandType type, Operand operand, String name) {
+        return type == OperandType.IDENTIFIER && name.equals(operand.name);
+    }
+
+    private static boolean isOne(OperandType type, Operand operand) {
+        return type == OperandType.INT_LITERAL && ((IntOperand) operand).intLiteral == 1;
+    }
+
+    private static boolean isUsed(String name, Quadruple arithmetic, Quadruple assign) {
+        if (arithmetic != null) {
+            return isVar(arithmetic.firstOperandType, arithmetic.firstOperand, name)
+                    || isVar(arithmetic.secondOperandType, arithmetic.secondOperand, name);
+        }
+        return isVar(assign.firstOperandType, assign.firstOperand, name);
+    }
+
+    /**
+     * 把运算的操作数转换为Source, 不能识别时返回null
+     */
+    private static Source source(OperandType type, Operand operand, String loopVar, Map<String, String> elements,
+                                 String targetElement) {
+        switch (type) {
+            case INT_LITERAL:
+                return new Source(SourceKind.INT_LITERAL, null, ((IntOperand) operand).intLiteral, 0);
+            case REAL_LITERAL:
+                return new Source(SourceKind.REAL_LITERAL, null, 0, ((RealOperand) operand).realLiteral);
+            case IDENTIFIER:
+                if (operand.name.equals(targetElement)) {
+                    return null;
+                }
+                if (elements.containsKey(operand.name)) {
+                    return new Source(SourceKind.ARRAY, elements.get(operand.name), 0, 0);
+                }
+                if (operand.name.equals(loopVar)) {
+                    return new Source(SourceKind.INDEX, loopVar, 0, 0);
+                }
+                return new Source(SourceKind.VARIABLE, operand.name, 0, 0);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 把可以整体执行的循环的条件改为vec<或vec<=, 循环体保持不变
+     * @return 改写的循环数
+     */
+    static int mark(List<Quadruple> codes, StringBuilder optimInfo) {
+        int marked = 0;
+        for (int i = 0; i < codes.size(); i++) {
+            Quadruple code = codes.get(i);
+            if (!code.operation.equals(CodeConstant.LE) && !code.operation.equals(CodeConstant.LE_EQ)) {
+                continue;
+            }
+            LoopKernel kernel = match(codes, i);
+            if (kernel == null) {
+                continue;
+            }
+            code.operation = code.operation.equals(CodeConstant.LE) ? CodeConstant.VEC_LE : CodeConstant.VEC_LE_EQ;
+            optimInfo.append("第").append(i).append("行的循环对数组").append(kernel.target)
+                    .append("逐元素赋值, 整体执行\n");
+            marked++;
+        }
+        return marked;
+    }
+}
@@ -0,0 +1,237 @@
+package semantics;
+
+import java.util.List;
+
+/**
+ * @description 对数组归约的循环
+ *              while (i < n) { s = s + a[i]; i = i + 1; } 求和, s = s * a[i] 求积,
+ *              while (i < n) { if (a[i] < m) { m = a[i]; } i = i + 1; } 求最小值, a[i] > m 求最大值
+ *              求和求积的中间代码为 arr_acc,a,i,t; +,s,t,r; assign,r,null,s, s += a[i]为 arr_acc,a,i,t; +=,t,null,s
+ *              最小最大值为 arr_acc,a,i,t; <,t,m,c; jne,c,null,L; in; arr_acc,a,i,t2; assign,t2,null,m; out; jmp,null,null,L
+ *              循环头和循环变量自增的形式与LoopKernel相同, while和for循环都可以识别
+ **/
+public class LoopReduction {
+    public enum Kind {
+        SUM,
+        PRODUCT,
+        MIN,
+        MAX
+    }
+
+    // 循环变量
+    public final String loopVar;
+    // 被归约的数组
+    public final String array;
+    // 累积变量
+    public final String accumulator;
+    public final Kind kind;
+    // 最小最大值是否只在严格小于(大于)时更新, 只影响更新次数
+    public final boolean strict;
+    // 逐条执行时每次迭代执行的指令数, 最小最大值为不更新时的指令数
+    public final int instructionsPerIteration;
+    // 最小最大值每次更新额外执行的指令数
+    public final int instructionsPerUpdate;
+
+    private LoopReduction(String loopVar, String array, String accumulator, Kind kind, boolean strict,
+                          int instructionsPerIteration, int instructionsPerUpdate) {
+        this.loopVar = loopVar;
+        this.array = array;
+        this.accumulator = accumulator;
+        this.kind = kind;
+        this.strict = strict;
+        this.instructionsPerIteration = instructionsPerIteration;
+        this.instructionsPerUpdate = instructionsPerUpdate;
+    }
+
+    /**
+     * 识别从index开始的归约循环
+     * @param codes 中间代码
+     * @param index 循环条件的比较指令位置
+     * @return 不符合形式时返回null
+     */
+    public static LoopReduction match(List<Quadruple> codes, int index) {
+        LoopKernel.LoopBody body = LoopKernel.loopBody(codes, index);
+        if (body == null) {
+            return null;
+        }
+        String loopVar = codes.get(index).firstOperand.name;
+        int bodyStart = body.start;
+        int bodyEnd = body.end;
+        Quadruple access = codes.get(bodyStart);
+        if (!isElementAccess(access, loopVar)) {
+            return null;
+        }
+        String array = access.firstOperand.name;
+        String element = access.dest;
+        if (bodyEnd - bodyStart == 2) {
+            return matchCompound(codes, bodyStart, loopVar, array, element, body.instructionsPerIteration);
+        }
+        if (bodyEnd - bodyStart == 3) {
+            return matchFold(codes, bodyStart, loopVar, array, element, body.instructionsPerIteration);
+        }
+        if (bodyEnd - bodyStart == 8) {
+            return matchMinMax(codes, bodyStart, bodyEnd, loopVar, array, element,
+                    body.instructionsPerIteration);
+        }
+        return null;
+    }
+
+    /**
+     * +,s,t,r; assign,r,null,s 或 *,s,t,r; assign,r,null,s
+     */
+    private static LoopReduction matchFold(List<Quadruple> codes, int bodyStart, String loopVar, String array,
+                                           String element, int instructions) {
+        Quadruple arithmetic = codes.get(bodyStart + 1);
+        Quadruple assign = codes.get(bodyStart + 2);
+        Kind kind;
+        if (arithmetic.operation.equals(CodeConstant.PLUS)) {
+            kind = Kind.SUM;
+        } else if (arithmetic.operation.equals(CodeConstant.MUL)) {
+            kind = Kind.PRODUCT;
+        } else {
+            return null;
+        }
+        if (!assign.operation.equals(CodeConstant.ASSIGN)
+                || !LoopKernel.isVar(assign.firstOperandType, assign.firstOperand, arithmetic.dest)) {
+            return null;
+        }
+        String accumulator = assign.dest;
+        if (!isAccumulator(accumulator, codes.get(bodyStart - 3), array)) {
+            return null;
+        }
+        boolean matched = (LoopKernel.isVar(arithmetic.firstOperandType, arithmetic.firstOperand, accumulator)
+                && LoopKernel.isVar(arithmetic.secondOperandType, arithmetic.secondOperand, element))
+                || (LoopKernel.isVar(arithmetic.firstOperandType, arithmetic.firstOperand, element)
+                && LoopKernel.isVar(arithmetic.secondOperandType, arithmetic.secondOperand, accumulator));
+        if (!matched) {
+            return null;
+        }
+        return new LoopReduction(loopVar, array, accumulator, kind, false, instructions, 0);
+    }
+
+    /**
+     * +=,t,null,s 或 *=,t,null,s
+     */
+    private static LoopReduction matchCompound(List<Quadruple> codes, int bodyStart, String loopVar, String array,
+                                               String element, int instructions) {
+        Quadruple compound = codes.get(bodyStart + 1);
+        Kind kind;
+        if (compound.operation.equals(CodeConstant.PLUS_ASSIGN)) {
+            kind = Kind.SUM;
+        } else if (compound.operation.equals(CodeConstant.MUL_ASSIGN)) {
+            kind = Kind.PRODUCT;
+        } else {
+            return null;
+        }
+        String accumulator = compound.dest;
+        if (!LoopKernel.isVar(compound.firstOperandType, compound.firstOperand, element)
+                || accumulator.equals(element) || !isAccumulator(accumulator, codes.get(bodyStart - 3), array)) {
+            return null;
+        }
+        return new LoopReduction(loopVar, array, accumulator, kind, false, instructions, 0);
+    }
+
+    /**
+     * 比较,t,m,c; jne,c,null,L; in; arr_acc,a,i,t2; assign,t2,null,m; out; jmp,null,null,L
+     * 其中L为循环变量自增的位置
+     */
+    private static LoopReduction matchMinMax(List<Quadruple> codes, int bodyStart, int bodyEnd, String loopVar,
+                                             String array, String element, int instructions) {
+        Quadruple compare = codes.get(bodyStart + 1);
+        Quadruple jne = codes.get(bodyStart + 2);
+        Quadruple access = codes.get(bodyStart + 4);
+        Quadruple assign = codes.get(bodyStart + 5);
+        Quadruple jmp = codes.get(bodyStart + 7);
+        if (!jne.operation.equals(CodeConstant.JMP_WITH_CONDITION) || jne.jumpLocation != bodyEnd
+                || !LoopKernel.isVar(jne.firstOperandType, jne.firstOperand, compare.dest)
+                || !codes.get(bodyStart + 3).operation.equals(CodeConstant.IN)
+                || !isElementAccess(access, loopVar) || !access.firstOperand.name.equals(array)
+                || !assign.operation.equals(CodeConstant.ASSIGN)
+                || !LoopKernel.isVar(assign.firstOperandType, assign.firstOperand, access.dest)
+                || !codes.get(bodyStart + 6).operation.equals(CodeConstant.OUT)
+                || !jmp.operation.equals(CodeConstant.JMP) || jmp.jumpLocation != bodyEnd) {
+            return null;
+        }
+        String accumulator = assign.dest;
+        if (!isAccumulator(accumulator, codes.get(bodyStart - 3), array)) {
+            return null;
+        }
+        // 统一成 元素 比较 累积变量
+        boolean elementFirst;
+        if (LoopKernel.isVar(compare.firstOperandType, compare.firstOperand, element)
+                && LoopKernel.isVar(compare.secondOperandType, compare.secondOperand, accumulator)) {
+            elementFirst = true;
+        } else if (LoopKernel.isVar(compare.firstOperandType, compare.firstOperand, accumulator)
+                && LoopKernel.isVar(compare.secondOperandType, compare.secondOperand, element)) {
+            elementFirst = false;
+        } else {
+            return null;
+        }
+        boolean less;
+        boolean strict;
+        switch (compare.operation) {
+            case CodeConstant.LE:
+                less = true;
+                strict = true;
+                break;
+            case CodeConstant.LE_EQ:
+                less = true;
+                strict = false;
+                break;
+            case CodeConstant.GR:
+                less = false;
+                strict = true;
+                break;
+            case CodeConstant.GR_EQ:
+                less = false;
+                strict = false;
+                break;
+            default:
+                return null;
+        }
+        Kind kind = less == elementFirst ? Kind.MIN : Kind.MAX;
+        // 更新时多执行 in arr_acc assign out jmp
+        return new LoopReduction(loopVar, array, accumulator, kind, strict, instructions - 5, 5);
+    }
+
+    /**
+     * 是否为 arr_acc,数组,i,t
+     */
+    private static boolean isElementAccess(Quadruple code, String loopVar) {
+        return code.operation.equals(CodeConstant.ARR_ACC)
+                && LoopKernel.isVar(code.secondOperandType, code.secondOperand, loopVar);
+    }
+
+    /**
+     * 累积变量不能是循环变量、上界、数组、参数或全局变量
+     */
+    private static boolean isAccumulator(String name, Quadruple loopCompare, String array) {
+        return !name.equals(loopCompare.firstOperand.name) && !name.equals(array)
+                && !name.startsWith(CodeConstant.ARG_PREFIX)
+                && !name.startsWith(CodeConstant.GLOBAL_PREFIX)
+                && !LoopKernel.isVar(loopCompare.secondOperandType, loopCompare.secondOperand, name);
+    }
+
+    /**
+     * 把归约循环的条件改为red<或red<=, 循环体保持不变
+     * @return 改写的循环数
+     */
+    static int mark(List<Quadruple> codes, StringBuilder optimInfo) {
+        int marked = 0;
+        for (int i = 0; i < codes.size(); i++) {
+            Quadruple code = codes.get(i);
+            if (!code.operation.equals(CodeConstant.LE) && !code.operation.equals(CodeConstant.LE_EQ)) {
+                continue;
+            }
+            LoopReduction reduction = match(codes, i);
+            if (reduction == null) {
+                continue;
+            }
+            code.operation = code.operation.equals(CodeConstant.LE) ? CodeConstant.RED_LE : CodeConstant.RED_LE_EQ;
+            optimInfo.append("第").append(i).append("行的循环对数组").append(reduction.array)
+                    .append("归约到").append(reduction.accumulator).append(", 整体执行\n");
+            marked++;
+        }
+        return marked;
+    }
+}
@@ -0,0 +1,70 @@
+package semantics;
+
+/**
+ * @description 内建数学函数的求值规则
+ *              sqrt、pow的结果为实数, floor向下取整为int, abs、min、max的参数都是int时按int计算, 否则为实数
+ *              生成中间代码、特化时的常量折叠与解释器执行使用同一规则, 计算直接对应Math的内联方法
+ **/
+public final class MathBuiltins {
+
+    private MathBuiltins() {
+    }
+
+    /**
+     * 指令是否为内建数学函数
+     */
+    public static boolean isBuiltin(String operation) {
+        switch (operation) {
+            case CodeConstant.SQRT:
+            case CodeConstant.POW:
+            case CodeConstant.ABS:
+            case CodeConstant.MIN:
+            case CodeConstant.MAX:
+            case CodeConstant.FLOOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 结果是否为int
+     * @param isFirstInt 第一个参数是否为int
+     * @param isSecondInt 第二个参数是否为int, 只有一个参数时为true
+     */
+    public static boolean isIntResult(String operation, boolean isFirstInt, boolean isSecondInt) {
+        switch (operation) {
+            case CodeConstant.FLOOR:
+                return true;
+            case CodeConstant.ABS:
+            case CodeConstant.MIN:
+            case CodeConstant.MAX:
+                return isFirstInt && isSecondInt;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 计算结果, int结果转换为double后不丢失精度
+     * @param isInt isIntResult的结果
+     */
+    public static double apply(String operation, double first, double second, boolean isInt) {
+        switch (operation) {
+            case CodeConstant.SQRT:
+                return Math.sqrt(first);
+            case CodeConstant.POW:
+                return Math.pow(first, second);
+            case CodeConstant.ABS:
+                return isInt ? Math.abs((int) first) : Math.abs(first);
+            case CodeConstant.MIN:
+                return isInt ? Math.min((int) first, (int) second) : Math.min(first, second);
+            case CodeConstant.MAX:
+                return isInt ? Math.max((int) first, (int) second) : Math.max(first, second);
+            case CodeConstant.FLOOR:
+                return (int) Math.floor(first);
+            default:
+                throw new IllegalArgumentException(operation + " is not a builtin!");
+        }
+    }
+}
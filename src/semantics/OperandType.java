@@ -7,5 +7,7 @@ public enum OperandType {
     IDENTIFIER,
     INT_LITERAL,
     REAL_LITERAL,
+    // 函数返回值寄存器
+    RETURN_VALUE,
     NULL
 }
\ No newline at end of file
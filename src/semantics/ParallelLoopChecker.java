@@ -0,0 +1,404 @@
+package semantics;
+
+import exception.SemanticException;
+import syntax.TreeNode;
+import syntax.TreeNodeType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description 并行循环的静态检查
+ *              parallel while (i < n) { ...; i = i + 1; } 的各次迭代会被分到不同线程执行,
+ *              循环体最后一条语句必须是循环变量加1, 其余部分必须与迭代顺序无关:
+ *              不能输入输出、使用通道或spawn、break或return, 不能给循环体外的变量赋值,
+ *              写循环体外的数组时下标只能是循环变量, 且该数组的其他读取下标也只能是循环变量, 也不能传给函数
+ *              全局数组可能被调用的函数读取, 循环体写全局数组时不能调用函数
+ *              数组形参和全局数组可能是同一个数组, 写其中一个时其他的也只能以循环变量为下标读取
+ *              循环体内的声明按语句块确定作用域, 不能与循环变量或循环外可见的变量重名
+ *              调用的函数是否有副作用在整个程序生成完毕后检查
+ **/
+class ParallelLoopChecker {
+    // 循环变量
+    private final String loopVar;
+    // 循环体内各层语句块中已声明的变量和数组, 栈顶为当前语句块
+    private final Deque<Set<String>> scopes = new ArrayDeque<>();
+    // 循环外可见的局部变量, 循环体内不能重新声明
+    private final Set<String> outerNames;
+    // 循环体写入的外部数组
+    private final Set<String> writtenArrays = new HashSet<>();
+    // 外部数组 -> 是否有下标不是循环变量的读取
+    private final Map<String, Boolean> irregularReads = new HashMap<>();
+    // 循环体调用的函数
+    private final Set<String> calledFuncs = new HashSet<>();
+
+    private ParallelLoopChecker(String loopVar, Set<String> outerNames) {
+        this.loopVar = loopVar;
+        this.outerNames = outerNames;
+    }
+
+    /**
+     * 检查并行循环
+     * @param node PARALLEL_WHILE结点
+     * @param funcBody 所在函数的函数体, 用于确定循环处可见的局部变量
+     * @param argMap 所在函数的参数和全局变量, 都不能作为循环变量
+     * @param arrays 所在函数可见的数组名, 包括数组形参和全局数组
+     * @return 循环体调用的函数
+     */
+    static Set<String> check(TreeNode node, TreeNode funcBody, Map<String, String> argMap, Set<String> arrays)
+            throws SemanticException {
+        TreeNode condition = node.getCondition();
+        if ((condition.getType() != TreeNodeType.LESS && condition.getType() != TreeNodeType.LESS_EQ)
+                || condition.left.getType() != TreeNodeType.IDENTIFIER) {
+            throw new SemanticException("Parallel loop condition must be of the form i < n or i <= n!");
+        }
+        String loopVar = condition.left.getSymbolName();
+        if (argMap.containsKey(loopVar)) {
+            String kind = argMap.get(loopVar).startsWith(CodeConstant.GLOBAL_PREFIX) ? "global" : "a parameter";
+            throw new SemanticException("Parallel loop variable " + loopVar + " cannot be " + kind + "!");
+        }
+        List<TreeNode> stmts = node.left.getStatements();
+        if (stmts.isEmpty() || !isIncrement(stmts.get(stmts.size() - 1), loopVar)) {
+            throw new SemanticException("Parallel loop must end with " + loopVar + " = " + loopVar + " + 1!");
+        }
+        Set<String> outerNames = new HashSet<>();
+        collectVisible(funcBody, node, outerNames);
+        ParallelLoopChecker checker = new ParallelLoopChecker(loopVar, outerNames);
+        checker.checkExpression(condition.right);
+        checker.scopes.push(new HashSet<>());
+        for (TreeNode stmt : stmts.subList(0, stmts.size() - 1)) {
+            checker.checkStatement(stmt, false);
+        }
+        for (String array : checker.writtenArrays) {
+            if (checker.irregularReads.getOrDefault(array, false)) {
+                throw new SemanticException("Parallel loop reads " + array + " at an index other than "
+                        + loopVar + " while writing it!");
+            }
+            String mapped = argMap.get(array);
+            if (mapped != null && mapped.startsWith(CodeConstant.GLOBAL_PREFIX) && !checker.calledFuncs.isEmpty()) {
+                throw new SemanticException("Parallel loop writes global array " + array + " while calling functions!");
+            }
+            if (!mayAlias(array, argMap)) {
+                continue;
+            }
+            // 按引用传入的数组可能与写入的数组相同, 只能以循环变量为下标读取
+            for (Map.Entry<String, Boolean> read : checker.irregularReads.entrySet()) {
+                String other = read.getKey();
+                if (read.getValue() && !other.equals(array) && arrays.contains(other) && mayAlias(other, argMap)
+                        && !(isGlobal(array, argMap) && isGlobal(other, argMap))) {
+                    throw new SemanticException("Parallel loop writes " + array + " and reads " + other
+                            + " at an index other than " + loopVar + ", they may be the same array!");
+                }
+            }
+        }
+        return checker.calledFuncs;
+    }
+
+    /**
+     * 是否为数组形参或全局数组, 两者都可能指向调用者传入的同一个数组
+     */
+    private static boolean mayAlias(String array, Map<String, String> argMap) {
+        String mapped = argMap.get(array);
+        return mapped != null
+                && (mapped.startsWith(CodeConstant.ARG_PREFIX) || mapped.startsWith(CodeConstant.GLOBAL_PREFIX));
+    }
+
+    private static boolean isGlobal(String name, Map<String, String> argMap) {
+        String mapped = argMap.get(name);
+        return mapped != null && mapped.startsWith(CodeConstant.GLOBAL_PREFIX);
+    }
+
+    /**
+     * 收集target处可见的局部变量: 包含target的各层语句块中位于它之前的声明, 以及外层for初始化中的声明
+     * @return node中是否包含target
+     */
+    private static boolean collectVisible(TreeNode node, TreeNode target, Set<String> names) {
+        if (node == target) {
+            return true;
+        }
+        List<String> declared = new ArrayList<>();
+        for (TreeNode stmt : node.getStatements()) {
+            if (collectVisible(stmt, target, names)) {
+                names.addAll(declared);
+                return true;
+            }
+            if (isDeclaration(stmt)) {
+                declared.add(stmt.left.getSymbolName());
+            }
+        }
+        for (TreeNode child : new TreeNode[]{node.left, node.right}) {
+            if (child != null && collectVisible(child, target, names)) {
+                names.addAll(declared);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDeclaration(TreeNode node) {
+        switch (node.getType()) {
+            case INT_DECLARATION:
+            case REAL_DECLARATION:
+            case CHAR_DECLARATION:
+            case INT_ARRAY_DECLARATION:
+            case REAL_ARRAY_DECLARATION:
+            case CHAN_DECLARATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 是否为 i = i + 1、i = 1 + i、i += 1 或 i++
+     */
+    private static boolean isIncrement(TreeNode stmt, String loopVar) {
+        if (stmt.getType() == TreeNodeType.PLUS_ASSIGN) {
+            return isVar(stmt.left, loopVar) && isOne(stmt.right);
+        }
+        if (stmt.getType() != TreeNodeType.ASSIGN || !isVar(stmt.left, loopVar)
+                || stmt.right.getType() != TreeNodeType.PLUS) {
+            return false;
+        }
+        TreeNode plus = stmt.right;
+        return (isVar(plus.left, loopVar) && isOne(plus.right)) || (isOne(plus.left) && isVar(plus.right, loopVar));
+    }
+
+    private static boolean isVar(TreeNode node, String name) {
+        return node != null && node.getType() == TreeNodeType.IDENTIFIER && !node.isNegative()
+                && name.equals(node.getSymbolName());
+    }
+
+    private static boolean isOne(TreeNode node) {
+        return node != null && node.getType() == TreeNodeType.INT_LITERAL && !node.isNegative()
+                && node.getIntValue() == 1;
+    }
+
+    /**
+     * 在当前语句块中声明, 与循环变量或循环外可见的变量重名时报错
+     * 重名时语句块之外的同名访问是循环外的变量, 容易误写成多个线程共享的赋值
+     */
+    private void declare(String name) throws SemanticException {
+        if (name.equals(loopVar)) {
+            throw new SemanticException("Parallel loop body declares " + name + " which shadows the loop variable!");
+        }
+        if (outerNames.contains(name)) {
+            throw new SemanticException("Parallel loop body declares " + name
+                    + " which shadows a variable declared outside the loop!");
+        }
+        scopes.peek().add(name);
+    }
+
+    /**
+     * 是否为循环体内当前可见的声明
+     */
+    private boolean isLocal(String name) {
+        for (Set<String> scope : scopes) {
+            if (scope.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在新的语句块作用域中检查, 其中的声明在退出后不再可见
+     */
+    private void checkBlock(TreeNode node, boolean inInnerLoop) throws SemanticException {
+        scopes.push(new HashSet<>());
+        checkStatement(node, inInnerLoop);
+        scopes.pop();
+    }
+
+    /**
+     * 检查语句
+     * @param inInnerLoop 是否在循环体内嵌套的while中, 此时可以break
+     */
+    private void checkStatement(TreeNode node, boolean inInnerLoop) throws SemanticException {
+        switch (node.getType()) {
+            case PRINT:
+            case SCAN:
+                throw new SemanticException("Input and output are not allowed in parallel loop!");
+            case SPAWN:
+            case CHAN_DECLARATION:
+            case SEND:
+            case RECV:
+                throw new SemanticException("Channels and spawn are not allowed in parallel loop!");
+            case RETURN:
+                throw new SemanticException("Return is not allowed in parallel loop!");
+            case BREAK:
+                if (!inInnerLoop) {
+                    throw new SemanticException("Break out of parallel loop is not allowed!");
+                }
+                break;
+            case INT_DECLARATION:
+            case REAL_DECLARATION:
+            case CHAR_DECLARATION:
+            case INT_ARRAY_DECLARATION:
+            case REAL_ARRAY_DECLARATION:
+                // 初值和长度中的同名变量是之前声明的
+                checkExpression(node.right);
+                declare(node.left.getSymbolName());
+                break;
+            case ASSIGN:
+            case PLUS_ASSIGN:
+            case MINUS_ASSIGN:
+            case MULTIPLY_ASSIGN:
+            case DIVIDE_ASSIGN:
+                checkAssignTarget(node.left);
+                checkExpression(node.right);
+                break;
+            case FUNC_CALL:
+                checkExpression(node);
+                break;
+            case BUILTIN_CALL:
+                // fill、copy、sort写入整个数组, 只能写循环体内声明的数组
+                String target = node.getArgList().get(0).getSymbolName();
+                if (!isLocal(target)) {
+                    throw new SemanticException("Parallel loop writes all of " + target + " declared outside the loop!");
+                }
+                checkExpression(node);
+                break;
+            case IF:
+                checkExpression(node.getCondition());
+                checkBlock(node.left, inInnerLoop);
+                for (TreeNode elseIf : node.getStatements()) {
+                    checkStatement(elseIf, inInnerLoop);
+                }
+                if (node.right != null) {
+                    checkBlock(node.right, inInnerLoop);
+                }
+                break;
+            case ELSE_IF:
+                checkExpression(node.getCondition());
+                checkBlock(node.left, inInnerLoop);
+                break;
+            case WHILE:
+                checkExpression(node.getCondition());
+                checkBlock(node.left, true);
+                break;
+            case FOR:
+                // 初始化中的声明只在for内可见
+                scopes.push(new HashSet<>());
+                for (TreeNode init : node.getStatements()) {
+                    checkStatement(init, inInnerLoop);
+                }
+                checkExpression(node.getCondition());
+                if (node.right != null) {
+                    checkStatement(node.right, inInnerLoop);
+                }
+                checkBlock(node.left, true);
+                scopes.pop();
+                break;
+            case SWITCH:
+                checkExpression(node.left);
+                for (TreeNode branch : node.getStatements()) {
+                    checkBlock(branch.left, inInnerLoop);
+                }
+                break;
+            case PARALLEL_WHILE:
+                // 内层的并行循环单独检查, 它的循环变量属于本循环体
+                checkExpression(node.getCondition());
+                checkBlock(node.left, true);
+                break;
+            case STATEMENT_BLOCK:
+                scopes.push(new HashSet<>());
+                for (TreeNode stmt : node.getStatements()) {
+                    checkStatement(stmt, inInnerLoop);
+                }
+                scopes.pop();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void checkAssignTarget(TreeNode target) throws SemanticException {
+        if (target.getType() == TreeNodeType.ARRAY_ACCESS) {
+            String array = arrayName(target);
+            checkIndexes(target);
+            if (isLocal(array)) {
+                return;
+            }
+            if (!isVar(firstIndex(target), loopVar)) {
+                throw new SemanticException("Parallel loop writes " + array + " at an index other than "
+                        + loopVar + "!");
+            }
+            writtenArrays.add(array);
+        } else if (!isLocal(target.getSymbolName())) {
+            throw new SemanticException("Parallel loop assigns " + target.getSymbolName()
+                    + " declared outside the loop!");
+        }
+    }
+
+    /**
+     * 数组访问的数组名, 二维数组a[i][j]的左结点是a[i]
+     */
+    private static String arrayName(TreeNode access) {
+        return access.left.getType() == TreeNodeType.ARRAY_ACCESS
+                ? access.left.left.getSymbolName() : access.left.getSymbolName();
+    }
+
+    /**
+     * 数组访问的第一个下标, 二维数组按行划分给各次迭代, 行下标是循环变量时不同迭代访问不同的行
+     */
+    private static TreeNode firstIndex(TreeNode access) {
+        return access.left.getType() == TreeNodeType.ARRAY_ACCESS ? access.left.right : access.right;
+    }
+
+    private void checkIndexes(TreeNode access) {
+        if (access.left.getType() == TreeNodeType.ARRAY_ACCESS) {
+            checkExpression(access.left.right);
+        }
+        checkExpression(access.right);
+    }
+
+    /**
+     * 检查表达式中的数组读取和函数调用
+     */
+    private void checkExpression(TreeNode node) {
+        if (node == null) {
+            return;
+        }
+        switch (node.getType()) {
+            case ARRAY_ACCESS:
+                String array = arrayName(node);
+                if (!isLocal(array) && !isVar(firstIndex(node), loopVar)) {
+                    irregularReads.put(array, true);
+                }
+                checkIndexes(node);
+                return;
+            case FUNC_CALL:
+                calledFuncs.add(node.getSymbolName());
+                if (node.left != null && node.left.getArgList() != null) {
+                    for (TreeNode arg : node.left.getArgList()) {
+                        if (arg.getType() == TreeNodeType.IDENTIFIER && !isLocal(arg.getSymbolName())) {
+                            // 数组按引用传入, 被调函数可能读取任意下标
+                            irregularReads.put(arg.getSymbolName(), true);
+                        }
+                        checkExpression(arg);
+                    }
+                }
+                return;
+            case BUILTIN_CALL:
+                for (TreeNode arg : node.getArgList()) {
+                    if (arg.getType() == TreeNodeType.IDENTIFIER && !isLocal(arg.getSymbolName())) {
+                        // sum、copy读取整个数组
+                        irregularReads.put(arg.getSymbolName(), true);
+                    }
+                    checkExpression(arg);
+                }
+                return;
+            default:
+                checkExpression(node.left);
+                checkExpression(node.right);
+                checkExpression(node.getCondition());
+        }
+    }
+}
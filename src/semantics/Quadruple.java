@@ -1,5 +1,7 @@
 package semantics;
 
+import java.util.function.IntUnaryOperator;
+
 /**
  * @description 四元式表示
  *              用于中间代码
@@ -25,6 +27,10 @@ public class Quadruple {
 
     // 跳转指令的语句位置
     public  int jumpLocation;
+    // switch的跳转表, jumpLocation为没有对应case时的位置
+    public  SwitchTable switchTable;
+    // 二维数组访问的数组名, 两个操作数为行下标和列下标
+    public  String array;
 
 
     Quadruple(){
@@ -39,11 +45,17 @@ public class Quadruple {
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append(operation);
+        if (array != null) {
+            builder.append(",").append(array);
+        }
         appendOpToBuilder(builder, firstOperandType, firstOperand);
-        appendOpToBuilder(builder, secondOperandType, secondOperand);
+        if (switchTable != null) {
+            builder.append(",").append(switchTable);
+        } else {
+            appendOpToBuilder(builder, secondOperandType, secondOperand);
+        }
         builder.append(",");
-        if(operation.equals(CodeConstant.JMP) ||
-                operation.equals(CodeConstant.JMP_WITH_CONDITION)) {
+        if(isJump()) {
             builder.append(jumpLocation);
         } else {
             builder.append(dest);
@@ -52,6 +64,46 @@ public class Quadruple {
 
     }
 
+    /**
+     * 是否为跳转指令, 即jumpLocation有效
+     */
+    public boolean isJump() {
+        return operation.equals(CodeConstant.JMP) ||
+                operation.equals(CodeConstant.JMP_WITH_CONDITION) ||
+                operation.equals(CodeConstant.FOR_LE) ||
+                operation.equals(CodeConstant.FOR_LE_EQ) ||
+                operation.equals(CodeConstant.SWITCH) ||
+                isParallelLoop();
+    }
+
+    /**
+     * 重定位跳转位置, 包括switch跳转表中的位置
+     */
+    public void relocate(IntUnaryOperator mapping) {
+        jumpLocation = mapping.applyAsInt(jumpLocation);
+        if (switchTable != null) {
+            switchTable.relocate(mapping);
+        }
+    }
+
+    /**
+     * 是否为并行循环指令, jumpLocation为循环结束位置
+     */
+    public boolean isParallelLoop() {
+        return operation.equals(CodeConstant.PAR_LE) ||
+                operation.equals(CodeConstant.PAR_LE_EQ);
+    }
+
+    /**
+     * 是否为复合赋值指令, dest既被读取也被写入
+     */
+    public boolean isCompoundAssign() {
+        return operation.equals(CodeConstant.PLUS_ASSIGN) ||
+                operation.equals(CodeConstant.MINUS_ASSIGN) ||
+                operation.equals(CodeConstant.MUL_ASSIGN) ||
+                operation.equals(CodeConstant.DIV_ASSIGN);
+    }
+
     private void appendOpToBuilder(StringBuilder builder, OperandType operandType, Operand operand) {
         builder.append(",");
         switch (operandType) {
@@ -62,6 +114,7 @@ public class Quadruple {
                 builder.append(((RealOperand)operand).realLiteral);
                 break;
             case IDENTIFIER:
+            case RETURN_VALUE:
                 builder.append(operand.name);
                 break;
             case NULL:
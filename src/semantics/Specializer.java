@@ -0,0 +1,506 @@
+package semantics;
+
+import java.util.*;
+
+/**
+ * @description 根据已知输入对中间代码进行部分求值
+ *              main函数中只执行一次的scan语句, 若输入已知则替换为赋值,
+ *              再在main函数内做常量传播与常量折叠, 得到只读取未知输入的剩余程序
+ **/
+public class Specializer {
+    // 缓存的特化程序数量上限
+    private static final int CACHE_CAPACITY = 64;
+    // 特化程序缓存, 键为原程序与已知输入
+    private static final Map<String, Specializer> cache = new LinkedHashMap<String, Specializer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Specializer> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    // 特化后的中间代码
+    private List<Quadruple> codes = new ArrayList<>();
+    // 特化后的函数入口地址
+    public Map<String, Integer> funcInstrMap = new HashMap<>();
+    // 优化信息
+    private StringBuilder optimStringBuilder = new StringBuilder();
+
+    /**
+     * 常量传播中已知的值
+     */
+    private static class Constant {
+        final boolean isInt;
+        final int intValue;
+        final double realValue;
+
+        Constant(int intValue) {
+            this.isInt = true;
+            this.intValue = intValue;
+            this.realValue = intValue;
+        }
+
+        Constant(double realValue) {
+            this.isInt = false;
+            this.intValue = (int) realValue;
+            this.realValue = realValue;
+        }
+    }
+
+    private Specializer() {
+    }
+
+    /**
+     * 获取程序针对已知输入的特化版本, 相同的程序和输入直接返回缓存
+     * @param generator 已生成中间代码的生成器
+     * @param knownInputs main函数中scan的变量名 -> 已知输入值(Integer或Double)
+     */
+    public static Specializer specialize(InterGenerator generator, Map<String, ? extends Number> knownInputs) {
+        String key = generator.getFormattedCodes() + generator.funcInstrMap + new TreeMap<>(knownInputs);
+        synchronized (cache) {
+            Specializer specializer = cache.get(key);
+            if (specializer == null) {
+                specializer = new Specializer();
+                specializer.run(generator.getCodes(), generator.funcInstrMap, knownInputs);
+                cache.put(key, specializer);
+            }
+            return specializer;
+        }
+    }
+
+    public List<Quadruple> getCodes() {
+        return codes;
+    }
+
+    /**
+     * 获取优化信息
+     */
+    public String getOptimInfo() {
+        if (optimStringBuilder.length()==0) {
+            return null;
+        }
+        return optimStringBuilder.toString();
+    }
+
+    /**
+     * 复制原程序后进行特化
+     */
+    private void run(List<Quadruple> origin, Map<String, Integer> originFuncMap, Map<String, ? extends Number> knownInputs) {
+        for (Quadruple code : origin) {
+            codes.add(copyOf(code));
+        }
+        funcInstrMap.putAll(originFuncMap);
+        if (!funcInstrMap.containsKey("main")) {
+            return;
+        }
+        int mainStart = funcInstrMap.get("main");
+        int mainEnd = codes.size();
+        for (int entry : funcInstrMap.values()) {
+            if (entry > mainStart && entry < mainEnd) {
+                mainEnd = entry;
+            }
+        }
+
+        boolean[] inLoop = markLoops(mainStart, mainEnd);
+        replaceKnownScans(mainStart, mainEnd, inLoop, knownInputs);
+        boolean[] removed = propagateConstants(mainStart, mainEnd);
+        removeCodes(removed);
+    }
+
+    /**
+     * 标记main函数中处于循环内的指令
+     * 回跳指令与其目标之间的指令都可能执行多次
+     */
+    private boolean[] markLoops(int start, int end) {
+        boolean[] inLoop = new boolean[codes.size()];
+        for (int i = start; i < end; i++) {
+            Quadruple code = codes.get(i);
+            if (code.isJump() && code.jumpLocation <= i) {
+                for (int j = code.jumpLocation; j <= i; j++) {
+                    inLoop[j] = true;
+                }
+            }
+        }
+        return inLoop;
+    }
+
+    /**
+     * 只执行一次且输入已知的scan替换为字面量赋值
+     * 同一变量被scan多次时已知值只对应其中一次, 这些scan都保留
+     */
+    private void replaceKnownScans(int start, int end, boolean[] inLoop, Map<String, ? extends Number> knownInputs) {
+        // 变量名 -> main中scan它的次数
+        Map<String, Integer> scanCounts = new HashMap<>();
+        for (int i = start; i < end; i++) {
+            if (codes.get(i).operation.equals(CodeConstant.SCAN)) {
+                scanCounts.merge(codes.get(i).dest, 1, Integer::sum);
+            }
+        }
+        for (int i = start; i < end; i++) {
+            Quadruple code = codes.get(i);
+            if (!code.operation.equals(CodeConstant.SCAN) || inLoop[i] || !knownInputs.containsKey(code.dest)
+                    || scanCounts.get(code.dest) > 1) {
+                continue;
+            }
+            Number value = knownInputs.get(code.dest);
+            Quadruple assign = new Quadruple();
+            assign.operation = CodeConstant.ASSIGN;
+            setLiteral(assign, true, value instanceof Integer ? new Constant(value.intValue()) : new Constant(value.doubleValue()));
+            assign.dest = code.dest;
+            codes.set(i, assign);
+            optimStringBuilder.append("输入").append(code.dest).append("已知, 替换为").append(value).append("\n");
+        }
+    }
+
+    /**
+     * 在main函数内做常量传播与折叠
+     * 在跳转目标处和退出语句块时清空已知值
+     * @return 可以删除的指令
+     */
+    private boolean[] propagateConstants(int start, int end) {
+        boolean[] removed = new boolean[codes.size()];
+        boolean[] jumpTargets = new boolean[codes.size() + 1];
+        for (Quadruple code : codes) {
+            if (code.isJump()) {
+                jumpTargets[code.jumpLocation] = true;
+            }
+            if (code.switchTable != null) {
+                for (int target : code.switchTable.getTargets()) {
+                    jumpTargets[target] = true;
+                }
+            }
+        }
+        // 变量名 -> 已知值
+        Map<String, Constant> known = new HashMap<>();
+        // main中声明的变量 -> 是否是int
+        Map<String, Boolean> declaredTypes = new HashMap<>();
+        // 折叠为常量的临时变量 -> 定义所在行
+        Map<String, Integer> foldedTemps = new HashMap<>();
+
+        for (int i = start; i < end; i++) {
+            if (jumpTargets[i]) {
+                known.clear();
+            }
+            Quadruple code = codes.get(i);
+            switch (code.operation) {
+                case CodeConstant.OUT:
+                    known.clear();
+                    declaredTypes.clear();
+                    break;
+                case CodeConstant.JMP:
+                    substitute(code, known);
+                    known.clear();
+                    break;
+                case CodeConstant.FOR_LE:
+                case CodeConstant.FOR_LE_EQ:
+                    // 循环变量被改写, 之后是循环出口或回跳
+                    known.clear();
+                    break;
+                case CodeConstant.INT:
+                case CodeConstant.REAL:
+                    substitute(code, known);
+                    boolean isInt = code.operation.equals(CodeConstant.INT);
+                    declaredTypes.put(code.dest, isInt);
+                    updateKnown(known, code.dest, isInt, code);
+                    break;
+                case CodeConstant.ASSIGN:
+                    substitute(code, known);
+                    Boolean type = declaredTypes.get(code.dest);
+                    if (type == null) {
+                        known.remove(code.dest);
+                    } else {
+                        updateKnown(known, code.dest, type, code);
+                    }
+                    break;
+                case CodeConstant.PLUS:
+                case CodeConstant.MINUS:
+                case CodeConstant.MUL:
+                case CodeConstant.DIV:
+                    substitute(code, known);
+                    Constant result = foldArithmetic(code);
+                    if (result == null) {
+                        known.remove(code.dest);
+                    } else {
+                        known.put(code.dest, result);
+                        foldedTemps.put(code.dest, i);
+                    }
+                    break;
+                case CodeConstant.SQRT:
+                case CodeConstant.POW:
+                case CodeConstant.ABS:
+                case CodeConstant.MIN:
+                case CodeConstant.MAX:
+                case CodeConstant.FLOOR:
+                    substitute(code, known);
+                    Constant value = foldBuiltin(code);
+                    if (value == null) {
+                        known.remove(code.dest);
+                    } else {
+                        known.put(code.dest, value);
+                        foldedTemps.put(code.dest, i);
+                    }
+                    break;
+                case CodeConstant.LE:
+                case CodeConstant.EQ:
+                case CodeConstant.NEQ:
+                case CodeConstant.GR:
+                case CodeConstant.GR_EQ:
+                case CodeConstant.LE_EQ:
+                case CodeConstant.VEC_LE:
+                case CodeConstant.VEC_LE_EQ:
+                case CodeConstant.RED_LE:
+                case CodeConstant.RED_LE_EQ:
+                    substitute(code, known);
+                    foldCondition(code, i, removed, jumpTargets);
+                    break;
+                case CodeConstant.PRINT:
+                case CodeConstant.SWITCH:
+                case CodeConstant.PLUS_ASSIGN:
+                case CodeConstant.MINUS_ASSIGN:
+                case CodeConstant.MUL_ASSIGN:
+                case CodeConstant.DIV_ASSIGN:
+                case CodeConstant.ARG:
+                case CodeConstant.RETURN:
+                case CodeConstant.ARR_ACC:
+                case CodeConstant.ARR_ACC_2D:
+                case CodeConstant.INT_ARR:
+                case CodeConstant.REAL_ARR:
+                case CodeConstant.POOL_INT_ARR:
+                case CodeConstant.POOL_REAL_ARR:
+                case CodeConstant.CHAN:
+                case CodeConstant.SEND:
+                    substitute(code, known);
+                    if (code.dest != null) {
+                        known.remove(code.dest);
+                    }
+                    break;
+                case CodeConstant.PAR_LE:
+                case CodeConstant.PAR_LE_EQ:
+                    // 循环体以不同的循环变量值多次执行
+                    known.clear();
+                    break;
+                default:
+                    if (code.dest != null) {
+                        known.remove(code.dest);
+                    }
+            }
+        }
+
+        // 所有使用处都已替换为字面量的临时变量, 不再需要计算
+        for (Map.Entry<String, Integer> entry : foldedTemps.entrySet()) {
+            if (!isReferenced(entry.getKey())) {
+                removed[entry.getValue()] = true;
+                optimStringBuilder.append("临时变量").append(entry.getKey()).append("常量折叠\n");
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 声明或赋值后更新变量的已知值
+     */
+    private void updateKnown(Map<String, Constant> known, String name, boolean isInt, Quadruple code) {
+        Constant value = literalOf(code.firstOperandType, code.firstOperand);
+        if (value == null) {
+            known.remove(name);
+        } else if (isInt) {
+            // 以变量类型进行类型转换
+            known.put(name, new Constant(value.intValue));
+        } else {
+            known.put(name, new Constant(value.realValue));
+        }
+    }
+
+    /**
+     * 把已知值的标识符操作数替换为字面量
+     */
+    private void substitute(Quadruple code, Map<String, Constant> known) {
+        if (code.firstOperandType == OperandType.IDENTIFIER && known.containsKey(code.firstOperand.name)) {
+            setLiteral(code, true, known.get(code.firstOperand.name));
+        }
+        if (code.secondOperandType == OperandType.IDENTIFIER && known.containsKey(code.secondOperand.name)) {
+            setLiteral(code, false, known.get(code.secondOperand.name));
+        }
+    }
+
+    /**
+     * 两个操作数都是字面量时计算算术结果
+     * 运算规则与解释器一致
+     */
+    private Constant foldArithmetic(Quadruple code) {
+        Constant left = literalOf(code.firstOperandType, code.firstOperand);
+        Constant right = literalOf(code.secondOperandType, code.secondOperand);
+        if (left == null || right == null) {
+            return null;
+        }
+        boolean isInt = left.isInt && right.isInt;
+        switch (code.operation) {
+            case CodeConstant.PLUS:
+                return isInt ? new Constant(left.intValue + right.intValue) : new Constant(left.realValue + right.realValue);
+            case CodeConstant.MINUS:
+                return isInt ? new Constant(left.intValue - right.intValue) : new Constant(left.realValue - right.realValue);
+            case CodeConstant.MUL:
+                return isInt ? new Constant(left.intValue * right.intValue) : new Constant(left.realValue * right.realValue);
+            case CodeConstant.DIV:
+                // 第一操作数是除数, 有0时留到运行时处理
+                if (isInt) {
+                    return left.intValue == 0 || right.intValue == 0 ? null : new Constant(right.intValue / left.intValue);
+                }
+                return Math.abs(left.realValue) < 1e-10 || Math.abs(right.realValue) < 1e-10 ?
+                        null : new Constant(right.realValue / left.realValue);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 参数都是字面量时计算内建函数的结果
+     */
+    private Constant foldBuiltin(Quadruple code) {
+        Constant first = literalOf(code.firstOperandType, code.firstOperand);
+        Constant second = code.secondOperandType == OperandType.NULL ? new Constant(0)
+                : literalOf(code.secondOperandType, code.secondOperand);
+        if (first == null || second == null) {
+            return null;
+        }
+        boolean isInt = MathBuiltins.isIntResult(code.operation, first.isInt, second.isInt);
+        double value = MathBuiltins.apply(code.operation, first.realValue, second.realValue, isInt);
+        return isInt ? new Constant((int) value) : new Constant(value);
+    }
+
+    /**
+     * 关系运算的两个操作数都是字面量时, 直接决定后面的条件跳转
+     * 条件为真则删除关系运算和条件跳转, 为假则改为无条件跳转
+     */
+    private void foldCondition(Quadruple code, int index, boolean[] removed, boolean[] jumpTargets) {
+        Constant left = literalOf(code.firstOperandType, code.firstOperand);
+        Constant right = literalOf(code.secondOperandType, code.secondOperand);
+        if (left == null || right == null || index + 1 >= codes.size()
+                || jumpTargets[index + 1] || !codes.get(index + 1).operation.equals(CodeConstant.JMP_WITH_CONDITION)) {
+            return;
+        }
+        double operand1 = left.realValue, operand2 = right.realValue;
+        boolean result;
+        switch (code.operation) {
+            case CodeConstant.LE:
+            case CodeConstant.VEC_LE:
+            case CodeConstant.RED_LE:
+                result = operand1 < operand2;
+                break;
+            case CodeConstant.GR:
+                result = operand1 > operand2;
+                break;
+            case CodeConstant.LE_EQ:
+            case CodeConstant.VEC_LE_EQ:
+            case CodeConstant.RED_LE_EQ:
+                result = operand1 <= operand2;
+                break;
+            case CodeConstant.GR_EQ:
+                result = operand1 >= operand2;
+                break;
+            case CodeConstant.EQ:
+                result = operand1 == operand2;
+                break;
+            default:
+                result = operand1 != operand2;
+        }
+        removed[index] = true;
+        if (result) {
+            removed[index + 1] = true;
+        } else {
+            Quadruple jump = new Quadruple(CodeConstant.JMP);
+            jump.jumpLocation = codes.get(index + 1).jumpLocation;
+            codes.set(index + 1, jump);
+        }
+        optimStringBuilder.append("第").append(index).append("行条件恒为").append(result).append("\n");
+    }
+
+    /**
+     * 标识符是否仍被某条指令作为操作数使用
+     */
+    private boolean isReferenced(String name) {
+        for (Quadruple code : codes) {
+            if ((code.firstOperandType == OperandType.IDENTIFIER && code.firstOperand.name.equals(name))
+                    || (code.secondOperandType == OperandType.IDENTIFIER && code.secondOperand.name.equals(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 删除指令, 并重定位跳转位置和函数入口地址
+     * 被删除指令的位置映射到其后第一条保留的指令
+     */
+    private void removeCodes(boolean[] removed) {
+        int[] newIndex = new int[codes.size() + 1];
+        int count = 0;
+        for (int i = 0; i < codes.size(); i++) {
+            newIndex[i] = count;
+            if (!removed[i]) {
+                count++;
+            }
+        }
+        newIndex[codes.size()] = count;
+        List<Quadruple> result = new ArrayList<>(count);
+        for (int i = 0; i < codes.size(); i++) {
+            if (removed[i]) {
+                continue;
+            }
+            Quadruple code = codes.get(i);
+            if (code.isJump()) {
+                code.relocate(location -> newIndex[location]);
+            }
+            result.add(code);
+        }
+        funcInstrMap.replaceAll((name, entry) -> newIndex[entry]);
+        codes = result;
+    }
+
+    /**
+     * 取出字面量操作数的值, 不是字面量时返回null
+     */
+    private static Constant literalOf(OperandType type, Operand operand) {
+        if (type == OperandType.INT_LITERAL) {
+            return new Constant(((IntOperand) operand).intLiteral);
+        } else if (type == OperandType.REAL_LITERAL) {
+            return new Constant(((RealOperand) operand).realLiteral);
+        }
+        return null;
+    }
+
+    /**
+     * 把操作数设为字面量
+     * @param isFirst 是否是第一个操作数
+     */
+    private static void setLiteral(Quadruple code, boolean isFirst, Constant value) {
+        OperandType type = value.isInt ? OperandType.INT_LITERAL : OperandType.REAL_LITERAL;
+        Operand operand = value.isInt ? new IntOperand(value.intValue) : new RealOperand(value.realValue);
+        if (isFirst) {
+            code.firstOperandType = type;
+            code.firstOperand = operand;
+        } else {
+            code.secondOperandType = type;
+            code.secondOperand = operand;
+        }
+    }
+
+    /**
+     * 复制指令, 特化时修改副本而不影响原程序
+     * 进入和退出语句块的指令没有状态, 可以共享
+     */
+    private static Quadruple copyOf(Quadruple code) {
+        if (code == CodeConstant.inCode || code == CodeConstant.outCode) {
+            return code;
+        }
+        Quadruple copy = new Quadruple(code.operation);
+        copy.firstOperand = code.firstOperand;
+        copy.secondOperand = code.secondOperand;
+        copy.firstOperandType = code.firstOperandType;
+        copy.secondOperandType = code.secondOperandType;
+        copy.dest = code.dest;
+        copy.switchTable = code.switchTable == null ? null : code.switchTable.copy();
+        copy.array = code.array;
+        copy.jumpLocation = code.jumpLocation;
+        return copy;
+    }
+}
@@ -0,0 +1,118 @@
+package semantics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * @description switch的跳转表
+ *              case值紧凑(至少填满一半)时用数组按值直接索引, 否则在有序的case值上二分查找
+ *              没有对应case的值跳到switch指令自己的jumpLocation, 即default或switch之后
+ **/
+public class SwitchTable {
+    // 稠密表: 值减去最小值为下标, 没有对应case的位置为-1
+    private final int min;
+    private final int[] denseTargets;
+    // 稀疏表: 有序的case值和对应的跳转位置
+    private final int[] keys;
+    private final int[] targets;
+
+    private SwitchTable(int min, int[] denseTargets, int[] keys, int[] targets) {
+        this.min = min;
+        this.denseTargets = denseTargets;
+        this.keys = keys;
+        this.targets = targets;
+    }
+
+    /**
+     * @param cases case值 -> 跳转位置
+     */
+    static SwitchTable build(SortedMap<Integer, Integer> cases) {
+        if (cases.isEmpty()) {
+            return new SwitchTable(0, null, new int[0], new int[0]);
+        }
+        int min = cases.firstKey();
+        long range = (long) cases.lastKey() - min + 1;
+        if (range <= 2L * cases.size()) {
+            int[] denseTargets = new int[(int) range];
+            Arrays.fill(denseTargets, -1);
+            for (Map.Entry<Integer, Integer> entry : cases.entrySet()) {
+                denseTargets[entry.getKey() - min] = entry.getValue();
+            }
+            return new SwitchTable(min, denseTargets, null, null);
+        }
+        int[] keys = new int[cases.size()];
+        int[] targets = new int[cases.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : cases.entrySet()) {
+            keys[i] = entry.getKey();
+            targets[i] = entry.getValue();
+            i++;
+        }
+        return new SwitchTable(0, null, keys, targets);
+    }
+
+    /**
+     * @return 值对应case的位置, 没有时返回-1
+     */
+    public int lookup(int value) {
+        if (denseTargets != null) {
+            long index = (long) value - min;
+            return index < 0 || index >= denseTargets.length ? -1 : denseTargets[(int) index];
+        }
+        int i = Arrays.binarySearch(keys, value);
+        return i < 0 ? -1 : targets[i];
+    }
+
+    public boolean isDense() {
+        return denseTargets != null;
+    }
+
+    /**
+     * 所有case的跳转位置
+     */
+    public int[] getTargets() {
+        if (denseTargets == null) {
+            return targets.clone();
+        }
+        return Arrays.stream(denseTargets).filter(target -> target >= 0).toArray();
+    }
+
+    /**
+     * 重定位所有跳转位置
+     */
+    void relocate(IntUnaryOperator mapping) {
+        int[] array = denseTargets != null ? denseTargets : targets;
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] >= 0) {
+                array[i] = mapping.applyAsInt(array[i]);
+            }
+        }
+    }
+
+    SwitchTable copy() {
+        return new SwitchTable(min, denseTargets == null ? null : denseTargets.clone(), keys,
+                targets == null ? null : targets.clone());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(denseTargets != null ? "table{" : "search{");
+        boolean first = true;
+        if (denseTargets != null) {
+            for (int i = 0; i < denseTargets.length; i++) {
+                if (denseTargets[i] >= 0) {
+                    builder.append(first ? "" : " ").append(min + i).append(':').append(denseTargets[i]);
+                    first = false;
+                }
+            }
+        } else {
+            for (int i = 0; i < keys.length; i++) {
+                builder.append(first ? "" : " ").append(keys[i]).append(':').append(targets[i]);
+                first = false;
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
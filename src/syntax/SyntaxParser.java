@@ -14,6 +14,21 @@ import java.util.*;
  * @date 2019/10/22 16:36
  **/
 public class SyntaxParser {
+    // 内建函数名 -> 参数个数, 有返回值的可以出现在算术表达式中, fill、copy、sort作为语句, 都不能重新定义
+    public static final Map<String, Integer> BUILTIN_FUNCS = new HashMap<>();
+    static {
+        BUILTIN_FUNCS.put("sqrt", 1);
+        BUILTIN_FUNCS.put("pow", 2);
+        BUILTIN_FUNCS.put("abs", 1);
+        BUILTIN_FUNCS.put("min", 2);
+        BUILTIN_FUNCS.put("max", 2);
+        BUILTIN_FUNCS.put("floor", 1);
+        BUILTIN_FUNCS.put("fill", 2);
+        BUILTIN_FUNCS.put("copy", 3);
+        BUILTIN_FUNCS.put("sort", 1);
+        BUILTIN_FUNCS.put("sum", 1);
+    }
+
     // 词法分析器
     private Lexer lexer;
     // 当前token
@@ -31,11 +46,20 @@ public class SyntaxParser {
     private List<FuncDeclaration> toBeDefinedFuncs = new LinkedList<>();
     // 已定义的函数
     private List<FuncDeclaration> definedFuncs = new LinkedList<>();
+    // 已在运行中的程序里定义的函数, 单独编译某个函数时可直接调用
+    private Set<String> knownFuncs = new HashSet<>();
 
     private HashSet<TokenType> FIRST_STATEMENT = new HashSet<TokenType>(){{
         add(TokenType.IDENTIFIER);
         add(TokenType.IF);
         add(TokenType.WHILE);
+        add(TokenType.FOR);
+        add(TokenType.SWITCH);
+        add(TokenType.PARALLEL);
+        add(TokenType.SPAWN);
+        add(TokenType.CHAN);
+        add(TokenType.SEND);
+        add(TokenType.RECV);
         add(TokenType.PRINT);
         add(TokenType.SCAN);
     }};
@@ -60,6 +84,14 @@ public class SyntaxParser {
         this.lexer = lexicalParser;
     }
 
+    /**
+     * 单独编译函数时, 登记程序中已有的函数名
+     * 调用这些函数不会报告未定义, 定义同名函数也不算重定义
+     */
+    public void addKnownFunctions(Collection<String> funcNames) {
+        knownFuncs.addAll(funcNames);
+    }
+
 
     public static void main(String[] args) {
         Lexer lexer = new Lexer("E:\\desktop\\MyCMMInterpreter\\test_func_call2.cmm");
@@ -103,7 +135,16 @@ public class SyntaxParser {
     public void startParse() throws GramException {
         while (true) {
             //TreeNode node = parseStatement(false, true);
-            TreeNode node = parseFunction();
+            if (curToken == null) {
+                getNextToken();
+            }
+            TreeNode node;
+            if (checkToken(TokenType.INT) || checkToken(TokenType.REAL) || checkToken(TokenType.CHAR)) {
+                // 函数之外的全局变量声明
+                node = parseDeclarationStatement(curToken.getType());
+            } else {
+                node = parseFunction();
+            }
             if(node.getType() == TreeNodeType.NULL) {
                 break;
             }
@@ -142,6 +183,9 @@ public class SyntaxParser {
         if (curToken == null) {
             getNextToken();
         }
+        if (checkToken(TokenType.EXTERN)) {
+            return parseExternFunction();
+        }
         if (!checkToken(TokenType.FUNC)) {
             // 不符合函数定义
             return node;
@@ -157,7 +201,7 @@ public class SyntaxParser {
         // 右结点: 具体函数实现的语句块
         node.right = parseStatementBlock(true);
         FuncDeclaration funcDeclaration = new FuncDeclaration(funcName, node.left.left.getArgList(), node.left.right.getType());
-        if (definedFuncs.contains(funcDeclaration)) {
+        if (definedFuncs.contains(funcDeclaration) || BUILTIN_FUNCS.containsKey(funcName)) {
             // 函数重定义异常
             funcRedefinitionException(funcName);
         } else {
@@ -176,6 +220,29 @@ public class SyntaxParser {
     }
 
 
+    /**
+     * 解析extern函数声明
+     * extern func 函数名 ( 参数列表 ) 返回值 ;
+     */
+    private TreeNode parseExternFunction() {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.EXTERN_FUNCTION);
+        matchTokenNext(TokenType.FUNC, true);
+        getNextToken();
+        String funcName = curToken.getStringValue();
+        node.setSymbolName(funcName);
+        node.left = parseFuncSignature();
+        matchTokenNext(TokenType.SEMICOLON, true);
+        FuncDeclaration funcDeclaration = new FuncDeclaration(funcName, node.left.left.getArgList(), node.left.right.getType());
+        if (definedFuncs.contains(funcDeclaration) || BUILTIN_FUNCS.containsKey(funcName)) {
+            funcRedefinitionException(funcName);
+        } else {
+            definedFuncs.add(funcDeclaration);
+            toBeDefinedFuncs.removeIf(funcDeclaration1 -> funcDeclaration1.equals(funcDeclaration));
+        }
+        return node;
+    }
+
     /**
      * 解析函数签名
      */
@@ -244,6 +311,9 @@ public class SyntaxParser {
                 case CHAR:
                     node.setType(TreeNodeType.CHAR_DECLARATION);
                     break;
+                case CHAN:
+                    node.setType(TreeNodeType.CHAN_DECLARATION);
+                    break;
                 default:
                     wrongArgTypeException(curToken.getLineNum());
                     break loop;
@@ -261,8 +331,12 @@ public class SyntaxParser {
                 wrongArgTypeException(curToken.getLineNum());
                 break;
             }
-            // 再匹配一个逗号
             getNextToken();
+            if (curToken.getType() == TokenType.L_BRACKET) {
+                // 数组形参 int a[] 或 int a[][], 不写长度
+                parseArrayArg(node);
+            }
+            // 再匹配一个逗号
             if (curToken.getType()!=TokenType.COMMA) {
                 if (curToken.getType() == TokenType.R_PARENTHESIS) {
                     // 结束
@@ -280,6 +354,39 @@ public class SyntaxParser {
         return argList;
     }
 
+    /**
+     * 解析数组形参的方括号, 从第一个左方括号开始, 结束后指向方括号之后的token
+     * 形参结点改为数组声明, 二维数组的right为DIMENSIONS
+     */
+    private void parseArrayArg(TreeNode node) {
+        switch (node.getType()) {
+            case INT_DECLARATION:
+            case CHAR_DECLARATION:
+                node.setType(TreeNodeType.INT_ARRAY_DECLARATION);
+                break;
+            case REAL_DECLARATION:
+                node.setType(TreeNodeType.REAL_ARRAY_DECLARATION);
+                break;
+            default:
+                // 没有通道数组
+                wrongArgTypeException(curToken.getLineNum());
+                break;
+        }
+        int dimensions = 0;
+        while (curToken.getType() == TokenType.L_BRACKET) {
+            matchTokenNext(TokenType.R_BRACKET, true);
+            dimensions++;
+            getNextToken();
+        }
+        if (dimensions > 2) {
+            tooManyDimensionsException(curToken.getLineNum());
+        } else if (dimensions == 2) {
+            TreeNode dimensionsNode = new TreeNode();
+            dimensionsNode.setType(TreeNodeType.DIMENSIONS);
+            node.right = dimensionsNode;
+        }
+    }
+
     /**
      * 解析单条语句
      * @param isRecursive 是否处于在递归调用中
@@ -319,6 +426,27 @@ public class SyntaxParser {
                 case WHILE:
                     node = parseWhileStatement();
                     break;
+                case FOR:
+                    node = parseForStatement();
+                    break;
+                case SWITCH:
+                    node = parseSwitchStatement();
+                    break;
+                case PARALLEL:
+                    node = parseParallelWhileStatement();
+                    break;
+                case SPAWN:
+                    node = parseSpawnStatement();
+                    break;
+                case CHAN:
+                    node = parseChanDeclaration();
+                    break;
+                case SEND:
+                    node = parseSendStatement();
+                    break;
+                case RECV:
+                    node = parseRecvStatement();
+                    break;
                 case L_BRACE:
                     node = parseStatementBlock(false);
                     break;
@@ -337,7 +465,7 @@ public class SyntaxParser {
                     break;
                 case FUNC_CALL:
                     // 函数调用
-                    node = parseFuncCall();
+                    node = isBuiltinCall(curToken) ? parseBuiltinStatement() : parseFuncCall();
                     break;
                 default:
                     // token异常, 直接错误恢复
@@ -365,7 +493,7 @@ public class SyntaxParser {
         node.setType(TreeNodeType.FUNC_CALL);
         node.setSymbolName(curToken.getStringValue());
         FuncDeclaration funcDeclaration = new FuncDeclaration(curToken.getStringValue());
-        if (definedFuncs.contains(funcDeclaration)) {
+        if (definedFuncs.contains(funcDeclaration) || knownFuncs.contains(funcDeclaration.name)) {
             // 已经被定义了, OK
         } else {
             // 该函数未被定义, 等待被定义
@@ -513,7 +641,7 @@ public class SyntaxParser {
             // 右边是算术表达式 或 函数名
             // 需要向后查看一个token
             getNextToken();
-            if (curToken.getType() == TokenType.FUNC_CALL) {
+            if (curToken.getType() == TokenType.FUNC_CALL && !isBuiltinCall(curToken)) {
                 // 函数调用的返回
                 node.right = parseFuncCall();
             } else {
@@ -527,7 +655,18 @@ public class SyntaxParser {
             isArray = true;
             node.right = parseArithmeticExpression();
             matchToken(TokenType.R_BRACKET);
-            matchTokenNext(TokenType.SEMICOLON, true);
+            getNextToken();
+            if (checkToken(TokenType.L_BRACKET)) {
+                // 二维数组 a[n][m]
+                TreeNode dimensions = new TreeNode();
+                dimensions.setType(TreeNodeType.DIMENSIONS);
+                dimensions.left = node.right;
+                dimensions.right = parseArithmeticExpression();
+                node.right = dimensions;
+                matchToken(TokenType.R_BRACKET);
+                getNextToken();
+            }
+            matchToken(TokenType.SEMICOLON, true);
         } else if(checkToken(TokenType.SEMICOLON)) {
             // 单纯的声明变量
         } else {
@@ -587,6 +726,14 @@ public class SyntaxParser {
      * 解析赋值语句
      */
     private TreeNode parseAssignStatement() throws GramException {
+        return parseAssignStatement(TokenType.SEMICOLON);
+    }
+
+    /**
+     * 解析赋值语句
+     * @param end 结束的token, for的步进语句以)结束
+     */
+    private TreeNode parseAssignStatement(TokenType end) throws GramException {
         TreeNode node = new TreeNode();
         node.setType(TreeNodeType.ASSIGN);
         TreeNode left = new TreeNode();
@@ -610,7 +757,7 @@ public class SyntaxParser {
                 // 右边可能是函数调用的返回, 可能是算术表达式
                 // 需要向后查看一个token
                 getNextToken();
-                if (curToken.getType() == TokenType.FUNC_CALL) {
+                if (curToken.getType() == TokenType.FUNC_CALL && !isBuiltinCall(curToken)) {
                     // 函数调用的返回
                     node.right = parseFuncCall();
                 } else {
@@ -618,19 +765,34 @@ public class SyntaxParser {
                     node.right = parseArithmeticExpression();
                 }
 
-                matchToken(TokenType.SEMICOLON, true);
+                matchToken(end, true);
                 break;
             case L_BRACKET:
-                // 左值是数组访问
+                // 左值是数组访问, 二维数组有两组中括号
                 do {
+                    do {
+                        tokens.add(curToken);
+                        getNextToken();
+                    } while (curToken.getType() != TokenType.R_BRACKET);
                     tokens.add(curToken);
                     getNextToken();
-                } while (curToken.getType() != TokenType.R_BRACKET);
-                tokens.add(curToken);
+                } while (checkToken(TokenType.L_BRACKET));
                 node.left = parseArrayAccess(tokens);
-                matchTokenNext(TokenType.ASSIGN);
-                node.right = parseArithmeticExpression();
-                matchToken(TokenType.SEMICOLON, true);
+                if (checkToken(TokenType.ASSIGN)) {
+                    node.right = parseArithmeticExpression();
+                    matchToken(end, true);
+                } else {
+                    parseCompoundAssign(node, end);
+                }
+                break;
+            case PLUS_ASSIGN:
+            case MINUS_ASSIGN:
+            case MULTIPLY_ASSIGN:
+            case DIVIDE_ASSIGN:
+            case INCREMENT:
+            case DECREMENT:
+                node.left = left;
+                parseCompoundAssign(node, end);
                 break;
             default:
                 // 两个都不是
@@ -641,6 +803,40 @@ public class SyntaxParser {
         return node;
     }
 
+    /**
+     * 解析复合赋值和自增自减, curToken为运算符
+     * i++和i--分别作为i += 1和i -= 1
+     */
+    private void parseCompoundAssign(TreeNode node, TokenType end) throws GramException {
+        switch (curToken.getType()) {
+            case PLUS_ASSIGN:
+                node.setType(TreeNodeType.PLUS_ASSIGN);
+                break;
+            case MINUS_ASSIGN:
+                node.setType(TreeNodeType.MINUS_ASSIGN);
+                break;
+            case MULTIPLY_ASSIGN:
+                node.setType(TreeNodeType.MULTIPLY_ASSIGN);
+                break;
+            case DIVIDE_ASSIGN:
+                node.setType(TreeNodeType.DIVIDE_ASSIGN);
+                break;
+            case INCREMENT:
+            case DECREMENT:
+                node.setType(checkToken(TokenType.INCREMENT) ? TreeNodeType.PLUS_ASSIGN : TreeNodeType.MINUS_ASSIGN);
+                TreeNode one = new TreeNode();
+                one.setType(TreeNodeType.INT_LITERAL);
+                one.setIntValue(1);
+                node.right = one;
+                matchTokenNext(end, true);
+                return;
+            default:
+                expectedException(TokenType.ASSIGN, curToken.getType(), curToken.getLineNum(), false);
+        }
+        node.right = parseArithmeticExpression();
+        matchToken(end, true);
+    }
+
     /**
      * 解析输出语句
      */
@@ -686,6 +882,89 @@ public class SyntaxParser {
     }
 
 
+    /**
+     * 解析并发任务 spawn f(args);
+     */
+    private TreeNode parseSpawnStatement() throws GramException {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.SPAWN);
+        getNextToken();
+        if (!checkToken(TokenType.FUNC_CALL)) {
+            expectedException(TokenType.FUNC_CALL, curToken.getType(), curToken.getLineNum(), true);
+            node.setType(TreeNodeType.EMPTY);
+            return node;
+        }
+        node.left = parseFuncCall();
+        return node;
+    }
+
+    /**
+     * 解析通道声明 chan c[容量];
+     */
+    private TreeNode parseChanDeclaration() throws GramException {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.CHAN_DECLARATION);
+        matchTokenNext(TokenType.IDENTIFIER);
+        TreeNode left = new TreeNode();
+        left.setType(TreeNodeType.IDENTIFIER);
+        left.setSymbolName(curToken.getStringValue());
+        node.left = left;
+        // 容量不能省略
+        getNextToken();
+        if (!checkToken(TokenType.L_BRACKET)) {
+            expectedException(TokenType.L_BRACKET, curToken.getType(), curToken.getLineNum(), true);
+            node.setType(TreeNodeType.EMPTY);
+            return node;
+        }
+        node.right = parseArithmeticExpression();
+        matchToken(TokenType.R_BRACKET);
+        matchTokenNext(TokenType.SEMICOLON, true);
+        return node;
+    }
+
+    /**
+     * 解析发送语句 send(c, 表达式);
+     */
+    private TreeNode parseSendStatement() throws GramException {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.SEND);
+        node.left = parseChannelOperand();
+        node.right = parseArithmeticExpression();
+        matchToken(TokenType.R_PARENTHESIS, true);
+        matchTokenNext(TokenType.SEMICOLON, true);
+        return node;
+    }
+
+    /**
+     * 解析接收语句 recv(c, 变量);
+     */
+    private TreeNode parseRecvStatement() {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.RECV);
+        node.left = parseChannelOperand();
+        TreeNode right = new TreeNode();
+        right.setType(TreeNodeType.IDENTIFIER);
+        matchTokenNext(TokenType.IDENTIFIER);
+        right.setSymbolName(curToken.getStringValue());
+        node.right = right;
+        matchTokenNext(TokenType.R_PARENTHESIS, true);
+        matchTokenNext(TokenType.SEMICOLON, true);
+        return node;
+    }
+
+    /**
+     * 解析收发语句开头的 (c, 返回通道标识符结点
+     */
+    private TreeNode parseChannelOperand() {
+        matchTokenNext(TokenType.L_PARENTHESIS, true);
+        TreeNode channel = new TreeNode();
+        channel.setType(TreeNodeType.IDENTIFIER);
+        matchTokenNext(TokenType.IDENTIFIER);
+        channel.setSymbolName(curToken.getStringValue());
+        matchTokenNext(TokenType.COMMA, true);
+        return channel;
+    }
+
     /**
      * 解析if语句
      */
@@ -694,7 +973,7 @@ public class SyntaxParser {
         node.setType(TreeNodeType.IF);
         // bool表达式
         matchTokenNext(TokenType.L_PARENTHESIS, true);
-        node.setCondition(parseRelationalExpression());
+        node.setCondition(parseCondition());
         matchToken(TokenType.R_PARENTHESIS, true);
         // 满足条件的语句块
         node.left = parseStatementBlock(true);
@@ -707,7 +986,7 @@ public class SyntaxParser {
                     elseIf.setType(TreeNodeType.ELSE_IF);
                     // 匹配(
                     matchTokenNext(TokenType.L_PARENTHESIS);
-                    elseIf.setCondition(parseRelationalExpression());
+                    elseIf.setCondition(parseCondition());
                     // 匹配)
                     matchToken(TokenType.R_PARENTHESIS, true);
                     elseIf.left = parseStatementBlock(true);
@@ -726,6 +1005,22 @@ public class SyntaxParser {
         return node;
     }
 
+    /**
+     * 解析并行循环 parallel while, 结构与while相同
+     */
+    private TreeNode parseParallelWhileStatement() throws GramException {
+        getNextToken();
+        if (!checkToken(TokenType.WHILE)) {
+            expectedException(TokenType.WHILE, curToken.getType(), curToken.getLineNum(), true);
+            TreeNode node = new TreeNode();
+            node.setType(TreeNodeType.EMPTY);
+            return node;
+        }
+        TreeNode node = parseWhileStatement();
+        node.setType(TreeNodeType.PARALLEL_WHILE);
+        return node;
+    }
+
     /**
      * 解析while语句
      */
@@ -733,13 +1028,119 @@ public class SyntaxParser {
         TreeNode node = new TreeNode();
         node.setType(TreeNodeType.WHILE);
         matchTokenNext(TokenType.L_PARENTHESIS);
-        node.setCondition(parseRelationalExpression());
+        node.setCondition(parseCondition());
         matchToken(TokenType.R_PARENTHESIS);
         node.left = parseStatementBlock(true);
 
         return node;
     }
 
+    /**
+     * 解析for语句
+     * for (初始化; 条件; 步进) 语句块, 初始化可以是声明或赋值, 初始化和步进都可以为空
+     */
+    private TreeNode parseForStatement() throws GramException {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.FOR);
+        matchTokenNext(TokenType.L_PARENTHESIS, true);
+        getNextToken();
+        switch (curToken.getType()) {
+            case INT:
+            case REAL:
+            case CHAR:
+                node.addStatement(parseDeclarationStatement(curToken.getType()));
+                break;
+            case IDENTIFIER:
+                node.addStatement(parseAssignStatement());
+                break;
+            default:
+                // 没有初始化语句
+                matchToken(TokenType.SEMICOLON, true);
+        }
+        node.setCondition(parseCondition());
+        matchToken(TokenType.SEMICOLON, true);
+        getNextToken();
+        if (!checkToken(TokenType.R_PARENTHESIS)) {
+            node.right = parseAssignStatement(TokenType.R_PARENTHESIS);
+        }
+        node.left = parseStatementBlock(true);
+
+        return node;
+    }
+
+    /**
+     * 解析switch语句
+     * switch (表达式) { case 1, 2: 语句序列 case 'a': 语句序列 default: 语句序列 }
+     */
+    private TreeNode parseSwitchStatement() throws GramException {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.SWITCH);
+        matchTokenNext(TokenType.L_PARENTHESIS, true);
+        node.left = parseArithmeticExpression();
+        matchToken(TokenType.R_PARENTHESIS, true);
+        matchTokenNext(TokenType.L_BRACE, true);
+        getNextToken();
+        while (!checkToken(TokenType.R_BRACE)) {
+            if (curToken.getType() == TokenType.EOF) {
+                expectedException(TokenType.R_BRACE, curToken.getType(), curToken.getLineNum(), false);
+                break;
+            }
+            TreeNode branch = new TreeNode();
+            if (checkToken(TokenType.CASE)) {
+                branch.setType(TreeNodeType.CASE);
+                branch.setArgList(parseCaseLabels());
+            } else if (checkToken(TokenType.DEFAULT)) {
+                branch.setType(TreeNodeType.DEFAULT);
+                matchTokenNext(TokenType.COLON, true);
+            } else {
+                // 分支之前的语句, 跳过
+                expectedException(TokenType.CASE, curToken.getType(), curToken.getLineNum(), false);
+                getNextToken();
+                continue;
+            }
+            // 分支的语句直到下一个case、default或}
+            TreeNode block = new TreeNode();
+            block.setType(TreeNodeType.STATEMENT_BLOCK);
+            getNextToken();
+            while (!checkToken(TokenType.CASE) && !checkToken(TokenType.DEFAULT)
+                    && !checkToken(TokenType.R_BRACE) && !checkToken(TokenType.EOF)) {
+                block.addStatement(parseStatement(true, false));
+                getNextToken();
+            }
+            branch.left = block;
+            node.addStatement(branch);
+        }
+
+        return node;
+    }
+
+    /**
+     * 解析case之后以逗号分隔的标签, 直到:
+     * 标签为整型或字符字面量, 可以带负号
+     */
+    private List<TreeNode> parseCaseLabels() {
+        List<TreeNode> labels = new ArrayList<>();
+        do {
+            getNextToken();
+            boolean isNegative = false;
+            if (checkToken(TokenType.MINUS)) {
+                isNegative = true;
+                getNextToken();
+            }
+            if (!checkToken(TokenType.INT_LITERAL)) {
+                expectedException(TokenType.INT_LITERAL, curToken.getType(), curToken.getLineNum(), false);
+                break;
+            }
+            TreeNode label = new TreeNode();
+            label.setType(TreeNodeType.INT_LITERAL);
+            label.setIntValue(curToken.getIntValue());
+            label.setNegative(isNegative);
+            labels.add(label);
+        } while (checkTokenNext(TokenType.COMMA));
+        matchToken(TokenType.COLON, true);
+        return labels;
+    }
+
     /**
      * 解析算术表达式
      */
@@ -769,7 +1170,12 @@ public class SyntaxParser {
         while (true){
             if(iterator.hasNext()) {
                 Token token = iterator.next();
-                if (checkTokenOperand(token)) {
+                if (token.getType() == TokenType.FUNC_CALL) {
+                    // 内建函数调用, 整体作为一个操作数
+                    isPrevOperator = false;
+                    operandStack.push(parseBuiltinCall(token, iterator, tokens, isNegative));
+                    isNegative = false;
+                } else if (checkTokenOperand(token)) {
                     isPrevOperator = false;
                     // token是操作数
                     if (iterator.hasNext()) {
@@ -780,22 +1186,28 @@ public class SyntaxParser {
                             // 指针回退一格
                             iterator.previous();
                         } else {
-                            // 记录用于数组的中括号
+                            // 记录用于数组的中括号, 二维数组有多组
                             int start = iterator.previousIndex();
                             int end;
-                            brackets.push('[');
                             Token aim;
-                            while (!brackets.empty()) {
-                                if (!iterator.hasNext()) {
-                                    parenthMismatchException(token.getLineNum());
-                                    return null;
+                            while (true) {
+                                brackets.push('[');
+                                while (!brackets.empty()) {
+                                    if (!iterator.hasNext()) {
+                                        parenthMismatchException(token.getLineNum());
+                                        return null;
+                                    }
+                                    aim = iterator.next();
+                                    if (aim.getType() == TokenType.L_BRACKET) {
+                                        brackets.push('[');
+                                    } else if (aim.getType() == TokenType.R_BRACKET) {
+                                        brackets.pop();
+                                    }
                                 }
-                                aim = iterator.next();
-                                if (aim.getType() == TokenType.L_BRACKET) {
-                                    brackets.push('[');
-                                } else if (aim.getType() == TokenType.R_BRACKET) {
-                                    brackets.pop();
+                                if (!iterator.hasNext() || tokens.get(iterator.nextIndex()).getType() != TokenType.L_BRACKET) {
+                                    break;
                                 }
+                                iterator.next();
                             }
                             end = iterator.nextIndex();
                             operandStack.push(parseArrayAccess(tokens.subList(start-1, end)));
@@ -837,7 +1249,10 @@ public class SyntaxParser {
                             // 当前操作符优先级更高
                             Token next = iterator.next();
                             TreeNode curOperand;
-                            if (!checkTokenLParenth(next)) {
+                            if (next.getType() == TokenType.FUNC_CALL) {
+                                curOperand = parseBuiltinCall(next, iterator, tokens, isNegative);
+                                isNegative = false;
+                            } else if (!checkTokenLParenth(next)) {
                                 // 下一个token不是左括号
                                 curOperand = tokenToTreeNode(next, isNegative);
                                 // 消耗掉负号
@@ -922,6 +1337,21 @@ public class SyntaxParser {
                 case REAL_LITERAL:
                     tokens.add(curToken);
                     break;
+                case FUNC_CALL:
+                    if (!isBuiltinCall(curToken)) {
+                        // 其他函数的调用不能出现在表达式中
+                        break loop;
+                    }
+                    tokens.add(curToken);
+                    break;
+                case COMMA:
+                    if (s.empty()) {
+                        // 括号之外的逗号, 如调用的参数之间, 表达式结束
+                        break loop;
+                    }
+                    // 内建函数的参数之间
+                    tokens.add(curToken);
+                    break;
                 case L_PARENTHESIS:
                     tokens.add(curToken);
                     s.push('(');
@@ -1000,6 +1430,101 @@ public class SyntaxParser {
         return node;
     }
 
+    /**
+     * 解析条件
+     * condition -> and-condition { || and-condition }
+     * 结束时curToken为条件之后的token
+     */
+    private TreeNode parseCondition() throws GramException {
+        TreeNode node = parseAndCondition();
+        while (checkToken(TokenType.OR)) {
+            TreeNode or = new TreeNode();
+            or.setType(TreeNodeType.OR);
+            or.left = node;
+            or.right = parseAndCondition();
+            node = or;
+        }
+        return node;
+    }
+
+    /**
+     * and-condition -> not-condition { && not-condition }
+     */
+    private TreeNode parseAndCondition() throws GramException {
+        TreeNode node = parseNotCondition();
+        while (checkToken(TokenType.AND)) {
+            TreeNode and = new TreeNode();
+            and.setType(TreeNodeType.AND);
+            and.left = node;
+            and.right = parseNotCondition();
+            node = and;
+        }
+        return node;
+    }
+
+    /**
+     * not-condition -> ! not-condition | ( condition ) | rel-exp
+     * 左括号之后到匹配的右括号之间有关系或逻辑运算符时才是括起来的条件, 否则是算术表达式的括号
+     */
+    private TreeNode parseNotCondition() throws GramException {
+        int savedPtr = tokenPtr;
+        Token savedToken = curToken;
+        getNextToken();
+        if (checkToken(TokenType.NOT)) {
+            TreeNode node = new TreeNode();
+            node.setType(TreeNodeType.NOT);
+            node.left = parseNotCondition();
+            return node;
+        }
+        if (checkToken(TokenType.L_PARENTHESIS) && isParenthesizedCondition()) {
+            TreeNode node = parseCondition();
+            matchToken(TokenType.R_PARENTHESIS, true);
+            getNextToken();
+            return node;
+        }
+        // 回退, 由算术表达式重新读取
+        tokenPtr = savedPtr;
+        curToken = savedToken;
+        return parseRelationalExpression();
+    }
+
+    /**
+     * 当前的左括号与匹配的右括号之间是否有关系或逻辑运算符, 不移动token指针
+     */
+    private boolean isParenthesizedCondition() {
+        int depth = 0;
+        for (int i = tokenPtr; i < lexer.tokenList.size(); i++) {
+            switch (lexer.tokenList.get(i).getType()) {
+                case L_PARENTHESIS:
+                    depth++;
+                    break;
+                case R_PARENTHESIS:
+                    depth--;
+                    if (depth == 0) {
+                        return false;
+                    }
+                    break;
+                case LESS:
+                case LESS_EQ:
+                case GREATER:
+                case GREATER_EQ:
+                case EQUAL:
+                case NOT_EQUAL:
+                case AND:
+                case OR:
+                case NOT:
+                    return true;
+                case SEMICOLON:
+                case L_BRACE:
+                case EOF:
+                    return false;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
     /**
      * 用预期类型匹配下一个token
      */
@@ -1210,8 +1735,45 @@ public class SyntaxParser {
 
     /**
      * 解析数组
+     * 二维数组a[i][j]解析为以a[i]为左结点、j为右结点的访问
      */
     private TreeNode parseArrayAccess(List<Token> tokens) throws GramException {
+        // 第一组中括号结束的位置
+        int depth = 0;
+        int close = 1;
+        do {
+            TokenType type = tokens.get(close).getType();
+            if (type == TokenType.L_BRACKET) {
+                depth++;
+            } else if (type == TokenType.R_BRACKET) {
+                depth--;
+            }
+            close++;
+        } while (depth > 0 && close < tokens.size());
+        if (close < tokens.size()) {
+            List<Token> row = tokens.subList(0, close);
+            List<Token> column = tokens.subList(close, tokens.size());
+            TreeNode node = new TreeNode();
+            node.setType(TreeNodeType.ARRAY_ACCESS);
+            node.left = parseArrayAccess(row);
+            depth = 0;
+            for (int i = 0; i < column.size() - 1; i++) {
+                TokenType type = column.get(i).getType();
+                if (type == TokenType.L_BRACKET) {
+                    depth++;
+                } else if (type == TokenType.R_BRACKET && --depth == 0) {
+                    // 第二组中括号之后还有中括号, 只支持一维和二维数组
+                    tooManyDimensionsException(tokens.get(0).getLineNum());
+                    return node.left;
+                }
+            }
+            if (column.size() == 3) {
+                node.right = tokenToTreeNode(column.get(1));
+            } else {
+                node.right = parseArithmeticExpression(column.subList(1, column.size() - 1));
+            }
+            return node;
+        }
         TreeNode node = new TreeNode();
         node.setType(TreeNodeType.ARRAY_ACCESS);
         TreeNode left = new TreeNode();
@@ -1235,6 +1797,78 @@ public class SyntaxParser {
         return node;
     }
 
+    /**
+     * 解析内建函数调用, 迭代器位于函数名之后, 结束时位于右括号之后
+     * 参数以括号内最外层的逗号分隔, 每个参数是一个算术表达式
+     * @param token 函数名
+     * @param isNegative 调用前是否有负号
+     */
+    private TreeNode parseBuiltinCall(Token token, ListIterator<Token> iterator,
+                                      List<Token> tokens, boolean isNegative) throws GramException {
+        TreeNode node = new TreeNode();
+        node.setType(TreeNodeType.BUILTIN_CALL);
+        node.setSymbolName(token.getStringValue());
+        node.setNegative(isNegative);
+        List<TreeNode> argList = new ArrayList<>();
+        // 词法分析保证函数名之后是左括号
+        iterator.next();
+        int start = iterator.nextIndex();
+        int depth = 1;
+        while (depth > 0) {
+            if (!iterator.hasNext()) {
+                parenthMismatchException(token.getLineNum());
+                return null;
+            }
+            TokenType type = iterator.next().getType();
+            if (type == TokenType.L_PARENTHESIS) {
+                depth++;
+            } else if (type == TokenType.R_PARENTHESIS) {
+                depth--;
+            }
+            if (depth == 0 || (depth == 1 && type == TokenType.COMMA)) {
+                int end = iterator.previousIndex();
+                if (end == start) {
+                    wrongArithmeticExpException(token.getLineNum());
+                    return null;
+                }
+                argList.add(parseArithmeticExpression(tokens.subList(start, end)));
+                start = end + 1;
+            }
+        }
+        int expected = BUILTIN_FUNCS.get(node.getSymbolName());
+        if (argList.size() != expected) {
+            builtinArgCountException(node.getSymbolName(), expected, argList.size(), token.getLineNum());
+        }
+        node.setArgList(argList);
+        return node;
+    }
+
+    /**
+     * 解析作为语句的内建函数调用, 如 fill(a, 0);
+     * 结束时curToken为分号
+     */
+    private TreeNode parseBuiltinStatement() throws GramException {
+        int lineNum = curToken.getLineNum();
+        // 回退, 由算术表达式重新读取函数名
+        tokenPtr--;
+        TreeNode node = parseArithmeticExpression();
+        if (node == null || node.getType() != TreeNodeType.BUILTIN_CALL) {
+            // 语句只能是一个调用, 不能是包含调用的表达式
+            wrongArithmeticExpException(lineNum);
+            node = new TreeNode();
+            node.setType(TreeNodeType.EMPTY);
+        }
+        matchToken(TokenType.SEMICOLON, true);
+        return node;
+    }
+
+    /**
+     * 是否为内建函数的调用
+     */
+    private static boolean isBuiltinCall(Token token) {
+        return BUILTIN_FUNCS.containsKey(token.getStringValue());
+    }
+
     /**
      * 根据小括号解析表达式
      */
@@ -1290,6 +1924,14 @@ public class SyntaxParser {
         errInfoBuffer.append("Parenthesis mismatch at line ").append(lineNum).append("\n");
     }
 
+    /**
+     * 数组超过二维异常
+     */
+    private void tooManyDimensionsException(int lineNum) {
+        ifSuccess = false;
+        errInfoBuffer.append("Array has more than two dimensions at line ").append(lineNum).append("\n");
+    }
+
     /**
      * 算术表达式错误异常
      */
@@ -1351,6 +1993,15 @@ public class SyntaxParser {
         errInfoBuffer.append("Redefinition of function ").append(funcName).append("\n");
     }
 
+    /**
+     * 内建函数参数个数错误
+     */
+    private void builtinArgCountException(String funcName, int expected, int found, int lineNum) {
+        ifSuccess = false;
+        errInfoBuffer.append(String.format("Function %s expects %d arguments, found %d at line %d",
+                funcName, expected, found, lineNum)).append("\n");
+    }
+
     /**
      * 函数未定义错误
      */
@@ -144,6 +144,7 @@ public class TreeNode {
             case IF:
             case ELSE_IF:
             case WHILE:
+            case FOR:
                 stringBuilder.append(", condition=").append(condition);
                 break;
             case STATEMENT_BLOCK:
@@ -223,6 +224,13 @@ public class TreeNode {
                 stringBuilder.append(", func_call=").append(symbolName).append("; args=");
                 stringBuilder.append(left);
                 break;
+            case BUILTIN_CALL:
+                stringBuilder.append(", builtin=").append(symbolName).append("; args={");
+                for (TreeNode node:argList) {
+                    stringBuilder.append(node.type).append(' ');
+                }
+                stringBuilder.append("}");
+                break;
             case CALL_ARGS:
                 // 打印调用函数的参数
                 stringBuilder.append(", call_args={");
@@ -24,6 +24,11 @@ public enum TreeNodeType {
      * left存储函数签名, right存储函数实现语句块
      */
     FUNCTION,
+    /**
+     * extern函数声明, 由注册的Java静态方法实现
+     * left存储函数签名, 没有函数体
+     */
+    EXTERN_FUNCTION,
     /**
      * 函数签名
      * left存储参数类型列表, right存储返回值
@@ -48,17 +53,28 @@ public enum TreeNodeType {
      * left存储参数, right存储函数实现语句块
      */
     FUNC_CALL,
+    /**
+     * 内建函数调用, 有返回值的是算术表达式的操作数, fill、copy、sort是语句
+     * symbolName存储函数名, argList存储参数表达式
+     */
+    BUILTIN_CALL,
 
     /**
-     * left存储数组标识符, right存储数组大小
+     * left存储数组标识符, right存储数组大小, 二维数组的right为DIMENSIONS
+     * 作为形参时symbolName存储数组名, 一维数组的right为空, 二维数组的right为DIMENSIONS
      */
     // 整型数组声明,
     INT_ARRAY_DECLARATION,
     // 实数数组声明
     REAL_ARRAY_DECLARATION,
+    /**
+     * 二维数组的大小, left存储行数, right存储列数
+     */
+    DIMENSIONS,
 
     /**
      * 访问数组, left存储数组标识符, right存储索引
+     * 二维数组a[i][j]的left为访问a[i]的结点, right存储列下标j
      */
     ARRAY_ACCESS,
 
@@ -66,6 +82,14 @@ public enum TreeNodeType {
      * 变量赋值, left存储变量名, right存储赋值表达式
      */
     ASSIGN,
+    /**
+     * 复合赋值 +=、-=、*=、/=, left存储变量名或数组访问, right存储表达式
+     * i++和i--分别为right是1的PLUS_ASSIGN和MINUS_ASSIGN
+     */
+    PLUS_ASSIGN,
+    MINUS_ASSIGN,
+    MULTIPLY_ASSIGN,
+    DIVIDE_ASSIGN,
     /**
      * 命令行输出，输入
      */
@@ -90,6 +114,14 @@ public enum TreeNodeType {
     LESS_EQ,
     GREATER_EQ,
 
+    /**
+     * 逻辑运算, left存储第一个条件, right存储第二个条件
+     * NOT只有left
+     */
+    AND,
+    OR,
+    NOT,
+
     /**
      * left存储条件为真的语句块
      * 如果有else语句块, 存储在right
@@ -103,6 +135,40 @@ public enum TreeNodeType {
      * left存储while语句块
      */
     WHILE,
+    /**
+     * 并行循环, 结构同WHILE
+     */
+    PARALLEL_WHILE,
+    /**
+     * for循环, condition存储条件, left存储循环体语句块, right存储步进的赋值语句(可以为null)
+     * 初始化语句(可以没有)存储在statementBlock里
+     */
+    FOR,
+    /**
+     * switch, left存储被判断的表达式, 各个CASE和DEFAULT存储在statementBlock里
+     */
+    SWITCH,
+    /**
+     * switch的分支, left存储分支的语句块, CASE的标签(整型字面量)存储在argList里
+     * 分支执行完后跳出switch, 不会继续执行下一个分支
+     */
+    CASE,
+    DEFAULT,
+
+    /**
+     * 并发任务, left存储被启动的函数调用
+     */
+    SPAWN,
+    /**
+     * 通道声明, left存储通道标识符, right存储容量
+     */
+    CHAN_DECLARATION,
+    /**
+     * 通道收发, left存储通道标识符
+     * SEND的right存储发送的表达式, RECV的right存储接收的变量
+     */
+    SEND,
+    RECV,
     /**
      * 块内容存储在statementBlock里
      */